@@ -0,0 +1,75 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+*/
+
+/* NewHope key exchange */
+
+package org.apache.milagro.amcl.bench;
+
+import java.util.concurrent.TimeUnit;
+import org.apache.milagro.amcl.NHS;
+import org.apache.milagro.amcl.RAND;
+import org.openjdk.jmh.annotations.*;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class NHSBench {
+	private RAND rng;
+	private byte[] S,SB,UC;
+
+	@Setup
+	public void setup()
+	{
+		rng=new RAND();
+		byte[] RAW=new byte[100];
+		for (int i=0;i<100;i++) RAW[i]=(byte)(i);
+		rng.seed(100,RAW);
+
+		S=new byte[1792];
+		SB=new byte[1824];
+		UC=new byte[2176];
+		NHS.SERVER_1(rng,SB,S);
+		NHS.CLIENT(rng,SB,UC,new byte[32]);
+	}
+
+	@Benchmark
+	public byte[] server1()
+	{
+		byte[] s=new byte[S.length];
+		byte[] sb=new byte[SB.length];
+		NHS.SERVER_1(rng,sb,s);
+		return sb;
+	}
+
+	@Benchmark
+	public byte[] client()
+	{
+		byte[] uc=new byte[UC.length];
+		NHS.CLIENT(rng,SB,uc,new byte[32]);
+		return uc;
+	}
+
+	@Benchmark
+	public byte[] server2()
+	{
+		byte[] key=new byte[32];
+		NHS.SERVER_2(S,UC,key);
+		return key;
+	}
+}
@@ -0,0 +1,110 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+*/
+
+/* Symmetric encryption and hash functions, on messages of size bytes */
+
+package org.apache.milagro.amcl.bench;
+
+import java.util.concurrent.TimeUnit;
+import org.apache.milagro.amcl.*;
+import org.openjdk.jmh.annotations.*;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class PrimitivesBench {
+	@Param({"64","1024"})
+	public int size;
+
+	private byte[] K,IV,M;
+
+	@Setup
+	public void setup()
+	{
+		RAND rng=new RAND();
+		byte[] RAW=new byte[100];
+		for (int i=0;i<100;i++) RAW[i]=(byte)(i);
+		rng.seed(100,RAW);
+
+		K=new byte[AES.KS];
+		IV=new byte[12];
+		M=new byte[size];
+		for (int i=0;i<K.length;i++) K[i]=(byte)rng.getByte();
+		for (int i=0;i<IV.length;i++) IV[i]=(byte)rng.getByte();
+		for (int i=0;i<M.length;i++) M[i]=(byte)rng.getByte();
+	}
+
+	@Benchmark
+	public byte[] aes()
+	{
+		AES c=new AES();
+		byte[] buff=new byte[16];
+		c.init(AES.CBC,K.length,K,null);
+		for (int i=0;i+16<=M.length;i+=16)
+		{
+			System.arraycopy(M,i,buff,0,16);
+			c.encrypt(buff);
+		}
+		c.end();
+		return buff;
+	}
+
+	@Benchmark
+	public byte[] gcm()
+	{
+		GCM g=new GCM();
+		g.init(K.length,K,IV.length,IV);
+		g.add_plain(M,M.length);
+		return g.finish(true);
+	}
+
+	@Benchmark
+	public byte[] hash256()
+	{
+		HASH256 h=new HASH256();
+		h.process_array(M);
+		return h.hash();
+	}
+
+	@Benchmark
+	public byte[] hash384()
+	{
+		HASH384 h=new HASH384();
+		h.process_array(M);
+		return h.hash();
+	}
+
+	@Benchmark
+	public byte[] hash512()
+	{
+		HASH512 h=new HASH512();
+		h.process_array(M);
+		return h.hash();
+	}
+
+	@Benchmark
+	public byte[] sha3()
+	{
+		byte[] digest=new byte[SHA3.HASH256];
+		SHA3 h=new SHA3(SHA3.HASH256);
+		for (int i=0;i<M.length;i++) h.process(M[i]);
+		h.hash(digest);
+		return digest;
+	}
+}
@@ -0,0 +1,102 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+*/
+
+/* Field arithmetic, point multiplication and key agreement on the @CURVE@ curve */
+
+package org.apache.milagro.amcl.bench.@CURVE@;
+
+import java.util.concurrent.TimeUnit;
+import org.apache.milagro.amcl.RAND;
+import org.apache.milagro.amcl.@CURVE@.*;
+import org.openjdk.jmh.annotations.*;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ECCBench {
+	private FP a,b,a2;
+	private BIG s;
+	private ECP G;
+	private byte[] S,W,Z;
+
+	@Setup
+	public void setup()
+	{
+		RAND rng=new RAND();
+		byte[] RAW=new byte[100];
+		for (int i=0;i<100;i++) RAW[i]=(byte)(i);
+		rng.seed(100,RAW);
+
+		BIG p=new BIG(ROM.Modulus);
+		a=new FP(BIG.randomnum(p,rng));
+		b=new FP(BIG.randomnum(p,rng));
+		a2=new FP(a); a2.sqr();
+
+		s=BIG.randomnum(new BIG(ROM.CURVE_Order),rng);
+		G=ECP.generator();
+
+		S=new byte[ECDH.EGS];
+		W=new byte[2*ECDH.EFS+1];
+		Z=new byte[ECDH.EFS];
+		ECDH.KEY_PAIR_GENERATE(rng,S,W);
+	}
+
+	@Benchmark
+	public FP fpMul()
+	{
+		FP r=new FP(a);
+		r.mul(b);
+		return r;
+	}
+
+	@Benchmark
+	public FP fpSqr()
+	{
+		FP r=new FP(a);
+		r.sqr();
+		return r;
+	}
+
+	@Benchmark
+	public FP fpInverse()
+	{
+		FP r=new FP(a);
+		r.inverse();
+		return r;
+	}
+
+	@Benchmark
+	public FP fpSqrt()
+	{
+		return a2.sqrt();
+	}
+
+	@Benchmark
+	public ECP ecpMul()
+	{
+		return G.mul(s);
+	}
+
+	@Benchmark
+	public byte[] ecdh()
+	{
+		ECDH.SVDP_DH(S,W,Z);
+		return Z;
+	}
+}
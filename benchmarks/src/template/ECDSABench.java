@@ -0,0 +1,81 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+*/
+
+/* Double point multiplication and ECDSA on the @CURVE@ curve */
+
+package org.apache.milagro.amcl.bench.@CURVE@;
+
+import java.util.concurrent.TimeUnit;
+import org.apache.milagro.amcl.RAND;
+import org.apache.milagro.amcl.@CURVE@.*;
+import org.openjdk.jmh.annotations.*;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ECDSABench {
+	private RAND rng;
+	private BIG e,f;
+	private ECP G,Q;
+	private byte[] S,W,M,C,D;
+
+	@Setup
+	public void setup()
+	{
+		rng=new RAND();
+		byte[] RAW=new byte[100];
+		for (int i=0;i<100;i++) RAW[i]=(byte)(i);
+		rng.seed(100,RAW);
+
+		BIG r=new BIG(ROM.CURVE_Order);
+		e=BIG.randomnum(r,rng);
+		f=BIG.randomnum(r,rng);
+		G=ECP.generator();
+		Q=G.mul(BIG.randomnum(r,rng));
+
+		S=new byte[ECDH.EGS];
+		W=new byte[2*ECDH.EFS+1];
+		C=new byte[ECDH.EGS];
+		D=new byte[ECDH.EGS];
+		M="Hello World\n".getBytes();
+		ECDH.KEY_PAIR_GENERATE(rng,S,W);
+		ECDH.SP_DSA(ECP.HASH_TYPE,rng,S,M,C,D);
+	}
+
+	@Benchmark
+	public ECP ecpMul2()
+	{
+		return G.mul2(e,Q,f);
+	}
+
+	@Benchmark
+	public byte[] sign()
+	{
+		byte[] c=new byte[ECDH.EGS];
+		byte[] d=new byte[ECDH.EGS];
+		ECDH.SP_DSA(ECP.HASH_TYPE,rng,S,M,c,d);
+		return d;
+	}
+
+	@Benchmark
+	public int verify()
+	{
+		return ECDH.VP_DSA(ECP.HASH_TYPE,W,M,C,D);
+	}
+}
@@ -0,0 +1,141 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+*/
+
+/* Pairings, group multiplications and M-Pin client and server steps on the @CURVE@ curve */
+
+package org.apache.milagro.amcl.bench.@CURVE@;
+
+import java.util.concurrent.TimeUnit;
+import org.apache.milagro.amcl.RAND;
+import org.apache.milagro.amcl.@CURVE@.*;
+import org.openjdk.jmh.annotations.*;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class PairingBench {
+	private static final int PIN=1234;
+
+	private RAND rng;
+	private BIG s;
+	private ECP P;
+	private @ECP2@ Q;
+	private @FP12@ g,e;
+	private byte[] CLIENT_ID,TOKEN,SST,X,Y,U,SEC,xID,HID;	/* U is SEC before CLIENT_2 */
+
+	@Setup
+	public void setup()
+	{
+		rng=new RAND();
+		byte[] RAW=new byte[100];
+		for (int i=0;i<100;i++) RAW[i]=(byte)(i);
+		rng.seed(100,RAW);
+
+		s=BIG.randomnum(new BIG(ROM.CURVE_Order),rng);
+		P=ECP.generator();
+		Q=@ECP2@.generator();
+		g=@PAIR@.ate(Q,P);
+		e=@PAIR@.fexp(g);
+
+		int EGS=@MPIN@.EGS;
+		int EFS=@MPIN@.EFS;
+		int G1S=2*EFS+1;
+		int sha=ECP.HASH_TYPE;
+		byte[] S=new byte[EGS];
+		CLIENT_ID="testUser@miracl.com".getBytes();
+		TOKEN=new byte[G1S];
+		SST=new byte[@G2S@*EFS];
+		X=new byte[EGS];
+		Y=new byte[EGS];
+		SEC=new byte[G1S];
+		xID=new byte[G1S];
+		HID=new byte[G1S];
+		@MPIN@.RANDOM_GENERATE(rng,S);
+		@MPIN@.GET_SERVER_SECRET(S,SST);
+		@MPIN@.GET_CLIENT_SECRET(S,@MPIN@.HASH_ID(sha,CLIENT_ID,EFS),TOKEN);
+		@MPIN@.EXTRACT_PIN(sha,CLIENT_ID,PIN,TOKEN);
+		@MPIN@.CLIENT_1(sha,0,CLIENT_ID,rng,X,PIN,TOKEN,SEC,xID,null,null);
+		@MPIN@.SERVER_1(sha,0,CLIENT_ID,HID,null);
+		@MPIN@.RANDOM_GENERATE(rng,Y);
+		U=SEC.clone();
+		@MPIN@.CLIENT_2(X,Y,SEC);
+	}
+
+	@Benchmark
+	public @FP12@ ate()
+	{
+		return @PAIR@.ate(Q,P);
+	}
+
+	@Benchmark
+	public @FP12@ fexp()
+	{
+		return @PAIR@.fexp(g);
+	}
+
+	@Benchmark
+	public ECP G1mul()
+	{
+		return @PAIR@.G1mul(P,s);
+	}
+
+	@Benchmark
+	public @ECP2@ G2mul()
+	{
+		return @PAIR@.G2mul(Q,s);
+	}
+
+	@Benchmark
+	public @FP12@ GTpow()
+	{
+		return @PAIR@.GTpow(e,s);
+	}
+
+	@Benchmark
+	public byte[] mpinClient1()
+	{
+		byte[] x=new byte[X.length];
+		byte[] sec=new byte[SEC.length];
+		byte[] xid=new byte[xID.length];
+		@MPIN@.CLIENT_1(ECP.HASH_TYPE,0,CLIENT_ID,rng,x,PIN,TOKEN,sec,xid,null,null);
+		return xid;
+	}
+
+	@Benchmark
+	public byte[] mpinClient2()
+	{
+		byte[] sec=U.clone();
+		@MPIN@.CLIENT_2(X,Y,sec);
+		return sec;
+	}
+
+	@Benchmark
+	public byte[] mpinServer1()
+	{
+		byte[] hid=new byte[HID.length];
+		@MPIN@.SERVER_1(ECP.HASH_TYPE,0,CLIENT_ID,hid,null);
+		return hid;
+	}
+
+	@Benchmark
+	public int mpinServer2()
+	{
+		return @MPIN@.SERVER_2(0,HID,null,Y,SST,xID,null,SEC,null,null);
+	}
+}
@@ -0,0 +1,69 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+*/
+
+/* @CURVE@ encryption and decryption */
+
+package org.apache.milagro.amcl.bench.@CURVE@;
+
+import java.util.concurrent.TimeUnit;
+import org.apache.milagro.amcl.RAND;
+import org.apache.milagro.amcl.@CURVE@.*;
+import org.openjdk.jmh.annotations.*;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class RSABench {
+	private public_key pub;
+	private private_key priv;
+	private byte[] E,C;
+
+	@Setup
+	public void setup()
+	{
+		RAND rng=new RAND();
+		byte[] RAW=new byte[100];
+		for (int i=0;i<100;i++) RAW[i]=(byte)(i);
+		rng.seed(100,RAW);
+
+		pub=new public_key(FF.FFLEN);
+		priv=new private_key(FF.HFLEN);
+		RSA.KEY_PAIR(rng,65537,priv,pub);
+
+		E=RSA.OAEP_ENCODE(RSA.HASH_TYPE,"Hello World\n".getBytes(),rng,null);
+		C=new byte[RSA.RFS];
+		RSA.ENCRYPT(pub,E,C);
+	}
+
+	@Benchmark
+	public byte[] encrypt()
+	{
+		byte[] c=new byte[RSA.RFS];
+		RSA.ENCRYPT(pub,E,c);
+		return c;
+	}
+
+	@Benchmark
+	public byte[] decrypt()
+	{
+		byte[] m=new byte[RSA.RFS];
+		RSA.DECRYPT(priv,C,m);
+		return m;
+	}
+}
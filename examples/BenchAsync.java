@@ -0,0 +1,87 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+*/
+
+/* Asynchronous M-Pin server benchmark for BLS381 curve, reporting queueing of the crypto executor */
+import java.util.concurrent.CompletableFuture;
+import org.apache.milagro.amcl.BLS381.*;
+import org.apache.milagro.amcl.CryptoExecutor;
+import org.apache.milagro.amcl.RAND;
+
+public class BenchAsync {
+
+    public static void main(String[] args) throws Exception {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 256;
+        int capacity = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+
+        RAND rng = new RAND();
+        byte[] RAW = new byte[100];
+        rng.clean();
+        for (int i = 0; i < 100; i++) RAW[i] = (byte) (i);
+        rng.seed(100, RAW);
+
+        int EGS = MPIN.EGS;
+        int EFS = MPIN.EFS;
+        int G1S = 2 * EFS + 1;
+        int sha = ECP.HASH_TYPE;
+        int pin = 1234;
+
+        byte[] S = new byte[EGS];
+        byte[] SST = new byte[4 * EFS];
+        MPIN.RANDOM_GENERATE(rng, S);
+        MPIN.GET_SERVER_SECRET(S, SST);
+
+        byte[] CLIENT_ID = "testUser@miracl.com".getBytes();
+        byte[] TOKEN = new byte[G1S];
+        byte[] HID = new byte[G1S];
+        byte[] Y = new byte[EGS];
+        byte[] xID = new byte[G1S];
+        byte[] SEC = new byte[G1S];
+        byte[] X = new byte[EGS];
+        MPIN.GET_CLIENT_SECRET(S, MPIN.HASH_ID(sha, CLIENT_ID, EFS), TOKEN);
+        MPIN.EXTRACT_PIN(sha, CLIENT_ID, pin, TOKEN);
+        MPIN.CLIENT_1(sha, 0, CLIENT_ID, rng, X, pin, TOKEN, SEC, xID, null, null);
+        MPIN.SERVER_1(sha, 0, CLIENT_ID, HID, null);
+        MPIN.RANDOM_GENERATE(rng, Y);
+        MPIN.CLIENT_2(X, Y, SEC);
+
+        System.out.println(n + " concurrent SERVER_2 calls on BLS381, capacity " + capacity);
+        run("platform threads", new CryptoExecutor(Runtime.getRuntime().availableProcessors(), capacity - Runtime.getRuntime().availableProcessors()), n, HID, Y, SST, xID, SEC);
+        CryptoExecutor virtual = CryptoExecutor.virtual(capacity);
+        run(virtual.isVirtual() ? "virtual threads" : "no virtual threads, platform threads", virtual, n, HID, Y, SST, xID, SEC);
+    }
+
+    static void run(String name, CryptoExecutor exec, int n, byte[] HID, byte[] Y, byte[] SST, byte[] xID, byte[] SEC) throws Exception {
+        CompletableFuture<?>[] f = new CompletableFuture<?>[n];
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < n; i++)
+            f[i] = exec.submit(() -> MPIN.SERVER_2(0, HID, null, Y, SST, xID, null, SEC, null, null));
+        int ok = 0;
+        for (int i = 0; i < n; i++) {
+            try {
+                if ((Integer) f[i].get() == 0) ok++;
+            } catch (Exception e) {
+                // rejected - the executor was full
+            }
+        }
+        long elapsed = System.currentTimeMillis() - start;
+        exec.close();
+        System.out.format("%s: %d accepted in %d ms%n", name, ok, elapsed);
+        System.out.println("    " + exec);
+    }
+}
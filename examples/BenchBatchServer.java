@@ -0,0 +1,99 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+*/
+
+/* Batch M-Pin server benchmark for BLS381 curve */
+import java.util.concurrent.ForkJoinPool;
+import org.apache.milagro.amcl.BLS381.*;
+import org.apache.milagro.amcl.RAND;
+
+public class BenchBatchServer {
+
+    static final int MIN_ITERS = 3;
+    static final long MIN_TIME = 2000; // ms
+
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 32;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+
+        RAND rng = new RAND();
+        byte[] RAW = new byte[100];
+        rng.clean();
+        for (int i = 0; i < 100; i++) RAW[i] = (byte) (i);
+        rng.seed(100, RAW);
+
+        int EGS = MPIN.EGS;
+        int EFS = MPIN.EFS;
+        int G1S = 2 * EFS + 1;
+        int sha = ECP.HASH_TYPE;
+        int pin = 1234;
+
+        byte[] S = new byte[EGS];
+        byte[] SST = new byte[4 * EFS];
+        MPIN.RANDOM_GENERATE(rng, S);
+        MPIN.GET_SERVER_SECRET(S, SST);
+
+        byte[][] HID = new byte[n][G1S];
+        byte[][] Y = new byte[n][EGS];
+        byte[][] xID = new byte[n][G1S];
+        byte[][] SEC = new byte[n][G1S];
+        for (int i = 0; i < n; i++) {
+            byte[] CLIENT_ID = ("user" + i + "@miracl.com").getBytes();
+            byte[] TOKEN = new byte[G1S];
+            byte[] X = new byte[EGS];
+            MPIN.GET_CLIENT_SECRET(S, MPIN.HASH_ID(sha, CLIENT_ID, EFS), TOKEN);
+            MPIN.EXTRACT_PIN(sha, CLIENT_ID, pin, TOKEN);
+            MPIN.CLIENT_1(sha, 0, CLIENT_ID, rng, X, pin, TOKEN, SEC[i], xID[i], null, null);
+            MPIN.SERVER_1(sha, 0, CLIENT_ID, HID[i], null);
+            MPIN.RANDOM_GENERATE(rng, Y[i]);
+            MPIN.CLIENT_2(X, Y[i], SEC[i]);
+        }
+
+        System.out.println("SERVER_2 for " + n + " logins on BLS381");
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        for (int r : MPIN.BATCH_SERVER_2(0, HID, null, Y, SST, xID, null, SEC, null, null, rng, pool)) {
+            if (r != 0) {
+                System.out.println("FAILURE - batch rejected a valid login");
+                return;
+            }
+        }
+
+        System.out.format("%-28s %10.2f ms\n", "one by one", time(() -> {
+            for (int i = 0; i < n; i++)
+                MPIN.SERVER_2(0, HID[i], null, Y[i], SST, xID[i], null, SEC[i], null, null);
+        }));
+        System.out.format("%-28s %10.2f ms\n", threads + " thread(s)", time(() ->
+            MPIN.BATCH_SERVER_2(0, HID, null, Y, SST, xID, null, SEC, null, null, null, pool)));
+        System.out.format("%-28s %10.2f ms\n", threads + " thread(s), randomized", time(() ->
+            MPIN.BATCH_SERVER_2(0, HID, null, Y, SST, xID, null, SEC, null, null, rng, pool)));
+        pool.shutdown();
+    }
+
+    static double time(Runnable op) {
+        int iterations = 0;
+        long start = System.currentTimeMillis();
+        long elapsed;
+        do {
+            op.run();
+            iterations++;
+            elapsed = System.currentTimeMillis() - start;
+        } while (elapsed < MIN_TIME || iterations < MIN_ITERS);
+        return (double) elapsed / iterations;
+    }
+}
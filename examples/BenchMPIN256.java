@@ -0,0 +1,103 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+*/
+
+/* Pairing and M-Pin benchmark for BLS48 curve */
+import org.apache.milagro.amcl.BLS48.*;
+import org.apache.milagro.amcl.RAND;
+
+public class BenchMPIN256 {
+
+    static final int MIN_ITERS = 5;
+    static final long MIN_TIME = 2000; // ms
+
+    public static void main(String[] args) {
+        RAND rng = new RAND();
+        byte[] RAW = new byte[100];
+        rng.clean();
+        for (int i = 0; i < 100; i++) RAW[i] = (byte) (i);
+        rng.seed(100, RAW);
+
+        int EGS = MPIN256.EGS;
+        int EFS = MPIN256.EFS;
+        int G1S = 2 * EFS + 1;
+        int G2S = 16 * EFS;
+        int sha = ECP.HASH_TYPE;
+        int pin = 1234;
+
+        byte[] S = new byte[EGS];
+        byte[] SST = new byte[G2S];
+        byte[] TOKEN = new byte[G1S];
+        byte[] SEC = new byte[G1S];
+        byte[] xID = new byte[G1S];
+        byte[] X = new byte[EGS];
+        byte[] Y = new byte[EGS];
+        byte[] HID = new byte[G1S];
+        byte[] G1 = new byte[48 * EFS];
+        byte[] G2 = new byte[48 * EFS];
+
+        byte[] CLIENT_ID = "testUser@miracl.com".getBytes();
+        byte[] HCID = MPIN256.HASH_ID(sha, CLIENT_ID, EFS);
+
+        MPIN256.RANDOM_GENERATE(rng, S);
+        MPIN256.GET_CLIENT_SECRET(S, HCID, TOKEN);
+        MPIN256.GET_SERVER_SECRET(S, SST);
+        MPIN256.EXTRACT_PIN(sha, CLIENT_ID, pin, TOKEN);
+
+        System.out.println("Pairing and M-Pin timings on BLS48");
+
+        ECP P = ECP.generator();
+        ECP8 Q = ECP8.generator();
+        FP48 m = PAIR256.ate(Q, P);
+        System.out.format("%-24s %10.2f ms\n", "Miller loop", time(() -> PAIR256.ate(Q, P)));
+        System.out.format("%-24s %10.2f ms\n", "final exponentiation", time(() -> PAIR256.fexp(m)));
+        System.out.format("%-24s %10.2f ms\n", "double pairing", time(() -> PAIR256.fexp(PAIR256.ate2(Q, P, Q, P))));
+
+        System.out.format("%-24s %10.2f ms\n", "PRECOMPUTE", time(() -> MPIN256.PRECOMPUTE(TOKEN, HCID, G1, G2)));
+        System.out.format("%-24s %10.2f ms\n", "CLIENT_1+CLIENT_2", time(() -> {
+            MPIN256.CLIENT_1(sha, 0, CLIENT_ID, rng, X, pin, TOKEN, SEC, xID, null, null);
+            MPIN256.RANDOM_GENERATE(rng, Y);
+            MPIN256.CLIENT_2(X, Y, SEC);
+        }));
+
+        MPIN256.CLIENT_1(sha, 0, CLIENT_ID, rng, X, pin, TOKEN, SEC, xID, null, null);
+        MPIN256.RANDOM_GENERATE(rng, Y);
+        MPIN256.CLIENT_2(X, Y, SEC);
+        MPIN256.SERVER_1(sha, 0, CLIENT_ID, HID, null);
+        if (MPIN256.SERVER_2(0, HID, null, Y, SST, xID, null, SEC, null, null) != 0) {
+            System.out.println("FAILURE - SERVER_2 rejected a valid client");
+            return;
+        }
+        System.out.format("%-24s %10.2f ms\n", "SERVER_1+SERVER_2", time(() -> {
+            MPIN256.SERVER_1(sha, 0, CLIENT_ID, HID, null);
+            MPIN256.SERVER_2(0, HID, null, Y, SST, xID, null, SEC, null, null);
+        }));
+    }
+
+    static double time(Runnable op) {
+        int iterations = 0;
+        long start = System.currentTimeMillis();
+        long elapsed;
+        do {
+            op.run();
+            iterations++;
+            elapsed = System.currentTimeMillis() - start;
+        } while (elapsed < MIN_TIME || iterations < MIN_ITERS);
+        return (double) elapsed / iterations;
+    }
+}
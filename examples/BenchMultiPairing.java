@@ -0,0 +1,76 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+*/
+
+/* Multi-pairing scaling benchmark for BLS381 curve */
+import java.util.concurrent.ForkJoinPool;
+import org.apache.milagro.amcl.BLS381.*;
+import org.apache.milagro.amcl.RAND;
+
+public class BenchMultiPairing {
+
+    static final int MIN_ITERS = 5;
+    static final long MIN_TIME = 2000; // ms
+
+    public static void main(String[] args) {
+        int pairs = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        int maxThreads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+
+        RAND rng = new RAND();
+        byte[] RAW = new byte[100];
+        rng.clean();
+        for (int i = 0; i < 100; i++) RAW[i] = (byte) (i);
+        rng.seed(100, RAW);
+
+        BIG r = new BIG(ROM.CURVE_Order);
+        ECP[] Q = new ECP[pairs];
+        ECP2[] P = new ECP2[pairs];
+        for (int i = 0; i < pairs; i++) {
+            Q[i] = PAIR.G1mul(ECP.generator(), BIG.randomnum(r, rng));
+            P[i] = PAIR.G2mul(ECP2.generator(), BIG.randomnum(r, rng));
+        }
+
+        System.out.println("Product of " + pairs + " pairings on BLS381");
+
+        FP12 e = PAIR.fexp(PAIR.multi(P, Q));
+        System.out.format("%-24s %10.2f ms\n", "single Miller loop", time(() -> PAIR.fexp(PAIR.multi(P, Q))));
+
+        for (int t = 1; t <= maxThreads; t *= 2) {
+            ForkJoinPool pool = new ForkJoinPool(t);
+            if (!PAIR.fexp(PAIR.multi(P, Q, pool)).equals(e)) {
+                System.out.println("FAILURE - parallel multi-pairing mismatch");
+                return;
+            }
+            System.out.format("%-24s %10.2f ms\n", t + " thread(s)", time(() -> PAIR.fexp(PAIR.multi(P, Q, pool))));
+            pool.shutdown();
+            if (t < maxThreads && 2 * t > maxThreads) t = maxThreads / 2;
+        }
+    }
+
+    static double time(Runnable op) {
+        int iterations = 0;
+        long start = System.currentTimeMillis();
+        long elapsed;
+        do {
+            op.run();
+            iterations++;
+            elapsed = System.currentTimeMillis() - start;
+        } while (elapsed < MIN_TIME || iterations < MIN_ITERS);
+        return (double) elapsed / iterations;
+    }
+}
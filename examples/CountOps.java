@@ -0,0 +1,74 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+*/
+
+/* Field and group operation counts of pairing and ECDSA operations on the BLS381 curve */
+/* Run with -Damcl.opcount=true */
+import org.apache.milagro.amcl.BLS381.*;
+import org.apache.milagro.amcl.OpCounter;
+import org.apache.milagro.amcl.RAND;
+
+public class CountOps {
+
+    public static void main(String[] args) {
+        if (!OpCounter.ENABLED) {
+            System.out.println("Run with -Damcl.opcount=true");
+            return;
+        }
+
+        RAND rng = new RAND();
+        byte[] RAW = new byte[100];
+        rng.clean();
+        for (int i = 0; i < 100; i++) RAW[i] = (byte) (i);
+        rng.seed(100, RAW);
+
+        BIG s = BIG.randomnum(new BIG(ROM.CURVE_Order), rng);
+        ECP P = ECP.generator();
+        ECP2 Q = ECP2.generator();
+        FP12 g = PAIR.ate(Q, P);
+
+        byte[] S = new byte[ECDH.EGS];
+        byte[] W = new byte[2 * ECDH.EFS + 1];
+        byte[] C = new byte[ECDH.EGS];
+        byte[] D = new byte[ECDH.EGS];
+        byte[] M = "Hello World\n".getBytes();
+        ECDH.KEY_PAIR_GENERATE(rng, S, W);
+        ECDH.SP_DSA(ECP.HASH_TYPE, rng, S, M, C, D);
+
+        System.out.format("%-12s", "");
+        for (int op = 0; op < OpCounter.OPS; op++) System.out.format("%11s", OpCounter.name(op));
+        System.out.println();
+        count("PAIR.ate", () -> PAIR.ate(Q, P));
+        count("PAIR.fexp", () -> PAIR.fexp(g));
+        count("PAIR.G1mul", () -> PAIR.G1mul(P, s));
+        count("PAIR.G2mul", () -> PAIR.G2mul(Q, s));
+        count("PAIR.GTpow", () -> PAIR.GTpow(g, s));
+        count("ECP.mul", () -> P.mul(s));
+        count("ECDH.SP_DSA", () -> ECDH.SP_DSA(ECP.HASH_TYPE, rng, S, M, new byte[ECDH.EGS], new byte[ECDH.EGS]));
+        count("ECDH.VP_DSA", () -> ECDH.VP_DSA(ECP.HASH_TYPE, W, M, C, D));
+    }
+
+    static void count(String name, Runnable op) {
+        OpCounter c = OpCounter.start();
+        op.run();
+        c.close();
+        System.out.format("%-12s", name);
+        for (int i = 0; i < OpCounter.OPS; i++) System.out.format("%11d", c.get(i));
+        System.out.println();
+    }
+}
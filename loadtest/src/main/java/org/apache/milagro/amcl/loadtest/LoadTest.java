@@ -0,0 +1,172 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+*/
+
+/* In-process M-Pin load generator */
+/* Each of clients threads runs the client side of complete logins in a loop. The server steps run on a CryptoExecutor of threads threads */
+/* After warmup seconds, logins are counted and the latency of each server step, including queueing, and of each login is recorded for seconds seconds */
+/* Usage: LoadTest [curve [clients [threads [seconds [warmup]]]]] */
+
+package org.apache.milagro.amcl.loadtest;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.apache.milagro.amcl.CryptoExecutor;
+import org.apache.milagro.amcl.RAND;
+
+public final class LoadTest {
+	private static final int PIN=1234;
+
+	private final Protocol p;
+	private final CryptoExecutor server;
+	private final ThreadLocal<RAND> serverRng=ThreadLocal.withInitial(() -> rng(0));
+
+	private final Histogram server1=new ConcurrentHistogram(3);
+	private final Histogram server2=new ConcurrentHistogram(3);
+	private final Histogram serverKey=new ConcurrentHistogram(3);
+	private final Histogram login=new ConcurrentHistogram(3);
+	private final LongAdder logins=new LongAdder();
+	private final LongAdder failures=new LongAdder();
+
+	private volatile long start,stop;
+
+	LoadTest(Protocol p,CryptoExecutor server)
+	{
+		this.p=p;
+		this.server=server;
+	}
+
+	private static RAND rng(int seed)
+	{
+		RAND rng=new RAND();
+		byte[] RAW=new byte[100];
+		for (int i=0;i<100;i++) RAW[i]=(byte)(i+seed);
+		for (int i=0;i<8;i++) RAW[i]^=(byte)(System.nanoTime()>>>(8*i));
+		rng.seed(100,RAW);
+		return rng;
+	}
+
+/* run op on the server, recording its latency in h if measuring */
+	private <T> T call(Histogram h,Supplier<T> op) throws Exception
+	{
+		long t=System.nanoTime();
+		CompletableFuture<T> f=server.submit(op);
+		T r=f.get();
+		if (t>=start) h.recordValue((System.nanoTime()-t)/1000);
+		return r;
+	}
+
+/* client i logs in until stop. A login rejected by the server is counted as a failure, and the client carries on */
+	private void client(int i)
+	{
+		RAND rng=rng(i+1);
+		Login l=p.register(("user"+i+"@miracl.com").getBytes(),PIN);
+		long t;
+		while ((t=System.nanoTime())<stop)
+		{
+			boolean ok=false;
+			try
+			{
+				p.client1(l,PIN,rng);
+				call(server1,() -> { p.server1(l,serverRng.get()); return null; });
+				p.client2(l);
+				int rtn=call(server2,() -> p.server2(l));
+				if (rtn==0)
+				{
+					call(serverKey,() -> { p.serverKey(l); return null; });
+					ok=p.clientKey(l,PIN);
+				}
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				return;
+			}
+			catch (Exception e)
+			{ /* rejected by the server, or a server step threw */
+				if (t>=start) failures.increment();
+				continue;
+			}
+			if (t<start) continue;
+			login.recordValue((System.nanoTime()-t)/1000);
+			logins.increment();
+			if (!ok) failures.increment();
+		}
+	}
+
+	void run(int clients,int seconds,int warmup) throws InterruptedException
+	{
+		long now=System.nanoTime();
+		start=now+TimeUnit.SECONDS.toNanos(warmup);
+		stop=start+TimeUnit.SECONDS.toNanos(seconds);
+		Thread[] t=new Thread[clients];
+		for (int i=0;i<clients;i++)
+		{
+			final int id=i;
+			t[i]=new Thread(() -> client(id),"client-"+i);
+			t[i].start();
+		}
+		for (int i=0;i<clients;i++) t[i].join();
+	}
+
+	private static void report(String name,Histogram h)
+	{
+		System.out.format("%-12s %10d %10.2f %10.2f %10.2f %10.2f%n",name,h.getTotalCount(),
+			h.getValueAtPercentile(50)/1000.0,h.getValueAtPercentile(99)/1000.0,
+			h.getValueAtPercentile(99.9)/1000.0,h.getMaxValue()/1000.0);
+	}
+
+	public static void main(String[] args) throws Exception
+	{
+		String curve=args.length>0?args[0]:"BLS381";
+		int threads=args.length>2?Integer.parseInt(args[2]):Runtime.getRuntime().availableProcessors();
+		int clients=args.length>1?Integer.parseInt(args[1]):4*threads;
+		int seconds=args.length>3?Integer.parseInt(args[3]):30;
+		int warmup=args.length>4?Integer.parseInt(args[4]):5;
+
+		Protocol p;
+		try
+		{
+			p=(Protocol)Class.forName("org.apache.milagro.amcl.loadtest."+curve+".MPINProtocol").getConstructor(RAND.class).newInstance(rng(0));
+		}
+		catch (ClassNotFoundException e)
+		{
+			System.out.println("No M-Pin support for curve "+curve);
+			return;
+		}
+
+		System.out.println(curve+": "+clients+" clients, "+threads+" server threads, "+warmup+" s warmup, "+seconds+" s");
+		try (CryptoExecutor server=new CryptoExecutor(threads,clients))
+		{
+			LoadTest lt=new LoadTest(p,server);
+			lt.run(clients,seconds,warmup);
+
+			System.out.format("%.1f logins/s, %d failures%n",lt.logins.sum()/(double)seconds,lt.failures.sum());
+			System.out.format("%-12s %10s %10s %10s %10s %10s%n","latency","count","p50 ms","p99 ms","p99.9 ms","max ms");
+			report("SERVER_1",lt.server1);
+			report("SERVER_2",lt.server2);
+			report("SERVER_KEY",lt.serverKey);
+			report("login",lt.login);
+			System.out.println(server);
+		}
+	}
+}
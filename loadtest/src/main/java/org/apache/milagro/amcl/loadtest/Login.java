@@ -0,0 +1,28 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+*/
+
+/* State of one M-Pin login, passed between the client and the server */
+
+package org.apache.milagro.amcl.loadtest;
+
+public final class Login {
+	public byte[] CLIENT_ID,HCID,TOKEN,G1,G2;	/* client registration */
+	public byte[] X,SEC,xID,R,Z,CK;	/* client */
+	public byte[] HID,Y,W,T,SK;	/* server */
+}
@@ -0,0 +1,48 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+*/
+
+/* One curve's M-Pin protocol steps, as run by the load generator */
+/* Client steps use the client's rng. Server steps may run on any thread */
+
+package org.apache.milagro.amcl.loadtest;
+
+import org.apache.milagro.amcl.RAND;
+
+public interface Protocol {
+/* Issue a client secret for CLIENT_ID protected by pin */
+	Login register(byte[] CLIENT_ID,int pin);
+
+/* CLIENT_1, and the client's key share Z */
+	void client1(Login l,int pin,RAND rng);
+
+/* SERVER_1, the challenge Y and the server's key share T */
+	void server1(Login l,RAND rng);
+
+/* CLIENT_2 */
+	void client2(Login l);
+
+/* SERVER_2. Returns 0 if the client is authenticated */
+	int server2(Login l);
+
+/* SERVER_KEY */
+	void serverKey(Login l);
+
+/* CLIENT_KEY. Returns true if it matches the server key */
+	boolean clientKey(Login l,int pin);
+}
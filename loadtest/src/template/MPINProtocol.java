@@ -0,0 +1,106 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+*/
+
+/* M-Pin protocol steps on the @CURVE@ curve */
+
+package org.apache.milagro.amcl.loadtest.@CURVE@;
+
+import java.util.Arrays;
+import org.apache.milagro.amcl.RAND;
+import org.apache.milagro.amcl.@CURVE@.*;
+import org.apache.milagro.amcl.loadtest.Login;
+import org.apache.milagro.amcl.loadtest.Protocol;
+
+public final class MPINProtocol implements Protocol {
+	private static final int EGS=@MPIN@.EGS;
+	private static final int EFS=@MPIN@.EFS;
+	private static final int G1S=2*EFS+1;
+	private static final int sha=ECP.HASH_TYPE;
+
+	private final byte[] S=new byte[EGS];
+	private final byte[] SST=new byte[@G2S@*EFS];
+
+/* Generate master secret S and server secret SST */
+	public MPINProtocol(RAND rng)
+	{
+		@MPIN@.RANDOM_GENERATE(rng,S);
+		@MPIN@.GET_SERVER_SECRET(S,SST);
+	}
+
+	public Login register(byte[] CLIENT_ID,int pin)
+	{
+		Login l=new Login();
+		l.CLIENT_ID=CLIENT_ID;
+		l.HCID=@MPIN@.HASH_ID(sha,CLIENT_ID,EFS);
+		l.TOKEN=new byte[G1S];
+		l.G1=new byte[@GT@*EFS];
+		l.G2=new byte[@GT@*EFS];
+		@MPIN@.GET_CLIENT_SECRET(S,l.HCID,l.TOKEN);
+		@MPIN@.EXTRACT_PIN(sha,CLIENT_ID,pin,l.TOKEN);
+		@MPIN@.PRECOMPUTE(l.TOKEN,l.HCID,l.G1,l.G2);
+		return l;
+	}
+
+	public void client1(Login l,int pin,RAND rng)
+	{
+		l.X=new byte[EGS];
+		l.SEC=new byte[G1S];
+		l.xID=new byte[G1S];
+		l.R=new byte[EGS];
+		l.Z=new byte[G1S];
+		@MPIN@.CLIENT_1(sha,0,l.CLIENT_ID,rng,l.X,pin,l.TOKEN,l.SEC,l.xID,null,null);
+		@MPIN@.GET_G1_MULTIPLE(rng,1,l.R,l.HCID,l.Z);
+	}
+
+	public void server1(Login l,RAND rng)
+	{
+		l.HID=new byte[G1S];
+		l.Y=new byte[EGS];
+		l.W=new byte[EGS];
+		l.T=new byte[G1S];
+		@MPIN@.SERVER_1(sha,0,l.CLIENT_ID,l.HID,null);
+		@MPIN@.RANDOM_GENERATE(rng,l.Y);
+		@MPIN@.GET_G1_MULTIPLE(rng,0,l.W,l.HID,l.T);
+	}
+
+	public void client2(Login l)
+	{
+		@MPIN@.CLIENT_2(l.X,l.Y,l.SEC);
+	}
+
+	public int server2(Login l)
+	{
+		return @MPIN@.SERVER_2(0,l.HID,null,l.Y,SST,l.xID,null,l.SEC,null,null);
+	}
+
+	public void serverKey(Login l)
+	{
+		byte[] H=@MPIN@.HASH_ALL(sha,@MPIN@.HASH_ID(sha,l.CLIENT_ID,EFS),l.xID,null,l.SEC,l.Y,l.Z,l.T,EFS);
+		l.SK=new byte[ECP.AESKEY];
+		@MPIN@.SERVER_KEY(sha,l.Z,SST,l.W,H,l.HID,l.xID,null,l.SK);
+	}
+
+	public boolean clientKey(Login l,int pin)
+	{
+		byte[] H=@MPIN@.HASH_ALL(sha,l.HCID,l.xID,null,l.SEC,l.Y,l.Z,l.T,EFS);
+		l.CK=new byte[ECP.AESKEY];
+		@MPIN@.CLIENT_KEY(sha,l.G1,l.G2,pin,l.R,l.X,H,l.T,l.CK);
+		return Arrays.equals(l.CK,l.SK);
+	}
+}
@@ -0,0 +1,62 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+*/
+
+/* Constants of the field and curve, built from ROM once when first used and then shared */
+/* They must never be modified - copy them first */
+
+package org.apache.milagro.amcl.ANSSI;
+
+final class Constants {
+	static final BIG MODULUS=new BIG(ROM.Modulus);
+	static final BIG R2MODP=new BIG(ROM.R2modp);
+	static final BIG ORDER=new BIG(ROM.CURVE_Order);
+
+/* Exponents (p-5)/8 if p=5 mod 8 or else (p+1)/4 for FP.sqrt, and (p-3)/4 for FP.invsqrt */
+	static final BIG SQRTEXP=new BIG(MODULUS);
+	static final BIG INVSQRTEXP=new BIG(MODULUS);
+
+/* MODULUS_SHL[i] is MODULUS shifted left by i bits, for FP.neg */
+	static final BIG[] MODULUS_SHL=new BIG[32];
+
+	static
+	{
+		if (FP.MOD8==5)
+		{
+			SQRTEXP.dec(5); SQRTEXP.norm(); SQRTEXP.shr(3);
+		}
+		else
+		{
+			SQRTEXP.inc(1); SQRTEXP.norm(); SQRTEXP.shr(2);
+		}
+		INVSQRTEXP.dec(3); INVSQRTEXP.norm(); INVSQRTEXP.shr(2);
+		for (int i=0;i<MODULUS_SHL.length;i++)
+		{
+			MODULUS_SHL[i]=new BIG(MODULUS);
+			MODULUS_SHL[i].fshl(i);
+		}
+	}
+
+/* The field elements and points below are built with FP arithmetic, which uses the BIG constants above, so they must come last */
+/* B of the curve equation, for ECP.RHS, dbl and add. It must precede the generators, which are checked with RHS */
+	static final FP CURVE_B=new FP(new BIG(ROM.CURVE_B));
+
+	static final ECP G=new ECP(new BIG(ROM.CURVE_Gx),new BIG(ROM.CURVE_Gy));
+
+	private Constants() {}
+}
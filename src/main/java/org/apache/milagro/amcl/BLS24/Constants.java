@@ -0,0 +1,106 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+*/
+
+/* Constants of the field and curve, built from ROM once when first used and then shared */
+/* They must never be modified - copy them first */
+
+package org.apache.milagro.amcl.BLS24;
+
+final class Constants {
+	static final BIG MODULUS=new BIG(ROM.Modulus);
+	static final BIG R2MODP=new BIG(ROM.R2modp);
+	static final BIG ORDER=new BIG(ROM.CURVE_Order);
+	static final BIG BNX=new BIG(ROM.CURVE_Bnx);	/* curve parameter x, for the Miller loop */
+
+/* Exponents (p-5)/8 if p=5 mod 8 or else (p+1)/4 for FP.sqrt, and (p-3)/4 for FP.invsqrt */
+	static final BIG SQRTEXP=new BIG(MODULUS);
+	static final BIG INVSQRTEXP=new BIG(MODULUS);
+
+/* MODULUS_SHL[i] is MODULUS shifted left by i bits, for FP.neg */
+	static final BIG[] MODULUS_SHL=new BIG[32];
+
+	static
+	{
+		if (FP.MOD8==5)
+		{
+			SQRTEXP.dec(5); SQRTEXP.norm(); SQRTEXP.shr(3);
+		}
+		else
+		{
+			SQRTEXP.inc(1); SQRTEXP.norm(); SQRTEXP.shr(2);
+		}
+		INVSQRTEXP.dec(3); INVSQRTEXP.norm(); INVSQRTEXP.shr(2);
+		for (int i=0;i<MODULUS_SHL.length;i++)
+		{
+			MODULUS_SHL[i]=new BIG(MODULUS);
+			MODULUS_SHL[i].fshl(i);
+		}
+	}
+
+/* The field elements and points below are built with FP arithmetic, which uses the BIG constants above, so they must come last */
+/* B of the curve equation, for ECP.RHS, dbl and add. This and CURVE_BT must precede the generators, which are checked with RHS */
+	static final FP CURVE_B=new FP(new BIG(ROM.CURVE_B));
+
+/* B of the twisted curve, B/i for a D-type or B.i for an M-type twist, for ECP4.RHS */
+	static final FP4 CURVE_BT=new FP4(new FP2(CURVE_B));
+
+	static
+	{
+		if (ECP.SEXTIC_TWIST==ECP.D_TYPE)
+			CURVE_BT.div_i();
+		if (ECP.SEXTIC_TWIST==ECP.M_TYPE)
+			CURVE_BT.times_i();
+	}
+
+	static final ECP G=new ECP(new BIG(ROM.CURVE_Gx),new BIG(ROM.CURVE_Gy));
+	static final ECP4 G2=new ECP4(
+			new FP4(
+				new FP2(
+					new BIG(ROM.CURVE_Pxaa),new BIG(ROM.CURVE_Pxab)),
+				new FP2(
+					new BIG(ROM.CURVE_Pxba),new BIG(ROM.CURVE_Pxbb))),
+			new FP4(
+				new FP2(
+					new BIG(ROM.CURVE_Pyaa),new BIG(ROM.CURVE_Pyab)),
+				new FP2(
+					new BIG(ROM.CURVE_Pyba),new BIG(ROM.CURVE_Pybb))));
+
+/* Cube root of unity, for the GLV endomorphism on G1 */
+	static final FP CRU=new FP(new BIG(ROM.CURVE_Cru));
+
+/* Frobenius constants for the Frobenius endomorphism on G2, for FP24.frob */
+	static final FP2[] FROB_G2=ECP4.frob_constants();
+
+/* Frobenius constants f, f^2, f^3.i and (f^3.i)^2.i, for FP24.frob */
+	static final FP2 FROB=new FP2(new BIG(ROM.Fra),new BIG(ROM.Frb));
+	static final FP2 FROB2=new FP2(FROB);
+	static final FP2 FROB3=new FP2(FROB);
+	static final FP2 FROB_FF;
+
+	static
+	{
+		FROB2.sqr();
+		FROB3.mul(FROB2);
+		FROB3.mul_ip(); FROB3.norm();
+		FROB_FF=new FP2(FROB3); FROB_FF.sqr(); FROB_FF.mul_ip(); FROB_FF.norm();
+		FROB.reduce(); FROB2.reduce(); FROB3.reduce(); FROB_FF.reduce();
+	}
+
+	private Constants() {}
+}
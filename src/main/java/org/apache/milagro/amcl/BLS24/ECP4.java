@@ -21,7 +21,14 @@ under the License.
 
 package org.apache.milagro.amcl.BLS24;
 
+import org.apache.milagro.amcl.Tuning;
+
+import java.nio.ByteBuffer;
+
 public final class ECP4 {
+/* width of the signed windows of mul, see Tuning */
+	static final int WINDOW=Tuning.get("BLS24","ECP4.window",4,2,6);
+
 	private FP4 x;
 	private FP4 y;
 	private FP4 z;
@@ -106,6 +113,50 @@ public final class ECP4 {
 		cmove(MP,(int)(m&1));
 	}
 
+/* Constant time select from pre-computed table of any size, see FlatTable */
+	void select(FlatTable W,int b)
+	{
+		ECP4 MP=new ECP4(); 
+		long[] r=new long[W.k*BIG.NLEN];
+		int[] rx=new int[W.k];
+		int m=b>>31;
+		int babs=(b^m)-m;
+
+		babs=(babs-1)/2;
+		W.select(babs,r,rx);
+		fromFlat(r,rx,0,W.k==12);
+
+		MP.copy(this);
+		MP.neg();
+		cmove(MP,m&1);
+	}
+
+/* copy this to or from coefficients i.. of the flat representation. If z is false the point must be affine, and only x and y are held */
+	void toFlat(long[] w,int[] xes,int i,boolean z)
+	{
+		x.toFlat(w,xes,i);
+		y.toFlat(w,xes,i+4);
+		if (z) this.z.toFlat(w,xes,i+8);
+	}
+
+	void fromFlat(long[] w,int[] xes,int i,boolean z)
+	{
+		x.fromFlat(w,xes,i);
+		y.fromFlat(w,xes,i+4);
+		if (z) this.z.fromFlat(w,xes,i+8);
+		else this.z.one();
+	}
+
+/* Flatten table of points, which must all be affine if z is false */
+	static FlatTable flatten(ECP4[] W,boolean z)
+	{
+		int k=z?12:8;
+		FlatTable T=new FlatTable(W.length,k);
+		for (int i=0;i<W.length;i++)
+			W[i].toFlat(T.w,T.xes,k*i,z);
+		return T;
+	}
+
 /* Test if P == Q */
 	public boolean equals(ECP4 Q) {
 //		if (is_infinity() && Q.is_infinity()) return true;
@@ -181,83 +232,51 @@ public final class ECP4 {
 /* convert to byte array */
 	public void toBytes(byte[] b)
 	{
-		byte[] t=new byte[BIG.MODBYTES];
+		toBytes(ByteBuffer.wrap(b),false);
+	}
+/* convert to byte array. If compress is true write 0x02|sign(y) followed by x, 4*MODBYTES+1 bytes in all */
+	public void toBytes(byte[] b,boolean compress)
+	{
+		toBytes(ByteBuffer.wrap(b),compress);
+	}
+/* convert to bytes at the position of buffer b, advancing the position */
+	public void toBytes(ByteBuffer b,boolean compress)
+	{
 		ECP4 W=new ECP4(this);
-		//affine();
-		int MB=BIG.MODBYTES;
-
-		W.x.geta().getA().toBytes(t);
-		for (int i=0;i<MB;i++) 
-			b[i]=t[i];
-		W.x.geta().getB().toBytes(t);
-		for (int i=0;i<MB;i++) 
-			b[i+MB]=t[i];
-		W.x.getb().getA().toBytes(t);
-		for (int i=0;i<MB;i++) 
-			b[i+2*MB]=t[i];
-		W.x.getb().getB().toBytes(t);
-		for (int i=0;i<MB;i++) 
-			b[i+3*MB]=t[i];
-
-		W.y.geta().getA().toBytes(t);
-		for (int i=0;i<MB;i++) 
-			b[i+4*MB]=t[i];
-		W.y.geta().getB().toBytes(t);
-		for (int i=0;i<MB;i++) 
-			b[i+5*MB]=t[i];
-		W.y.getb().getA().toBytes(t);
-		for (int i=0;i<MB;i++) 
-			b[i+6*MB]=t[i];
-		W.y.getb().getB().toBytes(t);
-		for (int i=0;i<MB;i++) 
-			b[i+7*MB]=t[i];
-
-	
+		W.affine();
+		if (!compress)
+		{
+			W.x.toBytes(b);
+			W.y.toBytes(b);
+			return;
+		}
+		if (W.is_infinity())
+		{
+			for (int i=0;i<4*BIG.MODBYTES+1;i++) b.put((byte)0);
+			return;
+		}
+		b.put((byte)(0x02+W.y.sign()));
+		W.x.toBytes(b);
 	}
-
-/* convert from byte array to point */
+/* convert from byte array to point. Arrays of length 4*MODBYTES+1 are taken to be compressed */
 	public static ECP4 fromBytes(byte[] b)
 	{
-		byte[] t=new byte[BIG.MODBYTES];
-		BIG ra;
-		BIG rb;
-		int MB=BIG.MODBYTES;
-
-		for (int i=0;i<MB;i++) {t[i]=b[i];}
-		ra=BIG.fromBytes(t);
-		for (int i=0;i<MB;i++) {t[i]=b[i+MB];}
-		rb=BIG.fromBytes(t);
-
-		FP2 ra4=new FP2(ra,rb);
-
-		for (int i=0;i<MB;i++) {t[i]=b[i+2*MB];}
-		ra=BIG.fromBytes(t);
-		for (int i=0;i<MB;i++) {t[i]=b[i+3*MB];}
-		rb=BIG.fromBytes(t);
-
-		FP2 rb4=new FP2(ra,rb);
-
-		FP4 rx=new FP4(ra4,rb4);
-
-		for (int i=0;i<MB;i++) {t[i]=b[i+4*MB];}
-		ra=BIG.fromBytes(t);
-		for (int i=0;i<MB;i++) {t[i]=b[i+5*MB];}
-		rb=BIG.fromBytes(t);
-
-		ra4=new FP2(ra,rb);
-
-		for (int i=0;i<MB;i++) {t[i]=b[i+6*MB];}
-		ra=BIG.fromBytes(t);
-		for (int i=0;i<MB;i++) {t[i]=b[i+7*MB];}
-		rb=BIG.fromBytes(t);
-
-		rb4=new FP2(ra,rb);
-		FP4 ry=new FP4(ra4,rb4);
-
-
-		return new ECP4(rx,ry);
+		return fromBytes(ByteBuffer.wrap(b),b.length==4*BIG.MODBYTES+1);
+	}
+/* convert from bytes at the position of buffer b, advancing the position. If compressed is true read the form written by toBytes(b,true) */
+	public static ECP4 fromBytes(ByteBuffer b,boolean compressed)
+	{
+		if (compressed)
+		{
+			byte c=b.get();
+			FP4 x=FP4.fromBytes(b);
+			if (c!=0x02 && c!=0x03) return new ECP4();
+			return new ECP4(x,c&1);
+		}
+		FP4 x=FP4.fromBytes(b);
+		FP4 y=FP4.fromBytes(b);
+		return new ECP4(x,y);
 	}
-
 /* convert this to hex string */
 	public String toString() {
 		ECP4 W=new ECP4(this);	
@@ -271,20 +290,8 @@ public final class ECP4 {
 		x.norm();
 		FP4 r=new FP4(x);
 		r.sqr();
-		FP4 b=new FP4(new FP2(new BIG(ROM.CURVE_B)));
-
-		if (ECP.SEXTIC_TWIST==ECP.D_TYPE)
-		{
-			b.div_i();
-		}
-		if (ECP.SEXTIC_TWIST==ECP.M_TYPE)
-		{
-			b.times_i();
-		}
-
-
 		r.mul(x);
-		r.add(b);
+		r.add(Constants.CURVE_BT);
 
 		r.reduce();
 		return r;
@@ -317,6 +324,20 @@ public final class ECP4 {
 		else {inf(); /*x.zero();INF=true;*/}
 	}
 
+/* construct this from x and the sign s of y - but set to O if not on curve */
+	public ECP4(FP4 ix,int s) {
+		x=new FP4(ix);
+		y=new FP4(1);
+		z=new FP4(1);
+		FP4 rhs=RHS(x);
+		if (rhs.sqrt())
+		{
+			if (rhs.sign()!=s) {rhs.neg(); rhs.norm();}
+			y.copy(rhs);
+		}
+		else inf();
+	}
+
 /* this+=this */
 	public int dbl() {
 //		if (INF) return -1;      
@@ -513,8 +534,9 @@ public final class ECP4 {
 		ECP4 P=new ECP4();
 		ECP4 Q=new ECP4();
 		ECP4 C=new ECP4();
-		ECP4[] W=new ECP4[8];
-		byte[] w=new byte[1+(BIG.NLEN*BIG.BASEBITS+3)/4];
+		int wb=WINDOW,ts=1<<(wb-1);
+		FlatTable W=new FlatTable(ts,12);
+		byte[] w=new byte[2+(BIG.NLEN*BIG.BASEBITS+wb-1)/wb];
 
 		if (is_infinity()) return new ECP4();
 
@@ -523,14 +545,13 @@ public final class ECP4 {
 /* precompute table */
 		Q.copy(this);
 		Q.dbl();
-		W[0]=new ECP4();
-		W[0].copy(this);
+		C.copy(this);
+		C.toFlat(W.w,W.xes,0,true);
 
-		for (i=1;i<8;i++)
+		for (i=1;i<ts;i++)
 		{
-			W[i]=new ECP4();
-			W[i].copy(W[i-1]);
-			W[i].add(Q);
+			C.add(Q);
+			C.toFlat(W.w,W.xes,12*i,true);
 		}
 
 /* make exponent odd - add 2P if even, P if odd */
@@ -541,24 +562,21 @@ public final class ECP4 {
 		Q.cmove(this,ns);
 		C.copy(Q);
 
-		nb=1+(t.nbits()+3)/4;
-/* convert exponent to signed 4-bit window */
+		nb=1+(t.nbits()+wb-1)/wb;
+/* convert exponent to signed wb-bit window */
 		for (i=0;i<nb;i++)
 		{
-			w[i]=(byte)(t.lastbits(5)-16);
+			w[i]=(byte)(t.lastbits(wb+1)-(1<<wb));
 			t.dec(w[i]); t.norm();
-			t.fshr(4);	
+			t.fshr(wb);	
 		}
-		w[nb]=(byte)t.lastbits(5);
+		w[nb]=(byte)t.lastbits(wb+1);
 	
-		P.copy(W[(w[nb]-1)/2]);  
+		P.select(W,w[nb]);  
 		for (i=nb-1;i>=0;i--)
 		{
 			Q.select(W,w[i]);
-			P.dbl();
-			P.dbl();
-			P.dbl();
-			P.dbl();
+			for (b=0;b<wb;b++) P.dbl();
 			P.add(Q);
 		}
 		P.sub(C);
@@ -605,7 +623,7 @@ public final class ECP4 {
         T1[7] = new ECP4(); T1[7].copy(T1[3]); T1[7].add(Q[3]);  // Q[0]+Q[1]+Q[2]+Q[3]
 
 //  Use Frobenius 
-		FP2[] F=ECP4.frob_constants();
+		FP2[] F=Constants.FROB_G2;
 
 		for (i=0;i<8;i++) {
 			T2[i] = new ECP4(); T2[i].copy(T1[i]);
@@ -664,15 +682,19 @@ public final class ECP4 {
             }
         } 
 
+    // Flatten tables
+        FlatTable F1=flatten(T1,true);
+        FlatTable F2=flatten(T2,true);
+
     // Main loop
-        P.select(T1,(int)(2*w1[nb-1]+1));  
-		W.select(T2,(int)(2*w2[nb-1]+1)); 
+        P.select(F1,2*w1[nb-1]+1);  
+		W.select(F2,2*w2[nb-1]+1); 
 		P.add(W);
         for (i=nb-2;i>=0;i--) {
             P.dbl();
-            W.select(T1,(int)(2*w1[i]+s1[i]));
+            W.select(F1,2*w1[i]+s1[i]);
             P.add(W);
-            W.select(T2,(int)(2*w2[i]+s2[i]));
+            W.select(F2,2*w2[i]+s2[i]);
             P.add(W);
 
         }
@@ -693,7 +715,7 @@ public final class ECP4 {
 /* needed for SOK */
 	public static ECP4 mapit(byte[] h)
 	{
-		BIG q=new BIG(ROM.Modulus);
+		BIG q=Constants.MODULUS;
 		BIG x=BIG.fromBytes(h);
 		BIG one=new BIG(1);
 		FP4 X;
@@ -709,8 +731,8 @@ public final class ECP4 {
 			x.inc(1); x.norm();
 		}
 
-		FP2[] F=ECP4.frob_constants();
-		x=new BIG(ROM.CURVE_Bnx);
+		FP2[] F=Constants.FROB_G2;
+		x=Constants.BNX;
 
 /* Efficient hash maps to G2 on BLS curves - Budroni, Pintore */
 
@@ -749,20 +771,116 @@ public final class ECP4 {
 		return Q;
 	}
 
-	public static ECP4 generator()
+/* Fixed base comb method of Lim & Lee, with the sign aligned recoding used by mul4 */
+/* Table entries are G_0 plus subsets of G_j=2^(j.d).G_0 for j=1..COMB_TEETH-1, where d is the number of columns */
+	public static final int COMB_TEETH=8;
+
+/* number of comb columns */
+	private static int combcols()
 	{
+		BIG r=Constants.ORDER;
+		return (r.nbits()+COMB_TEETH-1)/COMB_TEETH;
+	}
+
+/* Build comb table for fixed base G. Entries are held affine. The table is never modified, so may be shared */
+	public static FlatTable mkcomb(ECP4 G)
+	{
+		int i,j,d=combcols();
+		ECP4[] B=new ECP4[COMB_TEETH];
+		ECP4[] T=new ECP4[1<<(COMB_TEETH-1)];
+
+		B[0]=new ECP4(G);
+		for (j=1;j<COMB_TEETH;j++)
+		{
+			B[j]=new ECP4(B[j-1]);
+			for (i=0;i<d;i++) B[j].dbl();
+		}
+		T[0]=new ECP4(B[0]);
+		for (j=1;j<COMB_TEETH;j++)
+		{
+			for (i=(1<<(j-1));i<(1<<j);i++)
+			{
+				T[i]=new ECP4(T[i-(1<<(j-1))]);
+				T[i].add(B[j]);
+			}
+		}
+		for (i=0;i<T.length;i++) T[i].affine();
+		return flatten(T,false);
+	}
 
-		return new ECP4(
-			new FP4(
-				new FP2(
-					new BIG(ROM.CURVE_Pxaa),new BIG(ROM.CURVE_Pxab)),
-				new FP2(
-					new BIG(ROM.CURVE_Pxba),new BIG(ROM.CURVE_Pxbb))),
-			new FP4(
-				new FP2(
-					new BIG(ROM.CURVE_Pyaa),new BIG(ROM.CURVE_Pyab)),
-				new FP2(
-					new BIG(ROM.CURVE_Pyba),new BIG(ROM.CURVE_Pybb))));
+/* P=e.G where T=mkcomb(G). Side channel attack secure */
+	public static ECP4 mulcomb(FlatTable T,BIG e)
+	{
+		int i,j,d,nb,pb;
+		ECP4 W=new ECP4();
+		ECP4 P=new ECP4();
+		BIG r=Constants.ORDER;
+		BIG k=new BIG(e);
+		BIG[] t=new BIG[COMB_TEETH];
+
+		byte[] w=new byte[BIG.NLEN*BIG.BASEBITS+1];
+		byte[] s=new byte[BIG.NLEN*BIG.BASEBITS+1];
+
+		d=combcols();
+		nb=d+1;
+		k.mod(r);
+
+    // Make it odd
+		pb=1-k.parity();
+		k.inc(pb);
+		k.norm();
+
+    // Split into teeth
+		for (j=0;j<COMB_TEETH;j++)
+		{
+			t[j]=new BIG(k);
+			t[j].shr(j*d);
+			t[j].mod2m(d);
+		}
+
+    // Sign pivot 
+		s[nb-1]=1;
+		for (i=0;i<nb-1;i++) {
+			t[0].fshr(1);
+			s[i]=(byte)(2*t[0].parity()-1);
+		}
+
+    // Recoded exponent
+		for (i=0;i<nb;i++) {
+			w[i]=0;
+			int m=1;
+			for (j=1;j<COMB_TEETH;j++) {
+				byte bt=(byte)(s[i]*t[j].parity());
+				t[j].fshr(1);
+				t[j].dec((int)(bt)>>1);
+				t[j].norm();
+				w[i]+=bt*(byte)m;
+				m*=2;
+			}
+		}
+
+    // Main loop
+		P.select(T,2*w[nb-1]+1);  
+		for (i=nb-2;i>=0;i--) {
+			P.dbl();
+			W.select(T,2*w[i]+s[i]);
+			P.add(W);
+		}
+
+    // apply correction
+		long[] tw=new long[T.k*BIG.NLEN];
+		int[] tx=new int[T.k];
+		T.get(0,tw,tx);
+		W.fromFlat(tw,tx,0,T.k==12);
+		W.neg(); W.add(P);
+		P.cmove(W,pb);   
+		P.affine();
+		return P;
+	}
+
+	public static ECP4 generator()
+	{
+		return new ECP4(Constants.G2);
 	}
 
 }
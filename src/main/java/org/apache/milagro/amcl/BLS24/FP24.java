@@ -22,6 +22,9 @@ under the License.
 
 package org.apache.milagro.amcl.BLS24;
 
+import java.nio.ByteBuffer;
+import org.apache.milagro.amcl.OpCounter;
+
 public final class FP24 {
 	private final FP8 a;
 	private final FP8 b;
@@ -85,6 +88,32 @@ public final class FP24 {
 		cmove(invf,(int)(m&1));
 	}
 
+/* Constant time select from pre-computed table of any size, see FlatTable */
+	void select(FlatTable g,int b)
+	{
+		long[] r=new long[24*BIG.NLEN];
+		int[] rx=new int[24];
+		int m=b>>31;
+		int babs=(b^m)-m;
+
+		babs=(babs-1)/2;
+		g.select(babs,r,rx);
+		fromFlat(r,rx,0);
+
+		FP24 invf=new FP24(this); 
+		invf.conj();
+		cmove(invf,m&1);
+	}
+
+/* Flatten table */
+	static FlatTable flatten(FP24[] g)
+	{
+		FlatTable T=new FlatTable(g.length,24);
+		for (int i=0;i<g.length;i++)
+			g[i].toFlat(T.w,T.xes,24*i);
+		return T;
+	}
+
 	/* test x==1 ? */
 	public boolean isunity() {
 		FP8 one=new FP8(1);
@@ -117,6 +146,21 @@ public final class FP24 {
 		b.copy(x.b);
 		c.copy(x.c);
 	}
+
+/* copy this to or from coefficients i.. of the flat representation, see FP24Flat */
+	void toFlat(long[] w,int[] xes,int i)
+	{
+		a.toFlat(w,xes,i);
+		b.toFlat(w,xes,i+8);
+		c.toFlat(w,xes,i+16);
+	}
+
+	void fromFlat(long[] w,int[] xes,int i)
+	{
+		a.fromFlat(w,xes,i);
+		b.fromFlat(w,xes,i+8);
+		c.fromFlat(w,xes,i+16);
+	}
 /* set this=1 */
 	public void one()
 	{
@@ -244,6 +288,7 @@ public final class FP24 {
 /* FP12 full multiplication this=this*y */
 	public void mul(FP24 y)
 	{
+		if (OpCounter.ENABLED) OpCounter.count(OpCounter.FP24_MUL);
 //System.out.println("Into mul");
 		FP8 z0=new FP8(a);
 		FP8 z1=new FP8(0);
@@ -398,6 +443,144 @@ t1.norm();
 		norm();
 	}
 
+/* Multiplication of two line functions this=this*y, 7 Fp4 multiplications */
+/* D_TYPE result has c=(c0,0), M_TYPE result has b=(0,b1), ready for smul2 */
+	public void ssmul(FP24 y,int type)
+	{
+		if (type==ECP.D_TYPE)
+		{
+			FP8 z0=new FP8(a);
+			FP4 z2=new FP4(b.real());
+			FP8 t0=new FP8(a);
+			FP8 t1=new FP8(y.a);
+
+			z0.mul(y.a);
+			z2.mul(y.b.real());
+
+			t0.add(b);
+			t1.add(y.b);
+			t0.norm();
+			t1.norm();
+			t0.mul(t1);
+
+			FP8 t2=new FP8(z2);
+			t1.copy(z0); t1.neg();
+			t0.add(t1);
+			t1.copy(t2); t1.neg();
+			t0.add(t1);
+
+			a.copy(z0);
+			b.copy(t0);
+			c.copy(t2);
+		}
+		if (type==ECP.M_TYPE)
+		{
+			FP8 z0=new FP8(a);
+			FP4 z2=new FP4(c.getb());
+			FP8 t0=new FP8(a);
+			FP8 t1=new FP8(y.a);
+
+			z0.mul(y.a);
+			z2.mul(y.c.getb());
+			z2.times_i();
+			z2.norm();
+
+			t0.add(c);
+			t1.add(y.c);
+			t0.norm();
+			t1.norm();
+			t0.mul(t1);
+
+			FP8 t2=new FP8(z2);
+			t1.copy(z0); t1.neg();
+			t0.add(t1);
+			t1.copy(t2); t1.neg();
+			t0.add(t1);
+
+			t2.times_i();
+			a.copy(z0);
+			b.copy(t2);
+			c.copy(t0);
+		}
+		norm();
+	}
+
+/* Multiplication by the product of two line functions this=this*y, where y is output of ssmul */
+	public void smul2(FP24 y,int type)
+	{
+		FP8 z0=new FP8(a);
+		FP8 z1=new FP8(0);
+		FP8 z2=new FP8(b);
+		FP8 z3=new FP8(0);
+		FP8 t0=new FP8(a);
+		FP8 t1=new FP8(y.a);
+
+		z0.mul(y.a);
+		if (type==ECP.D_TYPE)
+		{
+			z2.mul(y.b);
+		}
+		if (type==ECP.M_TYPE)
+		{
+			z2.pmul(y.b.getb());
+			z2.times_i();
+		}
+
+		t0.add(b);
+		t1.add(y.b);
+
+		t0.norm();
+		t1.norm();
+
+		z1.copy(t0); z1.mul(t1);
+		t0.copy(b); t0.add(c);
+
+		t1.copy(y.b); t1.add(y.c);
+
+		t0.norm();
+		t1.norm();
+
+		z3.copy(t0); z3.mul(t1);
+
+		t0.copy(z0); t0.neg();
+		t1.copy(z2); t1.neg();
+
+		z1.add(t0);
+		b.copy(z1); b.add(t1);
+
+		z3.add(t1);
+		z2.add(t0);
+
+		t0.copy(a); t0.add(c);
+		t1.copy(y.a); t1.add(y.c);
+
+		t0.norm();
+		t1.norm();
+
+		t0.mul(t1);
+		z2.add(t0);
+
+		t0.copy(c);
+		if (type==ECP.D_TYPE)
+		{
+			t0.pmul(y.c.real());
+		}
+		if (type==ECP.M_TYPE)
+		{
+			t0.mul(y.c);
+		}
+		t1.copy(t0); t1.neg();
+
+		c.copy(z2); c.add(t1);
+		z3.add(t1);
+		t0.times_i();
+		b.add(t0);
+		z3.norm();
+		z3.times_i();
+		a.copy(z0); a.add(z3);
+		norm();
+	}
+
 /* this=1/this */
 	public void inverse()
 	{
@@ -461,6 +644,20 @@ t1.norm();
 		}
 	}
 
+/* this=this^(p^n) using the precomputed Frobenius constants */
+	public void frob(int n)
+	{
+		for (int i=0;i<n;i++)
+		{
+			a.frob(Constants.FROB3,Constants.FROB_FF);
+			b.frob(Constants.FROB3,Constants.FROB_FF);
+			c.frob(Constants.FROB3,Constants.FROB_FF);
+
+			b.qmul(Constants.FROB); b.times_i2();
+			c.qmul(Constants.FROB2); c.times_i2(); c.times_i2();
+		}
+	}
+
 /* trace function */
 	public FP8 trace()
 	{
@@ -471,170 +668,81 @@ t1.norm();
 		return t;
 	}
 
-/* convert from byte array to FP12 */
+/* convert from byte array to FP24. Arrays of length 12*MODBYTES are taken to be torus-compressed, see toBytes(w,true) */
 	public static FP24 fromBytes(byte[] w)
 	{
-		BIG a,b;
-		FP2 c,d;
-		FP4 ea,eb;
-		FP8 e,f,g;
-		byte[] t=new byte[BIG.MODBYTES];
-
-		for (int i=0;i<BIG.MODBYTES;i++) t[i]=w[i];
-		a=BIG.fromBytes(t);
-		for (int i=0;i<BIG.MODBYTES;i++) t[i]=w[i+BIG.MODBYTES];
-		b=BIG.fromBytes(t);
-		c=new FP2(a,b);
-
-		for (int i=0;i<BIG.MODBYTES;i++) t[i]=w[i+2*BIG.MODBYTES];
-		a=BIG.fromBytes(t);
-		for (int i=0;i<BIG.MODBYTES;i++) t[i]=w[i+3*BIG.MODBYTES];
-		b=BIG.fromBytes(t);
-		d=new FP2(a,b);
-
-		ea=new FP4(c,d);
-
-		for (int i=0;i<BIG.MODBYTES;i++) t[i]=w[i+4*BIG.MODBYTES];
-		a=BIG.fromBytes(t);
-		for (int i=0;i<BIG.MODBYTES;i++) t[i]=w[i+5*BIG.MODBYTES];
-		b=BIG.fromBytes(t);
-		c=new FP2(a,b);
-
-		for (int i=0;i<BIG.MODBYTES;i++) t[i]=w[i+6*BIG.MODBYTES];
-		a=BIG.fromBytes(t);
-		for (int i=0;i<BIG.MODBYTES;i++) t[i]=w[i+7*BIG.MODBYTES];
-		b=BIG.fromBytes(t);
-		d=new FP2(a,b);
-
-		eb=new FP4(c,d);
-
-		e=new FP8(ea,eb);
-
-
-		for (int i=0;i<BIG.MODBYTES;i++) t[i]=w[i+8*BIG.MODBYTES];
-		a=BIG.fromBytes(t);
-		for (int i=0;i<BIG.MODBYTES;i++) t[i]=w[i+9*BIG.MODBYTES];
-		b=BIG.fromBytes(t);
-		c=new FP2(a,b);
-
-		for (int i=0;i<BIG.MODBYTES;i++) t[i]=w[i+10*BIG.MODBYTES];
-		a=BIG.fromBytes(t);
-		for (int i=0;i<BIG.MODBYTES;i++) t[i]=w[i+11*BIG.MODBYTES];
-		b=BIG.fromBytes(t);
-		d=new FP2(a,b);
-
-		ea=new FP4(c,d);
-
-		for (int i=0;i<BIG.MODBYTES;i++) t[i]=w[i+12*BIG.MODBYTES];
-		a=BIG.fromBytes(t);
-		for (int i=0;i<BIG.MODBYTES;i++) t[i]=w[i+13*BIG.MODBYTES];
-		b=BIG.fromBytes(t);
-		c=new FP2(a,b);
-
-		for (int i=0;i<BIG.MODBYTES;i++) t[i]=w[i+14*BIG.MODBYTES];
-		a=BIG.fromBytes(t);
-		for (int i=0;i<BIG.MODBYTES;i++) t[i]=w[i+15*BIG.MODBYTES];
-		b=BIG.fromBytes(t);
-		d=new FP2(a,b);
-
-		eb=new FP4(c,d);
-
-		f=new FP8(ea,eb);
-
-
-		for (int i=0;i<BIG.MODBYTES;i++) t[i]=w[i+16*BIG.MODBYTES];
-		a=BIG.fromBytes(t);
-		for (int i=0;i<BIG.MODBYTES;i++) t[i]=w[i+17*BIG.MODBYTES];
-		b=BIG.fromBytes(t);
-		c=new FP2(a,b);
-
-		for (int i=0;i<BIG.MODBYTES;i++) t[i]=w[i+18*BIG.MODBYTES];
-		a=BIG.fromBytes(t);
-		for (int i=0;i<BIG.MODBYTES;i++) t[i]=w[i+19*BIG.MODBYTES];
-		b=BIG.fromBytes(t);
-		d=new FP2(a,b);
-
-		ea=new FP4(c,d);
-
-		for (int i=0;i<BIG.MODBYTES;i++) t[i]=w[i+20*BIG.MODBYTES];
-		a=BIG.fromBytes(t);
-		for (int i=0;i<BIG.MODBYTES;i++) t[i]=w[i+21*BIG.MODBYTES];
-		b=BIG.fromBytes(t);
-		c=new FP2(a,b);
-
-		for (int i=0;i<BIG.MODBYTES;i++) t[i]=w[i+22*BIG.MODBYTES];
-		a=BIG.fromBytes(t);
-		for (int i=0;i<BIG.MODBYTES;i++) t[i]=w[i+23*BIG.MODBYTES];
-		b=BIG.fromBytes(t);
-		d=new FP2(a,b);
-
-		eb=new FP4(c,d);
-
-		g=new FP8(ea,eb);
+		return fromBytes(ByteBuffer.wrap(w),w.length==12*BIG.MODBYTES);
+	}
 
+/* convert from bytes at the position of buffer w, advancing the position. If compressed is true read the torus-compressed form */
+	public static FP24 fromBytes(ByteBuffer w,boolean compressed)
+	{
+		if (compressed) return fromCompressedBytes(w);
+		FP8 e=FP8.fromBytes(w);
+		FP8 f=FP8.fromBytes(w);
+		FP8 g=FP8.fromBytes(w);
 		return new FP24(e,f,g);
 	}
 
 /* convert this to byte array */
 	public void toBytes(byte[] w)
 	{
-		byte[] t=new byte[BIG.MODBYTES];
-
-		a.geta().geta().getA().toBytes(t);
-		for (int i=0;i<BIG.MODBYTES;i++) w[i]=t[i];
-		a.geta().geta().getB().toBytes(t);
-		for (int i=0;i<BIG.MODBYTES;i++) w[i+BIG.MODBYTES]=t[i];
-		a.geta().getb().getA().toBytes(t);
-		for (int i=0;i<BIG.MODBYTES;i++) w[i+2*BIG.MODBYTES]=t[i];
-		a.geta().getb().getB().toBytes(t);
-		for (int i=0;i<BIG.MODBYTES;i++) w[i+3*BIG.MODBYTES]=t[i];
-
-		a.getb().geta().getA().toBytes(t);
-		for (int i=0;i<BIG.MODBYTES;i++) w[i+4*BIG.MODBYTES]=t[i];
-		a.getb().geta().getB().toBytes(t);
-		for (int i=0;i<BIG.MODBYTES;i++) w[i+5*BIG.MODBYTES]=t[i];
-		a.getb().getb().getA().toBytes(t);
-		for (int i=0;i<BIG.MODBYTES;i++) w[i+6*BIG.MODBYTES]=t[i];
-		a.getb().getb().getB().toBytes(t);
-		for (int i=0;i<BIG.MODBYTES;i++) w[i+7*BIG.MODBYTES]=t[i];
-
-
-		b.geta().geta().getA().toBytes(t);
-		for (int i=0;i<BIG.MODBYTES;i++) w[i+8*BIG.MODBYTES]=t[i];
-		b.geta().geta().getB().toBytes(t);
-		for (int i=0;i<BIG.MODBYTES;i++) w[i+9*BIG.MODBYTES]=t[i];
-		b.geta().getb().getA().toBytes(t);
-		for (int i=0;i<BIG.MODBYTES;i++) w[i+10*BIG.MODBYTES]=t[i];
-		b.geta().getb().getB().toBytes(t);
-		for (int i=0;i<BIG.MODBYTES;i++) w[i+11*BIG.MODBYTES]=t[i];
-
-		b.getb().geta().getA().toBytes(t);
-		for (int i=0;i<BIG.MODBYTES;i++) w[i+12*BIG.MODBYTES]=t[i];
-		b.getb().geta().getB().toBytes(t);
-		for (int i=0;i<BIG.MODBYTES;i++) w[i+13*BIG.MODBYTES]=t[i];
-		b.getb().getb().getA().toBytes(t);
-		for (int i=0;i<BIG.MODBYTES;i++) w[i+14*BIG.MODBYTES]=t[i];
-		b.getb().getb().getB().toBytes(t);
-		for (int i=0;i<BIG.MODBYTES;i++) w[i+15*BIG.MODBYTES]=t[i];
-
-		c.geta().geta().getA().toBytes(t);
-		for (int i=0;i<BIG.MODBYTES;i++) w[i+16*BIG.MODBYTES]=t[i];
-		c.geta().geta().getB().toBytes(t);
-		for (int i=0;i<BIG.MODBYTES;i++) w[i+17*BIG.MODBYTES]=t[i];
-		c.geta().getb().getA().toBytes(t);
-		for (int i=0;i<BIG.MODBYTES;i++) w[i+18*BIG.MODBYTES]=t[i];
-		c.geta().getb().getB().toBytes(t);
-		for (int i=0;i<BIG.MODBYTES;i++) w[i+19*BIG.MODBYTES]=t[i];
-
-		c.getb().geta().getA().toBytes(t);
-		for (int i=0;i<BIG.MODBYTES;i++) w[i+20*BIG.MODBYTES]=t[i];
-		c.getb().geta().getB().toBytes(t);
-		for (int i=0;i<BIG.MODBYTES;i++) w[i+21*BIG.MODBYTES]=t[i];
-		c.getb().getb().getA().toBytes(t);
-		for (int i=0;i<BIG.MODBYTES;i++) w[i+22*BIG.MODBYTES]=t[i];
-		c.getb().getb().getB().toBytes(t);
-		for (int i=0;i<BIG.MODBYTES;i++) w[i+23*BIG.MODBYTES]=t[i];
+		toBytes(ByteBuffer.wrap(w),false);
+	}
+
+/* Torus compression of an element g of the cyclotomic subgroup, such as the output of PAIR.fexp */
+/* h=(1+g)/(1-g) satisfies conj(h)=-h, so only its coefficients a.b, b.a and c.b are non-zero */
+/* If compress is true output is 12*MODBYTES, half the size of toBytes(w). The identity is encoded as zero */
+	public void toBytes(byte[] w,boolean compress)
+	{
+		toBytes(ByteBuffer.wrap(w),compress);
+	}
+
+/* convert to bytes at the position of buffer w, advancing the position. If compress is true write the torus-compressed form */
+	public void toBytes(ByteBuffer w,boolean compress)
+	{
+		if (!compress)
+		{
+			a.toBytes(w);
+			b.toBytes(w);
+			c.toBytes(w);
+			return;
+		}
+		FP8 one=new FP8(1);
+		FP24 h=new FP24(this);
+		FP24 d=new FP24(this);
+
+		h.a.add(one);
+		d.a.neg(); d.b.neg(); d.c.neg();
+		d.a.add(one);
+		h.norm(); d.norm();
+		d.inverse();
+		h.mul(d);
+		h.reduce();
+
+		h.a.getb().toBytes(w);
+		h.b.geta().toBytes(w);
+		h.c.getb().toBytes(w);
+	}
+
+/* Recover g=(h-1)/(h+1) from torus-compressed h */
+	private static FP24 fromCompressedBytes(ByteBuffer w)
+	{
+		FP4 s0=FP4.fromBytes(w);
+		FP4 s1=FP4.fromBytes(w);
+		FP4 s2=FP4.fromBytes(w);
+		FP24 h=new FP24(new FP8(new FP4(0),s0),new FP8(s1,new FP4(0)),new FP8(new FP4(0),s2));
+		if (h.iszilch()) return new FP24(1);
 
+		FP8 one=new FP8(1);
+		FP24 g=new FP24(h);
+		g.a.sub(one);
+		h.a.add(one);
+		g.norm(); h.norm();
+		h.inverse();
+		g.mul(h);
+		g.reduce();
+		return g;
 	}
 
 /* convert to hex string */
@@ -692,8 +800,7 @@ t1.norm();
 	{
 		FP24 g1=new FP24(0);
 		FP24 g2=new FP24(0);
-		FP2 f=new FP2(new BIG(ROM.Fra),new BIG(ROM.Frb));
-		BIG q=new BIG(ROM.Modulus);
+		BIG q=Constants.MODULUS;
 
 		BIG m=new BIG(q);
 		m.mod(r);
@@ -715,7 +822,7 @@ t1.norm();
 			return c;
 		}
 
-		g2.frob(f,1);
+		g2.frob(1);
 		FP8 cp=g2.trace();
 		g1.conj();
 		g2.mul(g1);
@@ -763,11 +870,10 @@ t1.norm();
 		g1[7]=new FP24(g1[3]); g1[7].mul(q[3]); // q[0].q[1].q[2].q[3]
 
 // Use Frobenius
-		FP2 f=new FP2(new BIG(ROM.Fra),new BIG(ROM.Frb));
 		for (i=0;i<8;i++)
 		{
 			g2[i]=new FP24(g1[i]);
-			g2[i].frob(f,4);
+			g2[i].frob(4);
 		}
 
     // Make it odd
@@ -822,15 +928,19 @@ t1.norm();
             }
         } 
 
+    // Flatten tables
+        FlatTable G1=flatten(g1);
+        FlatTable G2=flatten(g2);
+
      // Main loop
-        p.select(g1,(int)(2*w1[nb-1]+1)); 
-		r.select(g2,(int)(2*w2[nb-1]+1)); 
+        p.select(G1,2*w1[nb-1]+1); 
+		r.select(G2,2*w2[nb-1]+1); 
 		p.mul(r);
         for (i=nb-2;i>=0;i--) {
             p.usqr();
-            r.select(g1,(int)(2*w1[i]+s1[i]));
+            r.select(G1,2*w1[i]+s1[i]);
             p.mul(r);
-            r.select(g2,(int)(2*w2[i]+s2[i]));
+            r.select(G2,2*w2[i]+s2[i]);
             p.mul(r);
 
         }
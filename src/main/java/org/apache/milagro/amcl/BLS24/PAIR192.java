@@ -21,12 +21,16 @@ under the License.
 
 package org.apache.milagro.amcl.BLS24;
 
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
 public final class PAIR192 {
 
 	public static final boolean USE_GLV =true;
 	public static final boolean USE_GS_G2 =true;
 	public static final boolean USE_GS_GT =true;	
 	public static final boolean GT_STRONG=false;
+	public static final int MP_MIN_PAIRS=4; /* minimum number of pairs per task in a parallel multi-pairing */
 
 
 /* Line function */
@@ -137,9 +141,9 @@ public final class PAIR192 {
 	public static FP24 ate(ECP4 P1,ECP Q1)
 	{
 		FP2 f;
-		BIG x=new BIG(ROM.CURVE_Bnx);
+		BIG x=Constants.BNX;
 		BIG n=new BIG(x);
-		FP24 lv;
+		FP24 lv,lv2;
 		int bt;
 		
 		ECP4 P=new ECP4(P1);
@@ -156,7 +160,7 @@ public final class PAIR192 {
 		FP Qy=new FP(Q.gety());
 
 		ECP4 A=new ECP4();
-		FP24 r=new FP24(1);
+		FP24Flat r=new FP24Flat(1);
 		A.copy(P);
 
 		ECP4 MP=new ECP4();
@@ -168,20 +172,23 @@ public final class PAIR192 {
 		{
 			r.sqr();
 			lv=line(A,A,Qx,Qy);
-			r.smul(lv,ECP.SEXTIC_TWIST);
 
 			bt=n3.bit(i)-n.bit(i); // bt=n.bit(i);
 			if (bt==1)
 			{
-				lv=line(A,P,Qx,Qy);
-				r.smul(lv,ECP.SEXTIC_TWIST);
+				lv2=line(A,P,Qx,Qy);
+				lv.ssmul(lv2,ECP.SEXTIC_TWIST);
+				r.smul2(lv,ECP.SEXTIC_TWIST);
 			}
 			if (bt==-1)
 			{
-				//P.neg();
-				lv=line(A,MP,Qx,Qy);
+				lv2=line(A,MP,Qx,Qy);
+				lv.ssmul(lv2,ECP.SEXTIC_TWIST);
+				r.smul2(lv,ECP.SEXTIC_TWIST);
+			}
+			if (bt==0)
+			{
 				r.smul(lv,ECP.SEXTIC_TWIST);
-				//P.neg();
 			}
 		}
 
@@ -190,16 +197,16 @@ public final class PAIR192 {
 			r.conj();
 		}
 
-		return r;
+		return r.toFP24();
 	}
 
 /* Optimal R-ate double pairing e(P,Q).e(R,S) */
 	public static FP24 ate2(ECP4 P1,ECP Q1,ECP4 R1,ECP S1)
 	{
 		FP2 f;
-		BIG x=new BIG(ROM.CURVE_Bnx);
+		BIG x=Constants.BNX;
 		BIG n=new BIG(x);
-		FP24 lv;
+		FP24 lv,lv2;
 		int bt;
 
 		ECP4 P=new ECP4(P1);
@@ -226,7 +233,7 @@ public final class PAIR192 {
 
 		ECP4 A=new ECP4();
 		ECP4 B=new ECP4();
-		FP24 r=new FP24(1);
+		FP24Flat r=new FP24Flat(1);
 
 		A.copy(P);
 		B.copy(R);
@@ -243,29 +250,24 @@ public final class PAIR192 {
 		{
 			r.sqr();
 			lv=line(A,A,Qx,Qy);
-			r.smul(lv,ECP.SEXTIC_TWIST);
-
-			lv=line(B,B,Sx,Sy);
-			r.smul(lv,ECP.SEXTIC_TWIST);
+			lv2=line(B,B,Sx,Sy);
+			lv.ssmul(lv2,ECP.SEXTIC_TWIST);
+			r.smul2(lv,ECP.SEXTIC_TWIST);
 
 			bt=n3.bit(i)-n.bit(i); // bt=n.bit(i);
 			if (bt==1)
 			{
 				lv=line(A,P,Qx,Qy);
-				r.smul(lv,ECP.SEXTIC_TWIST);
-				lv=line(B,R,Sx,Sy);
-				r.smul(lv,ECP.SEXTIC_TWIST);
+				lv2=line(B,R,Sx,Sy);
+				lv.ssmul(lv2,ECP.SEXTIC_TWIST);
+				r.smul2(lv,ECP.SEXTIC_TWIST);
 			}
 			if (bt==-1)
 			{
-				//P.neg(); 
 				lv=line(A,MP,Qx,Qy);
-				r.smul(lv,ECP.SEXTIC_TWIST);
-				//P.neg(); 
-				//R.neg();
-				lv=line(B,MR,Sx,Sy);
-				r.smul(lv,ECP.SEXTIC_TWIST);
-				//R.neg();
+				lv2=line(B,MR,Sx,Sy);
+				lv.ssmul(lv2,ECP.SEXTIC_TWIST);
+				r.smul2(lv,ECP.SEXTIC_TWIST);
 			}
 		}
 
@@ -274,99 +276,225 @@ public final class PAIR192 {
 			r.conj();
 		}
 
+		return r.toFP24();
+	}
+
+/* Calculate Miller loop bits n and n3=3n, returns number of bits in n3 */
+	private static int lbits(BIG n3,BIG n)
+	{
+		n.copy(Constants.BNX);
+		n3.copy(n);
+		n3.pmul(3);
+		n3.norm();
+		return n3.nbits();
+	}
+
+/* prepare for multi-pairing */
+	public static FP24[] initmp()
+	{
+		BIG n=new BIG(0);
+		BIG n3=new BIG(0);
+		int nb=lbits(n3,n);
+		FP24[] r=new FP24[nb-1];
+		for (int i=nb-2;i>=0;i--)
+			r[i]=new FP24(1);
 		return r;
 	}
 
+/* Accumulate the lines of another pairing e(P,Q) into r, without the squarings of the Miller loop */
+	public static void another(FP24[] r,ECP4 P1,ECP Q1)
+	{
+		BIG n=new BIG(0);
+		BIG n3=new BIG(0);
+		FP24 lv,lv2;
+		int bt;
+
+		ECP4 P=new ECP4(P1);
+		ECP Q=new ECP(Q1);
+
+		P.affine();
+		Q.affine();
+
+		int nb=lbits(n3,n);
+
+		FP Qx=new FP(Q.getx());
+		FP Qy=new FP(Q.gety());
+
+		ECP4 A=new ECP4();
+		A.copy(P);
+
+		ECP4 MP=new ECP4();
+		MP.copy(P); MP.neg();
+
+		for (int i=nb-2;i>=1;i--)
+		{
+			lv=line(A,A,Qx,Qy);
+
+			bt=n3.bit(i)-n.bit(i);
+			if (bt==1)
+			{
+				lv2=line(A,P,Qx,Qy);
+				lv.ssmul(lv2,ECP.SEXTIC_TWIST);
+				r[i].smul2(lv,ECP.SEXTIC_TWIST);
+			}
+			if (bt==-1)
+			{
+				lv2=line(A,MP,Qx,Qy);
+				lv.ssmul(lv2,ECP.SEXTIC_TWIST);
+				r[i].smul2(lv,ECP.SEXTIC_TWIST);
+			}
+			if (bt==0)
+			{
+				r[i].smul(lv,ECP.SEXTIC_TWIST);
+			}
+		}
+	}
+
+/* Complete the Miller loop of a multi-pairing, result still needs fexp */
+	public static FP24 miller(FP24[] r)
+	{
+		FP24Flat res=new FP24Flat(1);
+		for (int i=r.length-1;i>=1;i--)
+		{
+			res.sqr();
+			res.mul(r[i]);
+		}
+
+		if (ECP.SIGN_OF_X==ECP.NEGATIVEX)
+		{
+			res.conj();
+		}
+		res.mul(r[0]);
+		return res.toFP24();
+	}
+
+/* Miller loop for the product of pairings e(P[0],Q[0]).e(P[1],Q[1])... sharing all the squarings */
+	public static FP24 multi(ECP4[] P,ECP[] Q)
+	{
+		return multi(P,Q,0,P.length);
+	}
+
+	private static FP24 multi(ECP4[] P,ECP[] Q,int from,int to)
+	{
+		FP24[] r=initmp();
+		for (int i=from;i<to;i++)
+			another(r,P[i],Q[i]);
+		return miller(r);
+	}
+
+/* As above, but the pairs are partitioned across the threads of pool, and partial Miller loops multiplied together. If pool is null the pairs are done serially */
+	public static FP24 multi(ECP4[] P,ECP[] Q,ForkJoinPool pool)
+	{
+		int n=P.length;
+		if (pool==null) return multi(P,Q,0,n);
+		int chunk=(n+pool.getParallelism()-1)/pool.getParallelism();
+		if (chunk<MP_MIN_PAIRS) chunk=MP_MIN_PAIRS;
+		if (n<=chunk) return multi(P,Q,0,n);
+		return pool.invoke(new MultiTask(P,Q,0,n,chunk));
+	}
+
+	private static final class MultiTask extends RecursiveTask<FP24>
+	{
+		private static final long serialVersionUID=1L;
+		private final ECP4[] P;
+		private final ECP[] Q;
+		private final int from,to,chunk;
+
+		MultiTask(ECP4[] P,ECP[] Q,int from,int to,int chunk)
+		{
+			this.P=P; this.Q=Q;
+			this.from=from; this.to=to;
+			this.chunk=chunk;
+		}
+
+		protected FP24 compute()
+		{
+			if (to-from<=chunk) return multi(P,Q,from,to);
+			int mid=from+chunk*(((to-from)/chunk+1)/2);
+			MultiTask left=new MultiTask(P,Q,from,mid,chunk);
+			left.fork();
+			FP24 r=new MultiTask(P,Q,mid,to,chunk).compute();
+			r.mul(left.join());
+			return r;
+		}
+	}
+
 /* final exponentiation - keep separate for multi-pairings and to avoid thrashing stack */
 	public static FP24 fexp(FP24 m)
 	{
-		FP2 f=new FP2(new BIG(ROM.Fra),new BIG(ROM.Frb));
-		BIG x=new BIG(ROM.CURVE_Bnx);
-		FP24 r=new FP24(m);
+		BIG x=new BIG(Constants.BNX);
+		FP24Flat r=new FP24Flat(m);
 
 /* Easy part of final exp */
-		FP24 lv=new FP24(r);
+		FP24Flat lv=new FP24Flat(r);
 		lv.inverse();
 		r.conj();
 
 		r.mul(lv);
 		lv.copy(r);
-		r.frob(f,4);
+		r.frob(4);
 		r.mul(lv);
 
-		FP24 t0,t1,t2,t3,t4,t5,t6,t7;
+		FP24Flat t0,t1,t2,t3,t4,t5,t6,t7;
 /* Hard part of final exp */	
 // Ghamman & Fouotsa Method
+// The Frobenius terms are accumulated in t0 by Horner's rule, so only 7 Frobenius maps are needed
 
-		t7=new FP24(r); t7.usqr();
-		t1=t7.pow(x);
+		t7=new FP24Flat(r); t7.usqr();
+		t1=t7.cpow(x);
 
 		x.fshr(1);
-		t2=t1.pow(x);
+		t2=t1.cpow(x);
 		x.fshl(1);
 
 		if (ECP.SIGN_OF_X==ECP.NEGATIVEX) {
 			t1.conj();
 		}
-		t3=new FP24(t1); t3.conj();
+		t3=new FP24Flat(t1); t3.conj();
 		t2.mul(t3);
 		t2.mul(r);
 
-		t3=t2.pow(x);
-		t4=t3.pow(x);
-		t5=t4.pow(x);
+		t0=new FP24Flat(t2); t0.frob(1);
+
+		t3=t2.cpow(x);
+		t4=t3.cpow(x);
+		t5=t4.cpow(x);
 
 		if (ECP.SIGN_OF_X==ECP.NEGATIVEX) {
 			t3.conj(); t5.conj();
 		}
+		t0.mul(t3); t0.frob(1);
+		t0.mul(t4); t0.frob(1);
 
-		t3.frob(f,6); t4.frob(f,5);
-		t3.mul(t4);
-
-		t6=t5.pow(x);
+		t6=t5.cpow(x);
 		if (ECP.SIGN_OF_X==ECP.NEGATIVEX) {
 			t6.conj();
 		}
+		t0.mul(t5); t0.frob(1);
 
-		t5.frob(f,4);
-		t3.mul(t5);
-
-		t0=new FP24(t2); t0.conj();
-		t6.mul(t0);
-
-		t5.copy(t6);
-		t5.frob(f,3);
-
-		t3.mul(t5);
-		t5=t6.pow(x);
-		t6=t5.pow(x);
+		t3.copy(t2); t3.conj();
+		t6.mul(t3);
+		t0.mul(t6); t0.frob(1);
 
+		t5=t6.cpow(x);
+		t6=t5.cpow(x);
 		if (ECP.SIGN_OF_X==ECP.NEGATIVEX) {
 			t5.conj();
 		}
+		t0.mul(t5); t0.frob(1);
+		t0.mul(t6); t0.frob(1);
 
-		t0.copy(t5);
-		t0.frob(f,2);
-		t3.mul(t0);
-		t0.copy(t6);
-		t0.frob(f,1);
-
-		t3.mul(t0);
-		t5=t6.pow(x);
-
+		t5=t6.cpow(x);
 		if (ECP.SIGN_OF_X==ECP.NEGATIVEX) {
 			t5.conj();
 		}
-		t2.frob(f,7);
 
 		t5.mul(t7);
-		t3.mul(t2);
-		t3.mul(t5);
-
-		r.mul(t3);
+		r.mul(t0);
+		r.mul(t5);
 
 		r.reduce();
-		return r;
+		return r.toFP24();
 	}
 
 /* GLV method */
@@ -374,8 +502,8 @@ public final class PAIR192 {
 	{
 		BIG[] u=new BIG[2];
 // -(x^4).P = (Beta.x,y)
-		BIG q=new BIG(ROM.CURVE_Order);
-		BIG x=new BIG(ROM.CURVE_Bnx);
+		BIG q=Constants.ORDER;
+		BIG x=Constants.BNX;
 		BIG x2=BIG.smul(x,x);
 		x=BIG.smul(x2,x2);
 		u[0]=new BIG(e);
@@ -392,8 +520,8 @@ public final class PAIR192 {
 	{
 		BIG[] u=new BIG[8];
 
-		BIG q=new BIG(ROM.CURVE_Order);
-		BIG x=new BIG(ROM.CURVE_Bnx);
+		BIG q=Constants.ORDER;
+		BIG x=Constants.BNX;
 		BIG w=new BIG(e);
 		for (int i=0;i<7;i++)
 		{
@@ -425,8 +553,8 @@ public final class PAIR192 {
 			int i,np,nn;
 			ECP Q=new ECP();
 			Q.copy(P); Q.affine();
-			BIG q=new BIG(ROM.CURVE_Order);
-			FP cru=new FP(new BIG(ROM.CURVE_Cru));
+			BIG q=Constants.ORDER;
+			FP cru=Constants.CRU;
 			BIG t=new BIG(0);
 			BIG[] u=glv(e);
 			Q.getx().mul(cru);
@@ -467,9 +595,9 @@ public final class PAIR192 {
 		if (USE_GS_G2)
 		{
 			ECP4[] Q=new ECP4[8];
-			FP2[] F=ECP4.frob_constants();
+			FP2[] F=Constants.FROB_G2;
 
-			BIG q=new BIG(ROM.CURVE_Order);
+			BIG q=Constants.ORDER;
 			BIG[] u=gs(e);
 
 			BIG t=new BIG(0);
@@ -505,6 +633,27 @@ public final class PAIR192 {
 		return R;
 	}
 
+/* Comb table for the fixed generator of G2, mapped by TableStore.loadG2comb, or else built when first needed */
+	private static volatile FlatTable g2comb;
+
+	private static final class G2Comb
+	{
+		static final FlatTable T=ECP4.mkcomb(ECP4.generator());
+	}
+
+	static void setG2comb(FlatTable T)
+	{
+		g2comb=T;
+	}
+
+/* Multiply the fixed generator of G2 by e, using the precomputed comb table */
+	public static ECP4 G2mulGen(BIG e)
+	{
+		FlatTable T=g2comb;
+		if (T==null) T=G2Comb.T;
+		return ECP4.mulcomb(T,e);
+	}
+
 /* f=f^e */
 /* Note that this method requires a lot of RAM! Better to use compressed XTR method, see FP8.java */
 	public static FP24 GTpow(FP24 d,BIG e)
@@ -513,8 +662,7 @@ public final class PAIR192 {
 		if (USE_GS_GT)
 		{
 			FP24[] g=new FP24[8];
-			FP2 f=new FP2(new BIG(ROM.Fra),new BIG(ROM.Frb));
-			BIG q=new BIG(ROM.CURVE_Order);
+			BIG q=Constants.ORDER;
 			BIG t=new BIG(0);
 			int i,np,nn;
 			BIG[] u=gs(e);
@@ -523,7 +671,7 @@ public final class PAIR192 {
 			for (i=1;i<8;i++)
 			{
 				g[i]=new FP24(0); g[i].copy(g[i-1]);
-				g[i].frob(f,1);
+				g[i].frob(1);
 			}
 			for (i=0;i<8;i++)
 			{
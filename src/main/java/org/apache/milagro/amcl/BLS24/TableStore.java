@@ -0,0 +1,194 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+*/
+
+/* Persistent store of precomputed tables */
+/* A table is written once, and then mapped read-only with FileChannel.map, so JVMs on the same host share its pages */
+/* After loadG2comb(dir), PAIR192.G2mulGen uses the G2 comb table mapped from dir rather than building one */
+/* File layout, little-endian - magic, VERSION, kind, NLEN, BASEBITS, n, k, 0, 32-byte curve id, n.k excesses as ints (padded to 8 bytes), n.k.NLEN limbs as longs, SHA-256 of all that precedes */
+/* The SHA-256 is unkeyed, so it only detects damage, and the entries are not checked to be points or field elements, so the tables directory must be trusted */
+/* Usage: java org.apache.milagro.amcl.BLS24.TableStore <dir> [<name> <GT element in hex>]... */
+
+package org.apache.milagro.amcl.BLS24;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import org.apache.milagro.amcl.GCM;
+import org.apache.milagro.amcl.HASH256;
+
+public final class TableStore {
+	public static final int VERSION=1;
+	public static final int G2COMB=1;	/* comb table of the generator of G2, from ECP4.mkcomb */
+	public static final int GTCOMB=2;	/* comb table of a PreparedGT */
+
+	private static final int MAGIC=0x54434D41;	/* "AMCT" */
+	private static final int HEADER=64;
+
+/* file of the G2 comb table in directory dir */
+	public static Path g2comb(Path dir)
+	{
+		return dir.resolve("BLS24.g2comb");
+	}
+
+/* Map the comb table of the generator of G2 from directory dir, for PAIR192.G2mulGen to use from then on. Throws IOException if the file is missing or does not match, and the table in use is then unchanged */
+	public static void loadG2comb(Path dir) throws IOException
+	{
+		PAIR192.setG2comb(read(g2comb(dir),G2COMB));
+	}
+
+/* number of entries of a table of the given kind */
+	private static int entries(int kind)
+	{
+		if (kind==G2COMB) return 1<<(ECP4.COMB_TEETH-1);
+		return 1<<(PreparedGT.TEETH-1);
+	}
+
+/* number of coefficients of an entry of a table of the given kind */
+	private static int coefficients(int kind)
+	{
+		if (kind==G2COMB) return 8;	/* affine point, x and y in Fp^4 */
+		return 24;	/* an Fp^24 */
+	}
+
+/* identifies the curve, so a table is never used with another */
+	private static byte[] curveid()
+	{
+		HASH256 sh=new HASH256();
+		byte[] b=new byte[BIG.MODBYTES];
+		sh.process_array("BLS24".getBytes(StandardCharsets.US_ASCII));
+		Constants.MODULUS.toBytes(b); sh.process_array(b);
+		Constants.ORDER.toBytes(b); sh.process_array(b);
+		return sh.hash();
+	}
+
+	private static int xesbytes(int nk)
+	{
+		return (4*nk+7)&~7;
+	}
+
+/* Write table T of the given kind to file. The file is replaced atomically, so readers never see it part written */
+	static void write(Path file,int kind,FlatTable T) throws IOException
+	{
+		int i,j,len=T.k*BIG.NLEN,nk=T.n*T.k;
+		int size=HEADER+xesbytes(nk)+8*nk*BIG.NLEN+32;
+		long[] r=new long[len];
+		int[] rx=new int[T.k];
+		ByteBuffer b=ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+
+		b.putInt(MAGIC).putInt(VERSION).putInt(kind).putInt(BIG.NLEN).putInt(BIG.BASEBITS).putInt(T.n).putInt(T.k).putInt(0);
+		b.put(curveid());
+		for (i=0;i<nk;i++) b.putInt(T.xes[i]);
+		b.position(HEADER+xesbytes(nk));
+		for (i=0;i<T.n;i++)
+		{
+			T.get(i,r,rx);
+			for (j=0;j<len;j++) b.putLong(r[j]);
+		}
+		HASH256 sh=new HASH256();
+		ByteBuffer d=b.duplicate();
+		d.flip();
+		sh.process_buffer(d);
+		b.put(sh.hash());
+		b.flip();
+
+		Path tmp=Files.createTempFile(file.toAbsolutePath().getParent(),file.getFileName().toString(),".tmp");
+		try {
+			try (FileChannel ch=FileChannel.open(tmp,StandardOpenOption.WRITE)) {
+				while (b.hasRemaining()) ch.write(b);
+				ch.force(true);
+			}
+			Files.move(tmp,file,StandardCopyOption.REPLACE_EXISTING,StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(tmp);
+		}
+	}
+
+/* Map a table of the given kind from file. Throws IOException if the file is not such a table for this curve, is of the wrong shape, or is damaged */
+	static FlatTable read(Path file,int kind) throws IOException
+	{
+		MappedByteBuffer m;
+		try (FileChannel ch=FileChannel.open(file,StandardOpenOption.READ)) {
+			if (ch.size()<HEADER+32 || ch.size()>Integer.MAX_VALUE) throw new IOException(file+": bad size");
+			m=ch.map(FileChannel.MapMode.READ_ONLY,0,ch.size());
+		}
+		ByteBuffer b=m.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+		int size=b.capacity();
+
+		if (b.getInt()!=MAGIC) throw new IOException(file+": not a table");
+		if (b.getInt()!=VERSION) throw new IOException(file+": unsupported version");
+		if (b.getInt()!=kind) throw new IOException(file+": wrong kind of table");
+		if (b.getInt()!=BIG.NLEN || b.getInt()!=BIG.BASEBITS) throw new IOException(file+": wrong limb layout");
+		int n=b.getInt();
+		int k=b.getInt();
+		b.getInt();
+		byte[] id=new byte[32];
+		b.get(id);
+		if (!Arrays.equals(id,curveid())) throw new IOException(file+": table is for another curve");
+		if (n!=entries(kind) || k!=coefficients(kind)) throw new IOException(file+": wrong shape, "+n+" entries of "+k+" coefficients");
+		int nk=n*k;
+		if (size!=HEADER+xesbytes(nk)+8*nk*BIG.NLEN+32) throw new IOException(file+": bad size");
+
+		HASH256 sh=new HASH256();
+		ByteBuffer d=b.duplicate();
+		d.position(0).limit(size-32);
+		sh.process_buffer(d);
+		byte[] h=new byte[32];
+		d.limit(size).position(size-32);
+		d.get(h);
+		if (!Arrays.equals(h,sh.hash())) throw new IOException(file+": bad checksum");
+
+		int[] xes=new int[nk];
+		b.position(HEADER);
+		for (int i=0;i<nk;i++) xes[i]=b.getInt();
+		b.position(HEADER+xesbytes(nk)).limit(size-32);
+		LongBuffer mw=b.slice().order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+		return new FlatTable(n,k,mw,xes);
+	}
+
+/* Generate the G2 comb table, and the comb tables of any GT elements given, in directory args[0] */
+	public static void main(String[] args) throws IOException
+	{
+		if (args.length<1 || args.length%2!=1)
+		{
+			System.err.println("Usage: TableStore <dir> [<name> <GT element in hex>]...");
+			System.exit(1);
+		}
+		Path dir=Paths.get(args[0]);
+		Files.createDirectories(dir);
+		Path f=g2comb(dir);
+		write(f,G2COMB,ECP4.mkcomb(ECP4.generator()));
+		System.out.println(f);
+		for (int i=1;i<args.length;i+=2)
+		{
+			f=dir.resolve(args[i]);
+			PreparedGT.fromBytes(GCM.hex2bytes(args[i+1])).save(f);
+			System.out.println(f);
+		}
+	}
+}
@@ -0,0 +1,220 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+*/
+
+/* Boneh-Lynn-Shacham signature API Functions */
+/* Signatures are compressed points in G1, public keys are points in G2 */
+/* There is no proof of possession API. Before keys are aggregated, callers must make sure that each signer knows */
+/* its private key (for example by a signature on its public key, checked when the key is registered), to prevent */
+/* rogue key attacks */
+
+package org.apache.milagro.amcl.BLS381;
+
+import java.util.concurrent.ForkJoinPool;
+
+import org.apache.milagro.amcl.RAND;
+
+public class BLS
+{
+	public static final int BFS=BIG.MODBYTES;
+	public static final int BGS=BIG.MODBYTES;
+	public static final int G1S=BFS+1;    /* compressed signature size */
+	public static final int G2S=4*BFS;    /* public key size */
+	public static final int G2CS=2*BFS+1; /* compressed public key size */
+	public static final int BLS_OK=0;
+	public static final int BLS_FAIL=-1;
+	public static final int INVALID_POINT=-14;
+	public static final int BAD_PARAMS=-11;
+
+	public static final int BATCH_BITS=64; /* Size of random multipliers in batch verification */
+
+/* hash message to point in G1 */
+	public static ECP hashit(byte[] M)
+	{
+		byte[] h=MPIN.hashit(ECP.HASH_TYPE,0,M,BFS);
+		return ECP.mapit(h);
+	}
+
+/* check that P is in the order r subgroup */
+	private static boolean G1member(ECP P)
+	{
+		if (P.is_infinity()) return false;
+		BIG r=Constants.ORDER;
+		return P.mul(r).is_infinity();
+	}
+
+/* check that P is in the order r subgroup of the twist */
+	private static boolean G2member(ECP2 P)
+	{
+		if (P.is_infinity()) return false;
+		BIG r=Constants.ORDER;
+		return P.mul(r).is_infinity();
+	}
+
+/* read public key, returns null if not a valid point in G2 */
+	private static ECP2 publickey(byte[] W)
+	{
+		if (W==null || W.length<G2CS) return null;
+		ECP2 PK=ECP2.fromBytes(W);
+		if (!G2member(PK)) return null;
+		return PK;
+	}
+
+/* read signature, returns null if not a valid point in G1 */
+	private static ECP signature(byte[] SIG)
+	{
+		if (SIG==null || SIG.length<G1S) return null;
+		ECP D=ECP.fromBytes(SIG);
+		if (!G1member(D)) return null;
+		return D;
+	}
+
+/* generate key pair, private key S, public key W. W is compressed if it is G2CS bytes */
+	public static int KEY_PAIR_GENERATE(RAND rng,byte[] S,byte[] W)
+	{
+		BIG r=Constants.ORDER;
+		BIG s=BIG.randomnum(r,rng);
+		s.toBytes(S);
+		ECP2 G=PAIR.G2mulGen(s);
+		G.toBytes(W,W.length<G2S);
+		return BLS_OK;
+	}
+
+/* Sign message M with private key S, output compressed signature SIG */
+	public static int SIGN(byte[] SIG,byte[] M,byte[] S)
+	{
+		ECP D=hashit(M);
+		BIG s=BIG.fromBytes(S);
+		D=PAIR.G1mul(D,s);
+		D.affine();
+		D.toBytes(SIG,true);
+		return BLS_OK;
+	}
+
+/* Verify signature SIG on message M with public key W */
+	public static int VERIFY(byte[] SIG,byte[] M,byte[] W)
+	{
+		ECP2 PK=publickey(W);
+		if (PK==null) return INVALID_POINT;
+		return verify(SIG,M,PK);
+	}
+
+	private static int verify(byte[] SIG,byte[] M,ECP2 PK)
+	{
+		ECP D=signature(SIG);
+		if (D==null) return INVALID_POINT;
+		D.neg();
+
+		ECP HM=hashit(M);
+		FP12 v=PAIR.ate2(ECP2.generator(),D,PK,HM);
+		v=PAIR.fexp(v);
+		if (v.isunity()) return BLS_OK;
+		return BLS_FAIL;
+	}
+
+/* Aggregate signatures SIG[0]+SIG[1]+... into compressed signature R */
+	public static int AGGREGATE_SIG(byte[][] SIG,byte[] R)
+	{
+		if (SIG.length==0) return BAD_PARAMS;
+		ECP A=new ECP();
+		for (int i=0;i<SIG.length;i++)
+		{
+			ECP D=ECP.fromBytes(SIG[i]);
+			if (D.is_infinity()) return INVALID_POINT;
+			A.add(D);
+		}
+		A.affine();
+		A.toBytes(R,true);
+		return BLS_OK;
+	}
+
+/* Aggregate public keys W[0]+W[1]+... into public key R. R is compressed if it is G2CS bytes */
+	public static int AGGREGATE_PK(byte[][] W,byte[] R)
+	{
+		ECP2 A=aggregate(W);
+		if (A==null) return INVALID_POINT;
+		A.toBytes(R,R.length<G2S);
+		return BLS_OK;
+	}
+
+	private static ECP2 aggregate(byte[][] W)
+	{
+		if (W.length==0) return null;
+		ECP2 A=new ECP2();
+		for (int i=0;i<W.length;i++)
+		{
+			ECP2 PK=publickey(W[i]);
+			if (PK==null) return null;
+			A.add(PK);
+		}
+		A.affine();
+		return A;
+	}
+
+/* Verify aggregate signature SIG of all signers with public keys W on the same message M */
+/* Only secure if every key is known to have a proof of possession, see above */
+	public static int FAST_AGGREGATE_VERIFY(byte[] SIG,byte[] M,byte[][] W)
+	{
+		ECP2 PK=aggregate(W);
+		if (PK==null) return INVALID_POINT;
+		return verify(SIG,M,PK);
+	}
+
+/* Verify n signatures SIG[i] on distinct messages M[i] with public keys W[i] using a single multi-pairing */
+/* Checks e(-G,r0.SIG[0]+r1.SIG[1]+...).e(W[0],r0.H(M[0])).e(W[1],r1.H(M[1]))... =1 for random ri */
+/* Returns BLS_OK if all are valid, BLS_FAIL if at least one is not (with probability 1-2^-BATCH_BITS) */
+/* If pool is not null the Miller loops are partitioned across its threads */
+	public static int BATCH_VERIFY(RAND rng,byte[][] SIG,byte[][] M,byte[][] W,ForkJoinPool pool)
+	{
+		int n=SIG.length;
+		if (n==0 || M.length!=n || W.length!=n) return BAD_PARAMS;
+
+		ECP2[] P=new ECP2[n+1];
+		ECP[] Q=new ECP[n+1];
+		ECP A=new ECP();
+		for (int i=0;i<n;i++)
+		{
+			ECP D=signature(SIG[i]);
+			if (D==null) return INVALID_POINT;
+			P[i]=publickey(W[i]);
+			if (P[i]==null) return INVALID_POINT;
+
+			BIG ri=new BIG(0);
+			for (int j=0;j<BATCH_BITS/8;j++)
+			{
+				ri.fshl(8);
+				ri.inc(rng.getByte()&0xff);
+				ri.norm();
+			}
+			ri.inc(1);
+			ri.norm();
+			A.add(PAIR.G1mul(D,ri));
+			Q[i]=PAIR.G1mul(hashit(M[i]),ri);
+		}
+		A.neg();
+		P[n]=ECP2.generator();
+		Q[n]=A;
+
+		FP12 v;
+		if (pool!=null) v=PAIR.multi(P,Q,pool);
+		else v=PAIR.multi(P,Q);
+		v=PAIR.fexp(v);
+		if (v.isunity()) return BLS_OK;
+		return BLS_FAIL;
+	}
+}
@@ -0,0 +1,95 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+*/
+
+/* Constants of the field and curve, built from ROM once when first used and then shared */
+/* They must never be modified - copy them first */
+
+package org.apache.milagro.amcl.BLS381;
+
+final class Constants {
+	static final BIG MODULUS=new BIG(ROM.Modulus);
+	static final BIG R2MODP=new BIG(ROM.R2modp);
+	static final BIG ORDER=new BIG(ROM.CURVE_Order);
+	static final BIG BNX=new BIG(ROM.CURVE_Bnx);	/* curve parameter x, for the Miller loop */
+
+/* Exponents (p-5)/8 if p=5 mod 8 or else (p+1)/4 for FP.sqrt, and (p-3)/4 for FP.invsqrt */
+	static final BIG SQRTEXP=new BIG(MODULUS);
+	static final BIG INVSQRTEXP=new BIG(MODULUS);
+
+/* MODULUS_SHL[i] is MODULUS shifted left by i bits, for FP.neg */
+	static final BIG[] MODULUS_SHL=new BIG[32];
+
+	static
+	{
+		if (FP.MOD8==5)
+		{
+			SQRTEXP.dec(5); SQRTEXP.norm(); SQRTEXP.shr(3);
+		}
+		else
+		{
+			SQRTEXP.inc(1); SQRTEXP.norm(); SQRTEXP.shr(2);
+		}
+		INVSQRTEXP.dec(3); INVSQRTEXP.norm(); INVSQRTEXP.shr(2);
+		for (int i=0;i<MODULUS_SHL.length;i++)
+		{
+			MODULUS_SHL[i]=new BIG(MODULUS);
+			MODULUS_SHL[i].fshl(i);
+		}
+	}
+
+/* The field elements and points below are built with FP arithmetic, which uses the BIG constants above, so they must come last */
+/* B of the curve equation, for ECP.RHS, dbl and add. This and CURVE_BT must precede the generators, which are checked with RHS */
+	static final FP CURVE_B=new FP(new BIG(ROM.CURVE_B));
+
+/* B of the twisted curve, B/i for a D-type or B.i for an M-type twist, for ECP2.RHS */
+	static final FP2 CURVE_BT=new FP2(CURVE_B);
+
+	static
+	{
+		if (ECP.SEXTIC_TWIST==ECP.D_TYPE)
+			CURVE_BT.div_ip();
+		if (ECP.SEXTIC_TWIST==ECP.M_TYPE)
+		{
+			CURVE_BT.norm();
+			CURVE_BT.mul_ip();
+			CURVE_BT.norm();
+		}
+	}
+
+	static final ECP G=new ECP(new BIG(ROM.CURVE_Gx),new BIG(ROM.CURVE_Gy));
+	static final ECP2 G2=new ECP2(new FP2(new BIG(ROM.CURVE_Pxa),new BIG(ROM.CURVE_Pxb)),new FP2(new BIG(ROM.CURVE_Pya),new BIG(ROM.CURVE_Pyb)));
+
+/* Cube root of unity, for the GLV endomorphism on G1 */
+	static final FP CRU=new FP(new BIG(ROM.CURVE_Cru));
+
+/* Frobenius constant, and its inverse on an M-type twist for the Frobenius endomorphism on G2 */
+	static final FP2 FROB=new FP2(new BIG(ROM.Fra),new BIG(ROM.Frb));
+	static final FP2 FROB_G2=new FP2(FROB);
+
+	static
+	{
+		if (ECP.SEXTIC_TWIST==ECP.M_TYPE)
+		{
+			FROB_G2.inverse();
+			FROB_G2.norm();
+		}
+	}
+
+	private Constants() {}
+}
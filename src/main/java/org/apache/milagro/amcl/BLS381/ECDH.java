@@ -21,11 +21,13 @@ under the License.
 
 package org.apache.milagro.amcl.BLS381;
 
+import java.nio.ByteBuffer;
 import org.apache.milagro.amcl.RAND;
 import org.apache.milagro.amcl.HASH256;
 import org.apache.milagro.amcl.HASH384;
 import org.apache.milagro.amcl.HASH512;
 import org.apache.milagro.amcl.AES;
+import org.apache.milagro.amcl.CryptoMonitor;
 
 public final class ECDH {
 	public static final int INVALID_PUBLIC_KEY=-2;
@@ -62,27 +64,33 @@ public final class ECDH {
 	}
 
 	public static byte[] hashit(int sha,byte[] A,int n,byte[] B,int pad)
+	{
+		return hashit(sha,ByteBuffer.wrap(A),n,B,pad);
+	}
+
+/* As hashit above, hashing A from its position to its limit. The position of A is not changed */
+	public static byte[] hashit(int sha,ByteBuffer A,int n,byte[] B,int pad)
 	{
 		byte[] R=null;
 
 		if (sha==ECP.SHA256)
 		{
 			HASH256 H=new HASH256();
-			H.process_array(A); if (n>0) H.process_num(n);
+			H.process_buffer(A.duplicate()); if (n>0) H.process_num(n);
 			if (B!=null) H.process_array(B);
 			R=H.hash();
 		}
 		if (sha==ECP.SHA384)
 		{
 			HASH384 H=new HASH384();
-			H.process_array(A); if (n>0) H.process_num(n);
+			H.process_buffer(A.duplicate()); if (n>0) H.process_num(n);
 			if (B!=null) H.process_array(B);
 			R=H.hash();
 		}
 		if (sha==ECP.SHA512)
 		{
 			HASH512 H=new HASH512();
-			H.process_array(A); if (n>0) H.process_num(n);
+			H.process_buffer(A.duplicate()); if (n>0) H.process_num(n);
 			if (B!=null) H.process_array(B);
 			R=H.hash();
 		}
@@ -331,7 +339,7 @@ public final class ECDH {
 
 		G=ECP.generator();
 
-		r=new BIG(ROM.CURVE_Order);
+		r=Constants.ORDER;
 
 		if (RNG==null)
 		{
@@ -357,19 +365,25 @@ public final class ECDH {
 
 /* validate public key. */
 	public static int PUBLIC_KEY_VALIDATE(byte[] W)
+	{
+		return PUBLIC_KEY_VALIDATE(ByteBuffer.wrap(W));
+	}
+
+/* As PUBLIC_KEY_VALIDATE above, with W held in a buffer from its position. The position is not changed */
+	public static int PUBLIC_KEY_VALIDATE(ByteBuffer W)
 	{
 		BIG r,q,k;
-		ECP WP=ECP.fromBytes(W);
+		ECP WP=ECP.fromBytes(W.duplicate());
 		int nb,res=0;
 
-		r=new BIG(ROM.CURVE_Order);
+		r=Constants.ORDER;
 
 		if (WP.is_infinity()) res=INVALID_PUBLIC_KEY;
 
 		if (res==0)
 		{
 
-			q=new BIG(ROM.Modulus);
+			q=Constants.MODULUS;
 			nb=q.nbits();
 			k=new BIG(1); k.shl((nb+4)/2);
 			k.add(q);
@@ -389,29 +403,41 @@ public final class ECDH {
 
 /* IEEE-1363 Diffie-Hellman online calculation Z=S.WD */
 	public static int SVDP_DH(byte[] S,byte[] WD,byte[] Z)    
+	{
+		return SVDP_DH(ByteBuffer.wrap(S),ByteBuffer.wrap(WD),ByteBuffer.wrap(Z));
+	}
+
+/* As SVDP_DH above, with each argument held in a buffer from its position. Buffer positions are not changed */
+	public static int SVDP_DH(ByteBuffer S,ByteBuffer WD,ByteBuffer Z)
+	{
+		CryptoMonitor.Op op=CryptoMonitor.begin();
+		int r=svdp_dh(S,WD,Z);
+		CryptoMonitor.end(op,"BLS381","ECDH.SVDP_DH",r);
+		return r;
+	}
+
+	private static int svdp_dh(ByteBuffer S,ByteBuffer WD,ByteBuffer Z)
 	{
 		BIG r,s,wx,wy,z;
 		int valid;
 		ECP W;
 		int res=0;
-		byte[] T=new byte[EFS];
 
-		s=BIG.fromBytes(S);
+		s=BIG.frombytebuffer(S.duplicate());
 
-		W=ECP.fromBytes(WD);
+		W=ECP.fromBytes(WD.duplicate());
 		if (W.is_infinity()) res=ERROR;
 
 		if (res==0)
 		{
-			r=new BIG(ROM.CURVE_Order);
+			r=Constants.ORDER;
 			s.mod(r);
 
 			W=W.mul(s);
 			if (W.is_infinity()) res=ERROR; 
 			else 
 			{
-				W.getX().toBytes(T);
-				for (int i=0;i<EFS;i++) Z[i]=T[i];
+				W.getX().tobytebuffer(Z.duplicate());
 			}
 		}
 		return res;
@@ -419,6 +445,14 @@ public final class ECDH {
 
 /* IEEE ECDSA Signature, C and D are signature on F using private key S */
 	public static int SP_DSA(int sha,RAND RNG,byte[] S,byte[] F,byte[] C,byte[] D)
+	{
+		CryptoMonitor.Op op=CryptoMonitor.begin();
+		int r=sp_dsa(sha,RNG,S,F,C,D);
+		CryptoMonitor.end(op,"BLS381","ECDH.SP_DSA",r);
+		return r;
+	}
+
+	private static int sp_dsa(int sha,RAND RNG,byte[] S,byte[] F,byte[] C,byte[] D)
 	{
 		byte[] T=new byte[EFS];
 		BIG r,s,f,c,d,u,vx,w;
@@ -426,7 +460,7 @@ public final class ECDH {
 		byte[] B=hashit(sha,F,0,null,BIG.MODBYTES);
 
 		G=ECP.generator();
-		r=new BIG(ROM.CURVE_Order);
+		r=Constants.ORDER;
 
 		s=BIG.fromBytes(S);
 		f=BIG.fromBytes(B);
@@ -469,6 +503,20 @@ public final class ECDH {
 
 /* IEEE1363 ECDSA Signature Verification. Signature C and D on F is verified using public key W */
 	public static int VP_DSA(int sha,byte[] W,byte[] F, byte[] C,byte[] D)
+	{
+		return VP_DSA(sha,ByteBuffer.wrap(W),ByteBuffer.wrap(F),ByteBuffer.wrap(C),ByteBuffer.wrap(D));
+	}
+
+/* As VP_DSA above, with each argument held in a buffer from its position, and message F up to its limit. Buffer positions are not changed */
+	public static int VP_DSA(int sha,ByteBuffer W,ByteBuffer F,ByteBuffer C,ByteBuffer D)
+	{
+		CryptoMonitor.Op op=CryptoMonitor.begin();
+		int r=vp_dsa(sha,W,F,C,D);
+		CryptoMonitor.end(op,"BLS381","ECDH.VP_DSA",r);
+		return r;
+	}
+
+	private static int vp_dsa(int sha,ByteBuffer W,ByteBuffer F,ByteBuffer C,ByteBuffer D)
 	{
 		BIG r,f,c,d,h2;
 		int res=0;
@@ -478,10 +526,10 @@ public final class ECDH {
 		byte[] B=hashit(sha,F,0,null,BIG.MODBYTES);
 
 		G=ECP.generator();
-		r=new BIG(ROM.CURVE_Order);
+		r=Constants.ORDER;
 
-		c=BIG.fromBytes(C);
-		d=BIG.fromBytes(D);
+		c=BIG.frombytebuffer(C.duplicate());
+		d=BIG.frombytebuffer(D.duplicate());
 		f=BIG.fromBytes(B);
      
 		if (c.iszilch() || BIG.comp(c,r)>=0 || d.iszilch() || BIG.comp(d,r)>=0) 
@@ -493,7 +541,7 @@ public final class ECDH {
 			f.copy(BIG.modmul(f,d,r));
 			h2=BIG.modmul(c,d,r);
 
-			WP=ECP.fromBytes(W);
+			WP=ECP.fromBytes(W.duplicate());
 			if (WP.is_infinity()) res=ERROR;
 			else
 			{
@@ -515,6 +563,14 @@ public final class ECDH {
 
 /* IEEE1363 ECIES encryption. Encryption of plaintext M uses public key W and produces ciphertext V,C,T */
 	public static byte[] ECIES_ENCRYPT(int sha,byte[] P1,byte[] P2,RAND RNG,byte[] W,byte[] M,byte[] V,byte[] T)
+	{
+		CryptoMonitor.Op op=CryptoMonitor.begin();
+		byte[] r=ecies_encrypt(sha,P1,P2,RNG,W,M,V,T);
+		CryptoMonitor.end(op,"BLS381","ECDH.ECIES_ENCRYPT",r.length==0?ERROR:0);
+		return r;
+	}
+
+	private static byte[] ecies_encrypt(int sha,byte[] P1,byte[] P2,RAND RNG,byte[] W,byte[] M,byte[] V,byte[] T)
 	{ 
 		int i,len;
 
@@ -525,7 +581,7 @@ public final class ECDH {
 		byte[] U=new byte[EGS];
 
 		if (KEY_PAIR_GENERATE(RNG,U,V)!=0) return new byte[0];  
-		if (SVDP_DH(U,W,Z)!=0) return new byte[0];     
+		if (svdp_dh(ByteBuffer.wrap(U),ByteBuffer.wrap(W),ByteBuffer.wrap(Z))!=0) return new byte[0];     
 
 		for (i=0;i<2*EFS+1;i++) VZ[i]=V[i];
 		for (i=0;i<EFS;i++) VZ[2*EFS+1+i]=Z[i];
@@ -551,6 +607,14 @@ public final class ECDH {
 
 /* IEEE1363 ECIES decryption. Decryption of ciphertext V,C,T using private key U outputs plaintext M */
 	public static byte[] ECIES_DECRYPT(int sha,byte[] P1,byte[] P2,byte[] V,byte[] C,byte[] T,byte[] U)
+	{
+		CryptoMonitor.Op op=CryptoMonitor.begin();
+		byte[] r=ecies_decrypt(sha,P1,P2,V,C,T,U);
+		CryptoMonitor.end(op,"BLS381","ECDH.ECIES_DECRYPT",r.length==0?ERROR:0);
+		return r;
+	}
+
+	private static byte[] ecies_decrypt(int sha,byte[] P1,byte[] P2,byte[] V,byte[] C,byte[] T,byte[] U)
 	{ 
 
 		int i,len;
@@ -561,7 +625,7 @@ public final class ECDH {
 		byte[] K2=new byte[ECP.AESKEY];
 		byte[] TAG=new byte[T.length];
 
-		if (SVDP_DH(U,V,Z)!=0) return new byte[0];  
+		if (svdp_dh(ByteBuffer.wrap(U),ByteBuffer.wrap(V),ByteBuffer.wrap(Z))!=0) return new byte[0];  
 
 		for (i=0;i<2*EFS+1;i++) VZ[i]=V[i];
 		for (i=0;i<EFS;i++) VZ[2*EFS+1+i]=Z[i];
@@ -21,6 +21,10 @@ under the License.
 
 package org.apache.milagro.amcl.BLS381;
 
+import java.nio.ByteBuffer;
+import org.apache.milagro.amcl.OpCounter;
+import org.apache.milagro.amcl.Tuning;
+
 public final class ECP {
 
 	public static final int WEIERSTRASS=0;
@@ -46,6 +50,9 @@ public final class ECP {
 	public static final int HASH_TYPE=32;
 	public static final int AESKEY=16;
 
+/* width of the signed windows of mul, see Tuning */
+	static final int WINDOW=Tuning.get("BLS381","ECP.window",4,2,6);
+
 	private FP x;
 	private FP y;
 	private FP z;
@@ -129,28 +136,49 @@ public final class ECP {
 		return ((x>>31)&1);
 	}
 
-/* Constant time select from pre-computed table */
-	private void select(ECP W[],int b)
+/* Constant time select from pre-computed table, see FlatTable */
+	private void select(FlatTable W,int b)
 	{
 		ECP MP=new ECP(); 
+		long[] r=new long[W.k*BIG.NLEN];
+		int[] rx=new int[W.k];
 		int m=b>>31;
 		int babs=(b^m)-m;
 
 		babs=(babs-1)/2;
-		cmove(W[0],teq(babs,0));  // conditional move
-		cmove(W[1],teq(babs,1));
-		cmove(W[2],teq(babs,2));
-		cmove(W[3],teq(babs,3));
-		cmove(W[4],teq(babs,4));
-		cmove(W[5],teq(babs,5));
-		cmove(W[6],teq(babs,6));
-		cmove(W[7],teq(babs,7));
+		W.select(babs,r,rx);
+		fromFlat(r,rx,0,W.k==3);
  
 		MP.copy(this);
 		MP.neg();
 		cmove(MP,(int)(m&1));
 	}
 
+/* copy this to or from coefficients i.. of the flat representation. If z is false the point must be affine, and only x and y are held */
+	void toFlat(long[] w,int[] xes,int i,boolean z)
+	{
+		x.toFlat(w,xes,i);
+		y.toFlat(w,xes,i+1);
+		if (z) this.z.toFlat(w,xes,i+2);
+	}
+
+	void fromFlat(long[] w,int[] xes,int i,boolean z)
+	{
+		x.fromFlat(w,xes,i);
+		y.fromFlat(w,xes,i+1);
+		if (z) this.z.fromFlat(w,xes,i+2);
+		else this.z.one();
+	}
+
+/* Flatten table of points */
+	static FlatTable flatten(ECP[] W)
+	{
+		FlatTable T=new FlatTable(W.length,3);
+		for (int i=0;i<W.length;i++)
+			W[i].toFlat(T.w,T.xes,3*i,true);
+		return T;
+	}
+
 /* Test P == Q */
 	public boolean equals(ECP Q) {
 //		if (is_infinity() && Q.is_infinity()) return true;
@@ -208,7 +236,7 @@ public final class ECP {
 
 		if (CURVETYPE==WEIERSTRASS)
 		{ // x^3+Ax+B
-			FP b=new FP(new BIG(ROM.CURVE_B));
+			FP b=Constants.CURVE_B;
 			r.mul(x);
 			if (ROM.CURVE_A==-3)
 			{
@@ -221,7 +249,7 @@ public final class ECP {
 		}
 		if (CURVETYPE==EDWARDS)
 		{ // (Ax^2-1)/(Bx^2-1) 
-			FP b=new FP(new BIG(ROM.CURVE_B));
+			FP b=new FP(Constants.CURVE_B);
 
 			FP one=new FP(1);
 			b.mul(r);
@@ -351,39 +379,47 @@ public final class ECP {
 /* convert to byte array */
 	public void toBytes(byte[] b,boolean compress)
 	{
-		byte[] t=new byte[BIG.MODBYTES];
+		toBytes(ByteBuffer.wrap(b),compress);
+	}
+
+/* convert to bytes at the position of buffer b, advancing the position */
+	public void toBytes(ByteBuffer b,boolean compress)
+	{
 		ECP W=new ECP(this);
 		W.affine();
 
-		W.x.redc().toBytes(t);
-		for (int i=0;i<BIG.MODBYTES;i++) b[i+1]=t[i];
-
 		if (CURVETYPE==MONTGOMERY)
 		{
-			b[0]=0x06;
+			b.put((byte)0x06);
+			W.x.redc().tobytebuffer(b);
 			return;
 		}
 
 		if (compress)
 		{
-			b[0]=0x02;
-			if (y.redc().parity()==1) b[0]=0x03;
+			b.put((byte)(0x02+W.y.redc().parity()));
+			W.x.redc().tobytebuffer(b);
 			return;
 		}
 
-		b[0]=0x04;
-
-		W.y.redc().toBytes(t);
-		for (int i=0;i<BIG.MODBYTES;i++) b[i+BIG.MODBYTES+1]=t[i];
+		b.put((byte)0x04);
+		W.x.redc().tobytebuffer(b);
+		W.y.redc().tobytebuffer(b);
 	}
 /* convert from byte array to point */
 	public static ECP fromBytes(byte[] b)
 	{
-		byte[] t=new byte[BIG.MODBYTES];
-		BIG p=new BIG(ROM.Modulus);
+		return fromBytes(ByteBuffer.wrap(b));
+	}
 
-		for (int i=0;i<BIG.MODBYTES;i++) t[i]=b[i+1];
-		BIG px=BIG.fromBytes(t);
+/* convert from bytes at the position of buffer b, advancing the position past the encoding */
+	public static ECP fromBytes(ByteBuffer b)
+	{
+		BIG p=Constants.MODULUS;
+		BIG py=null;
+		byte c=b.get();
+		BIG px=BIG.frombytebuffer(b);
+		if (CURVETYPE!=MONTGOMERY && c==0x04) py=BIG.frombytebuffer(b);
 		if (BIG.comp(px,p)>=0) return new ECP();
 
 		if (CURVETYPE==MONTGOMERY)
@@ -391,17 +427,15 @@ public final class ECP {
 			return new ECP(px);
 		}
 
-		if (b[0]==0x04)
+		if (c==0x04)
 		{
-			for (int i=0;i<BIG.MODBYTES;i++) t[i]=b[i+BIG.MODBYTES+1];
-			BIG py=BIG.fromBytes(t);
 			if (BIG.comp(py,p)>=0) return new ECP();
 			return new ECP(px,py);
 		}
 
-		if (b[0]==0x02 || b[0]==0x03)
+		if (c==0x02 || c==0x03)
 		{
-			return new ECP(px,(int)(b[0]&1));
+			return new ECP(px,c&1);
 		}
 		return new ECP();
 	}
@@ -425,6 +459,7 @@ public final class ECP {
 
 /* this*=2 */
 	public void dbl() {
+		if (OpCounter.ENABLED) OpCounter.count(OpCounter.ECP_DBL);
 //		if (INF) return;
 		
 		if (CURVETYPE==WEIERSTRASS)
@@ -470,7 +505,7 @@ public final class ECP {
 				FP b=new FP(0);
 
 				if (ROM.CURVE_B_I==0)
-					b.copy(new FP(new BIG(ROM.CURVE_B)));
+					b.copy(Constants.CURVE_B);
 
 				t0.sqr();  //1    x^2
 				t1.sqr();  //2    y^2
@@ -580,6 +615,7 @@ public final class ECP {
 
 /* this+=Q */
 	public void add(ECP Q) {
+		if (OpCounter.ENABLED) OpCounter.count(OpCounter.ECP_ADD);
 //		if (INF)
 //		{
 //			copy(Q);
@@ -657,7 +693,7 @@ public final class ECP {
 				FP b=new FP(0);
 
 				if (ROM.CURVE_B_I==0)
-					b.copy(new FP(new BIG(ROM.CURVE_B)));
+					b.copy(Constants.CURVE_B);
 
 				t0.mul(Q.x); //1
 				t1.mul(Q.y); //2
@@ -747,8 +783,7 @@ public final class ECP {
 		
 			if (ROM.CURVE_B_I==0)
 			{
-				FP b=new FP(new BIG(ROM.CURVE_B));
-				E.mul(b);
+				E.mul(Constants.CURVE_B);
 			}
 			else
 				E.imul(ROM.CURVE_B_I); 
@@ -787,6 +822,7 @@ public final class ECP {
 
 /* Differential Add for Montgomery curves. this+=Q where W is this-Q and is affine. */
 	public void dadd(ECP Q,ECP W) {
+		if (OpCounter.ENABLED) OpCounter.count(OpCounter.ECP_ADD);
 		FP A=new FP(x);
 		FP B=new FP(x);
 		FP C=new FP(Q.x);
@@ -889,8 +925,9 @@ public final class ECP {
 			BIG t=new BIG();
 			ECP Q=new ECP();
 			ECP C=new ECP();
-			ECP[] W=new ECP[8];
-			byte[] w=new byte[1+(BIG.NLEN*BIG.BASEBITS+3)/4];
+			int wb=WINDOW,ts=1<<(wb-1);
+			FlatTable W=new FlatTable(ts,3);
+			byte[] w=new byte[2+(BIG.NLEN*BIG.BASEBITS+wb-1)/wb];
 
 			//affine();
 
@@ -898,14 +935,13 @@ public final class ECP {
 			Q.copy(this);
 
 			Q.dbl();
-			W[0]=new ECP();
-			W[0].copy(this);
+			C.copy(this);
+			C.toFlat(W.w,W.xes,0,true);
 
-			for (i=1;i<8;i++)
+			for (i=1;i<ts;i++)
 			{
-				W[i]=new ECP();
-				W[i].copy(W[i-1]);
-				W[i].add(Q);
+				C.add(Q);
+				C.toFlat(W.w,W.xes,3*i,true);
 			}
 
 // make exponent odd - add 2P if even, P if odd 
@@ -916,25 +952,22 @@ public final class ECP {
 			Q.cmove(this,ns);
 			C.copy(Q);
 
-			nb=1+(t.nbits()+3)/4;
+			nb=1+(t.nbits()+wb-1)/wb;
 
-// convert exponent to signed 4-bit window 
+// convert exponent to signed wb-bit window 
 			for (i=0;i<nb;i++)
 			{
-				w[i]=(byte)(t.lastbits(5)-16);
+				w[i]=(byte)(t.lastbits(wb+1)-(1<<wb));
 				t.dec(w[i]); t.norm();
-				t.fshr(4);	
+				t.fshr(wb);	
 			}
-			w[nb]=(byte)t.lastbits(5);
+			w[nb]=(byte)t.lastbits(wb+1);
 	
-			P.copy(W[(w[nb]-1)/2]);  
+			P.select(W,w[nb]);  
 			for (i=nb-1;i>=0;i--)
 			{
 				Q.select(W,w[i]);
-				P.dbl();
-				P.dbl();
-				P.dbl();
-				P.dbl();
+				for (b=0;b<wb;b++) P.dbl();
 				P.add(Q);
 			}
 			P.sub(C); /* apply correction */
@@ -974,6 +1007,7 @@ public final class ECP {
 		W[6]=new ECP(); W[6].copy(W[2]); W[6].add(T);
 		W[4]=new ECP(); W[4].copy(W[5]); W[4].sub(S);
 		W[7]=new ECP(); W[7].copy(W[6]); W[7].add(S);
+		FlatTable F=flatten(W);
 
 // if multiplier is odd, add 2, else add 1 to multiplier, and add 2P or P to correction 
 
@@ -1004,11 +1038,11 @@ public final class ECP {
 			w[i]=(byte)(4*a+b);
 		}
 		w[nb]=(byte)(4*te.lastbits(3)+tf.lastbits(3));
-		S.copy(W[(w[nb]-1)/2]);  
+		S.select(F,w[nb]);  
 
 		for (i=nb-1;i>=0;i--)
 		{
-			T.select(W,w[i]);
+			T.select(F,w[i]);
 			S.dbl();
 			S.dbl();
 			S.add(T);
@@ -1042,7 +1076,7 @@ public final class ECP {
 /* Map byte string to curve point */
 	public static ECP mapit(byte[] h)
 	{
-		BIG q=new BIG(ROM.Modulus);
+		BIG q=Constants.MODULUS;
 		BIG x=BIG.fromBytes(h);
 		x.mod(q);
 		ECP P;
@@ -1066,18 +1100,7 @@ public final class ECP {
 
 	public static ECP generator()
 	{
-		ECP G;
-		BIG gx,gy;
-		gx=new BIG(ROM.CURVE_Gx);
-
-		if (ECP.CURVETYPE!=ECP.MONTGOMERY)
-		{
-			gy=new BIG(ROM.CURVE_Gy);
-			G=new ECP(gx,gy);
-		}
-		else
-			G=new ECP(gx);
-		return G;
+		return new ECP(Constants.G);
 	}
 
 /*
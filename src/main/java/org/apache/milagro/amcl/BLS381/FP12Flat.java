@@ -0,0 +1,943 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+*/
+
+/* Flat FP12 elements for the Miller loop and final exponentiation */
+/* The 12 Fp coefficients of a+i.b+i^2.c are held in a single long[] of 12*NLEN words, in the order a.a.a, a.a.b, */
+/* a.b.a, ... c.b.b, with their excesses packed in an int[]. The tower arithmetic works on */
+/* coefficient offsets into these arrays, and the temporaries live in scratch space at their end, so that */
+/* multiplications and squarings allocate nothing. Rarely used operations convert to and from FP12 */
+/* Montgomery moduli only, as used by all the pairing-friendly curves. Not thread safe */
+
+package org.apache.milagro.amcl.BLS381;
+
+import org.apache.milagro.amcl.Limb;
+import org.apache.milagro.amcl.OpCounter;
+
+final class FP12Flat {
+	private static final int NLEN=BIG.NLEN;
+	private static final int N=12;       /* number of Fp coefficients */
+	private static final int C=N/3;      /* number of Fp coefficients in each of a, b and c */
+	private static final int H=C/2;      /* number of Fp coefficients in each of g0,..,g5 */
+	private static final FP ONE=new FP(1);
+	private static final int SLOTS=6*N;  /* coefficients and scratch space */
+
+	private final long[] w=new long[SLOTS*NLEN];
+	private final int[] xes=new int[SLOTS];
+	private final long[] d0=new long[BIG.DNLEN];
+	private final long[] d1=new long[BIG.DNLEN];
+	private final long[] d2=new long[BIG.DNLEN];
+	private final long[] s0=new long[NLEN];
+	private final long[] s1=new long[NLEN];
+	private int sp=N;
+
+/* Constructors */
+	FP12Flat(int d)
+	{
+		this(new FP12(d));
+	}
+
+	FP12Flat(FP12 x)
+	{
+		set(x);
+	}
+
+	FP12Flat(FP12Flat x)
+	{
+		copy(x);
+	}
+
+/* copy this=x */
+	void copy(FP12Flat x)
+	{
+		System.arraycopy(x.w,0,w,0,N*NLEN);
+		System.arraycopy(x.xes,0,xes,0,N);
+	}
+
+/* copy this=x */
+	void set(FP12 x)
+	{
+		load(x,0);
+	}
+
+/* return this as an FP12 */
+	FP12 toFP12()
+	{
+		FP12 r=new FP12(0);
+		r.fromFlat(w,xes,0);
+		return r;
+	}
+
+/* reduce all coefficients of this mod Modulus */
+	void reduce()
+	{
+		for (int i=0;i<N;i++) reduce(i);
+	}
+
+/* this=conjugate(this) */
+	void conj()
+	{
+		conj(0,0,C);
+		nconj(C,C,C);
+		conj(2*C,2*C,C);
+	}
+
+/* this=1/this */
+	void inverse()
+	{
+		FP12 t=toFP12();
+		t.inverse();
+		set(t);
+	}
+
+/* this=this^p using Frobenius */
+	void frob(FP2 f)
+	{
+		FP12 t=toFP12();
+		t.frob(f);
+		set(t);
+	}
+
+/* this*=y */
+	void mul(FP12Flat y)
+	{
+		int m=sp;
+		int ys=alloc(N);
+		System.arraycopy(y.w,0,w,ys*NLEN,N*NLEN);
+		System.arraycopy(y.xes,0,xes,ys,N);
+		mul(ys);
+		sp=m;
+	}
+
+/* this*=y */
+	void mul(FP12 y)
+	{
+		int m=sp;
+		int ys=alloc(N);
+		load(y,ys);
+		mul(ys);
+		sp=m;
+	}
+
+/* this*=y for the line function y, as FP12.smul */
+	void smul(FP12 y,int type)
+	{
+		int m=sp;
+		int ys=alloc(N);
+		int z0=alloc(C),z1=alloc(C),z2=alloc(C),z3=alloc(C),t0=alloc(C),t1=alloc(C);
+		int a=0,b=C,c=2*C;
+		load(y,ys);
+
+		if (type==ECP.D_TYPE)
+		{
+			mulq(z0,a,ys,C);
+			pmul(z2,b,ys+C,C);
+			add(z3,b,c,C);
+			pmul(z3,z3,ys+C,C);
+			add(b,b,a,C);
+			copy(t1,ys,C);
+			add(t1,t1,ys+C,C/2);
+			mulq(b,b,t1,C);
+
+			neg(t0,z0,C);
+			neg(t1,z2,C);
+			add(b,b,t0,C);
+			add(b,b,t1,C);
+			add(z3,z3,t1,C);
+			add(z2,z2,t0,C);
+
+			add(t0,a,c,C);
+			mulq(t0,t0,ys,C);
+			add(c,z2,t0,C);
+
+			timesi(z3,z3,C);
+			add(a,z0,z3,C);
+		}
+		if (type==ECP.M_TYPE)
+		{
+			mulq(z0,a,ys,C);
+			add(t0,a,b,C);
+			mulq(z1,t0,ys,C);
+			add(t0,b,c,C);
+			pmul(z3,t0,ys+2*C+C/2,C);
+			timesi(z3,z3,C);
+
+			neg(t0,z0,C);
+			add(b,z1,t0,C);
+			copy(z2,t0,C);
+
+			add(t0,a,c,C);
+			add(t1,ys,ys+2*C,C);
+			mulq(t0,t0,t1,C);
+			add(z2,z2,t0,C);
+
+			pmul(t0,c,ys+2*C+C/2,C);
+			timesi(t0,t0,C);
+			neg(t1,t0,C);
+
+			add(c,z2,t1,C);
+			add(z3,z3,t1,C);
+			timesi(t0,t0,C);
+			add(b,b,t0,C);
+			timesi(z3,z3,C);
+			add(a,z0,z3,C);
+		}
+		sp=m;
+	}
+
+/* this*=y for the product y of two line functions, as FP12.smul2 */
+	void smul2(FP12 y,int type)
+	{
+		int m=sp;
+		int ys=alloc(N);
+		int z0=alloc(C),z1=alloc(C),z2=alloc(C),z3=alloc(C),t0=alloc(C),t1=alloc(C);
+		int a=0,b=C,c=2*C;
+		load(y,ys);
+
+		mulq(z0,a,ys,C);
+		if (type==ECP.D_TYPE)
+		{
+			mulq(z2,b,ys+C,C);
+		}
+		if (type==ECP.M_TYPE)
+		{
+			pmul(z2,b,ys+C+C/2,C);
+			timesi(z2,z2,C);
+		}
+
+		add(t0,a,b,C);
+		add(t1,ys,ys+C,C);
+		mulq(z1,t0,t1,C);
+		add(t0,b,c,C);
+		add(t1,ys+C,ys+2*C,C);
+		mulq(z3,t0,t1,C);
+
+		neg(t0,z0,C);
+		neg(t1,z2,C);
+		add(z1,z1,t0,C);
+		add(b,z1,t1,C);
+		add(z3,z3,t1,C);
+		add(z2,z2,t0,C);
+
+		add(t0,a,c,C);
+		add(t1,ys,ys+2*C,C);
+		mulq(t0,t0,t1,C);
+		add(z2,z2,t0,C);
+
+		if (type==ECP.D_TYPE)
+		{
+			pmul(t0,c,ys+2*C,C);
+		}
+		if (type==ECP.M_TYPE)
+		{
+			mulq(t0,c,ys+2*C,C);
+		}
+		neg(t1,t0,C);
+
+		add(c,z2,t1,C);
+		add(z3,z3,t1,C);
+		timesi(t0,t0,C);
+		add(b,b,t0,C);
+		timesi(z3,z3,C);
+		add(a,z0,z3,C);
+		sp=m;
+	}
+
+/* Chung-Hasan SQR2 method, as FP12.sqr */
+	void sqr()
+	{
+		int m=sp;
+		int A=alloc(C),B=alloc(C),D=alloc(C),E=alloc(C);
+		int a=0,b=C,c=2*C;
+
+		sqrq(A,a,C);
+		mulq(B,b,c,C);
+		add(B,B,B,C);
+		sqrq(D,c,C);
+		mulq(E,a,b,C);
+		add(E,E,E,C);
+
+		add(c,c,a,C);
+		add(c,c,b,C);
+		sqrq(c,c,C);
+
+		copy(a,A,C);
+		add(A,A,B,C);
+		add(A,A,D,C);
+		add(A,A,E,C);
+		neg(A,A,C);
+		timesi(B,B,C);
+		timesi(D,D,C);
+
+		add(a,a,B,C);
+		add(b,D,E,C);
+		add(c,c,A,C);
+		sp=m;
+	}
+
+/* Granger-Scott unitary squaring, as FP12.usqr */
+	void usqr()
+	{
+		int m=sp;
+		int A=alloc(C),D=alloc(C);
+		int a=0;
+
+		copy(A,a,C);
+		sqrq(a,a,C);
+		add(D,a,a,C);
+		add(a,a,D,C);
+		nconj(A,A,C);
+		add(A,A,A,C);
+		add(a,a,A,C);
+		sp=m;
+		csqr();
+	}
+
+/* Karabina compressed squaring of the b and c components, the second half of usqr. a is not updated */
+	private void csqr()
+	{
+		int m=sp;
+		int B=alloc(C),D=alloc(C),E=alloc(C);
+		int b=C,c=2*C;
+
+		sqrq(B,c,C);
+		timesi(B,B,C);
+		add(E,B,B,C);
+		add(B,B,E,C);
+
+		sqrq(D,b,C);
+		add(E,D,D,C);
+		add(D,D,E,C);
+
+		conj(b,b,C);
+		add(b,b,b,C);
+		nconj(c,c,C);
+		add(c,c,c,C);
+		add(b,b,B,C);
+		add(c,c,D,C);
+		sp=m;
+	}
+
+/* return this^e, for this in the cyclotomic subgroup, as FP12.pow */
+/* Note this is simple square and multiply, so not side-channel safe */
+	FP12Flat pow(BIG e)
+	{
+		e.norm();
+		BIG e3=new BIG(e);
+		e3.pmul(3);
+		e3.norm();
+
+		FP12Flat w=new FP12Flat(this);
+		FP12Flat c=new FP12Flat(this);
+		c.conj();
+
+		int nb=e3.nbits();
+		for (int i=nb-2;i>=1;i--)
+		{
+			w.usqr();
+			int bt=e3.bit(i)-e.bit(i);
+			if (bt==1)
+				w.mul(this);
+			if (bt==-1)
+				w.mul(c);
+		}
+		w.reduce();
+		return w;
+	}
+
+/* return this^e, for this in the cyclotomic subgroup, with Karabina compressed squarings https://eprint.iacr.org/2010/542.pdf */
+/* Only the b and c components are squared, and the powers for the non-zero NAF digits of e are recovered */
+/* together by decompress, with one inversion. This pays off for sparse e, such as the curve parameter x */
+/* Note this is simple square and multiply, so not side-channel safe */
+	FP12Flat cpow(BIG e)
+	{
+		e.norm();
+		BIG e3=new BIG(e);
+		e3.pmul(3);
+		e3.norm();
+		int nb=e3.nbits();
+		if (nb<3) return pow(e);
+
+		FP12Flat r=new FP12Flat(1);
+		int bt=e3.bit(1)-e.bit(1);
+		if (bt!=0)
+		{
+			r.copy(this);
+			if (bt<0) r.conj();
+		}
+
+		FP12Flat[] g=new FP12Flat[nb];
+		int[] s=new int[nb];
+		int k=0;
+		FP12Flat c=new FP12Flat(this);
+		for (int i=2;i<nb;i++)
+		{
+			c.csqr();
+			bt=(i==nb-1)?1:e3.bit(i)-e.bit(i);
+			if (bt!=0)
+			{
+				g[k]=new FP12Flat(c);
+				s[k++]=bt;
+			}
+		}
+		decompress(g,k);
+
+		for (int i=0;i<k;i++)
+		{
+			if (s[i]<0) g[i].conj();
+			r.mul(g[i]);
+		}
+		r.reduce();
+		return r;
+	}
+
+/* Recover the a components of the compressed elements g[0..k-1]. With g2,g3 the b and g4,g5 the c components, */
+/* g1=(xi.g5^2+3.g4^2-2.g3)/4g2, or 2.g4.g5/g3 if g2=0, and g0=xi.(2.g1^2+g2.g5-3.g3.g4)+1 */
+/* Each element holds the numerator of its g1 in a.b, the denominator in a.a, and the product of the denominators */
+/* so far in its scratch space, so that they all share one inversion (Montgomery's trick) */
+	private static void decompress(FP12Flat[] g,int k)
+	{
+		int[] acc=new int[k];
+		int[] inv=new int[k];
+		for (int i=0;i<k;i++)
+		{
+			g[i].fraction();
+			acc[i]=g[i].alloc(H);
+			if (i==0) g[i].copy(acc[i],0,H);
+			else
+			{
+				g[i].copy(acc[i],g[i-1],acc[i-1],H);
+				g[i].mulq(acc[i],acc[i],0,H);
+			}
+			inv[i]=g[i].alloc(H);
+		}
+
+		FP2 t=new FP2(0);
+		t.fromFlat(g[k-1].w,g[k-1].xes,acc[k-1]);
+		t.inverse();
+		t.toFlat(g[k-1].w,g[k-1].xes,inv[k-1]);
+		for (int i=k-1;i>0;i--)
+		{
+			FP12Flat h=g[i];
+			int d=h.alloc(H);
+			h.copy(d,g[i-1],acc[i-1],H);
+			h.mulq(d,d,inv[i],H);
+			h.mulq(inv[i],inv[i],0,H);
+			g[i-1].copy(inv[i-1],h,inv[i],H);
+			h.mulq(H,H,d,H);
+		}
+		g[0].mulq(H,H,inv[0],H);
+
+		for (int i=0;i<k;i++)
+		{
+			g[i].sp=N;
+			g[i].recover();
+		}
+	}
+
+/* a.b=xi.g5^2+3.g4^2-2.g3 and a.a=4.g2, or a.b=2.g4.g5 and a.a=g3 if g2=0, or a.a=1 if that is also 0 */
+	private void fraction()
+	{
+		int m=sp;
+		int t=alloc(H),u=alloc(H);
+		int g0=0,g1=H,g2=C,g3=C+H,g4=2*C,g5=2*C+H;
+
+		sqrq(g1,g5,H);
+		timesi(g1,g1,H);
+		sqrq(t,g4,H);
+		add(u,t,t,H);
+		add(t,t,u,H);
+		add(g1,g1,t,H);
+		add(t,g3,g3,H);
+		neg(t,t,H);
+		add(g1,g1,t,H);
+		add(g0,g2,g2,H);
+		add(g0,g0,g0,H);
+
+		mulq(t,g4,g5,H);
+		add(t,t,t,H);
+		int z=iszilch(g2,H);
+		cmove(g1,t,H,z);
+		cmove(g0,g3,H,z);
+		one(t,H);
+		cmove(g0,t,H,iszilch(g0,H));
+		sp=m;
+	}
+
+/* a.a=xi.(2.g1^2+g2.g5-3.g3.g4)+1, with g1 in a.b */
+	private void recover()
+	{
+		int m=sp;
+		int t=alloc(H),u=alloc(H);
+		int g0=0,g1=H,g2=C,g3=C+H,g4=2*C,g5=2*C+H;
+
+		sqrq(g0,g1,H);
+		add(g0,g0,g0,H);
+		mulq(t,g2,g5,H);
+		add(g0,g0,t,H);
+		mulq(t,g3,g4,H);
+		add(u,t,t,H);
+		add(t,t,u,H);
+		neg(t,t,H);
+		add(g0,g0,t,H);
+		timesi(g0,g0,H);
+		one(t,H);
+		add(g0,g0,t,H);
+		sp=m;
+	}
+
+/* this*=y, where y is at coefficient offset ys. Karatsuba as FP12.mul */
+	private void mul(int ys)
+	{
+		if (OpCounter.ENABLED) OpCounter.count(OpCounter.FP12_MUL);
+		int m=sp;
+		int z0=alloc(C),z1=alloc(C),z2=alloc(C),z3=alloc(C),t0=alloc(C),t1=alloc(C);
+		int a=0,b=C,c=2*C;
+
+		mulq(z0,a,ys,C);
+		mulq(z2,b,ys+C,C);
+		add(t0,a,b,C);
+		add(t1,ys,ys+C,C);
+		mulq(z1,t0,t1,C);
+		add(t0,b,c,C);
+		add(t1,ys+C,ys+2*C,C);
+		mulq(z3,t0,t1,C);
+
+		neg(t0,z0,C);
+		neg(t1,z2,C);
+		add(z1,z1,t0,C);
+		add(b,z1,t1,C);
+		add(z3,z3,t1,C);
+		add(z2,z2,t0,C);
+
+		add(t0,a,c,C);
+		add(t1,ys,ys+2*C,C);
+		mulq(t0,t0,t1,C);
+		add(z2,z2,t0,C);
+
+		mulq(t0,c,ys+2*C,C);
+		neg(t1,t0,C);
+		add(c,z2,t1,C);
+		add(z3,z3,t1,C);
+		timesi(t0,t0,C);
+		add(b,b,t0,C);
+		timesi(z3,z3,C);
+		add(a,z0,z3,C);
+		sp=m;
+	}
+
+/* copy x to coefficient offset i, normalising */
+	private void load(FP12 x,int i)
+	{
+		x.toFlat(w,xes,i);
+		for (int j=i;j<i+N;j++) norm(j*NLEN);
+	}
+
+/* reserve n coefficients of scratch space, released by resetting sp */
+	private int alloc(int n)
+	{
+		int r=sp;
+		sp+=n;
+		return r;
+	}
+
+/**************** Quadratic extensions over the n/2 coefficients of each half ****************/
+/* Elements of Fp^2, Fp^4,.. are n=2,4,.. coefficients at an offset. Results may overlap the operands */
+
+	private void copy(int r,int a,int n)
+	{
+		System.arraycopy(w,a*NLEN,w,r*NLEN,n*NLEN);
+		System.arraycopy(xes,a,xes,r,n);
+	}
+
+	private void add(int r,int a,int b,int n)
+	{
+		for (int i=0;i<n;i++) fadd(r+i,a+i,b+i);
+	}
+
+	private void neg(int r,int a,int n)
+	{
+		for (int i=0;i<n;i++) fneg(r+i,a+i);
+	}
+
+	private void conj(int r,int a,int n)
+	{
+		copy(r,a,n/2);
+		neg(r+n/2,a+n/2,n/2);
+	}
+
+	private void nconj(int r,int a,int n)
+	{
+		neg(r,a,n/2);
+		copy(r+n/2,a+n/2,n/2);
+	}
+
+/* r=a*u, where u is the generator of the extension, i.e. 1+i for n=2 as FP2.mul_ip, otherwise as FP4.times_i */
+	private void timesi(int r,int a,int n)
+	{
+		int m=sp;
+		int h=n/2;
+		int t=alloc(h);
+		if (n==2)
+		{
+			fsub(t,a,a+1);
+			fadd(r+1,a,a+1);
+		}
+		else
+		{
+			timesi(t,a+h,h);
+			copy(r+h,a,h);
+		}
+		copy(r,t,h);
+		sp=m;
+	}
+
+/* r=a*b */
+	private void mulq(int r,int a,int b,int n)
+	{
+		if (n==2)
+		{
+			mul2(r,a,b);
+			return;
+		}
+		int m=sp;
+		int h=n/2;
+		int t0=alloc(h),t1=alloc(h),t2=alloc(h),t3=alloc(h);
+
+		mulq(t0,a,b,h);
+		mulq(t1,a+h,b+h,h);
+		add(t2,a,a+h,h);
+		add(t3,b,b+h,h);
+		mulq(t2,t2,t3,h);
+		neg(t3,t0,h);
+		add(t2,t2,t3,h);
+		neg(t3,t1,h);
+		add(r+h,t2,t3,h);
+		timesi(t1,t1,h);
+		add(r,t0,t1,h);
+		sp=m;
+	}
+
+/* r=a*f, where f has n/2 coefficients */
+	private void pmul(int r,int a,int f,int n)
+	{
+		mulq(r,a,f,n/2);
+		mulq(r+n/2,a+n/2,f,n/2);
+	}
+
+/* r=a^2 */
+	private void sqrq(int r,int a,int n)
+	{
+		if (n==2)
+		{
+			sqr2(r,a);
+			return;
+		}
+		int m=sp;
+		int h=n/2;
+		int t0=alloc(h),t1=alloc(h),t2=alloc(h);
+
+		mulq(t0,a,a+h,h);
+		add(t1,a,a+h,h);
+		timesi(t2,a+h,h);
+		add(t2,t2,a,h);
+		mulq(t1,t1,t2,h);
+		timesi(t2,t0,h);
+		add(t2,t2,t0,h);
+		neg(t2,t2,h);
+		add(r,t1,t2,h);
+		add(r+h,t0,t0,h);
+		sp=m;
+	}
+
+/* r=a^2 in Fp^2, as FP2.sqr */
+	private void sqr2(int r,int a)
+	{
+		int m=sp;
+		int t0=alloc(1),t1=alloc(1),t2=alloc(1);
+		fadd(t0,a,a+1);
+		fsub(t1,a,a+1);
+		fadd(t2,a,a);
+		fmul(r+1,a+1,t2);
+		fmul(r,t1,t0);
+		sp=m;
+	}
+
+/* r=a*b in Fp^2 with lazy reduction, as FP2.mul */
+	private void mul2(int r,int a,int b)
+	{
+		if (OpCounter.ENABLED) OpCounter.count(OpCounter.FP_MUL,3);
+		if ((long)(xes[a]+xes[a+1])*(xes[b]+xes[b+1])>(long)FP.FEXCESS)
+		{
+			if (xes[a]>1) reduce(a);
+			if (xes[a+1]>1) reduce(a+1);
+			if ((long)(xes[a]+xes[a+1])*(xes[b]+xes[b+1])>(long)FP.FEXCESS)
+			{
+				if (xes[b]>1) reduce(b);
+				if (xes[b+1]>1) reduce(b+1);
+			}
+		}
+		int ao=a*NLEN,bo=b*NLEN;
+		long[] p=Constants.MODULUS.w;
+
+		mul(d0,w,ao,w,bo);
+		mul(d1,w,ao+NLEN,w,bo+NLEN);
+		for (int i=0;i<NLEN;i++)
+		{
+			s0[i]=w[ao+i]+w[ao+NLEN+i];
+			s1[i]=w[bo+i]+w[bo+NLEN+i];
+		}
+		norm(s0,0);
+		norm(s1,0);
+		mul(d2,s0,0,s1,0);
+
+		for (int i=0;i<BIG.DNLEN;i++)
+			d2[i]-=d0[i]+d1[i];
+		for (int i=0;i<NLEN;i++)
+			d0[i]-=d1[i];
+		for (int i=NLEN;i<BIG.DNLEN;i++)
+			d0[i]+=p[i-NLEN]-d1[i];
+		dnorm(d0);
+		dnorm(d2);
+
+		monty(r*NLEN,d0); xes[r]=3;
+		monty((r+1)*NLEN,d2); xes[r+1]=2;
+	}
+
+/* copy n coefficients at x's offset a to offset r */
+	private void copy(int r,FP12Flat x,int a,int n)
+	{
+		System.arraycopy(x.w,a*NLEN,w,r*NLEN,n*NLEN);
+		System.arraycopy(x.xes,a,xes,r,n);
+	}
+
+/* r=a if d=1, else r is unchanged. Constant time */
+	private void cmove(int r,int a,int n,int d)
+	{
+		long s=-(long)d;
+		for (int i=0;i<n*NLEN;i++) w[r*NLEN+i]^=(w[r*NLEN+i]^w[a*NLEN+i])&s;
+		for (int i=0;i<n;i++) xes[r+i]^=(xes[r+i]^xes[a+i])&(int)s;
+	}
+
+/* return 1 if the n coefficients at a are all 0, else 0. Constant time */
+	private int iszilch(int a,int n)
+	{
+		long d=0;
+		for (int i=a;i<a+n;i++)
+		{
+			reduce(i);
+			for (int j=0;j<NLEN;j++) d|=w[i*NLEN+j];
+		}
+		return (int)(((d|-d)>>>63)^1);
+	}
+
+/* r=1, with n coefficients */
+	private void one(int r,int n)
+	{
+		ONE.toFlat(w,xes,r);
+		for (int i=r+1;i<r+n;i++)
+		{
+			for (int j=0;j<NLEN;j++) w[i*NLEN+j]=0;
+			xes[i]=1;
+		}
+	}
+
+/**************** Fp arithmetic on coefficient r ****************/
+
+	private void fadd(int r,int a,int b)
+	{
+		int ro=r*NLEN,ao=a*NLEN,bo=b*NLEN;
+		for (int i=0;i<NLEN;i++) w[ro+i]=w[ao+i]+w[bo+i];
+		norm(ro);
+		xes[r]=xes[a]+xes[b];
+		if (xes[r]>FP.FEXCESS) reduce(r);
+	}
+
+/* r=a-b, adding a multiple of the Modulus as FP.neg */
+	private void fsub(int r,int a,int b)
+	{
+		int ro=r*NLEN,ao=a*NLEN,bo=b*NLEN;
+		int sb=logb2(xes[b]-1);
+		long[] m=Constants.MODULUS_SHL[sb].w;
+		for (int i=0;i<NLEN;i++) w[ro+i]=w[ao+i]+m[i]-w[bo+i];
+		norm(ro);
+		xes[r]=xes[a]+(1<<sb);
+		if (xes[r]>FP.FEXCESS) reduce(r);
+	}
+
+	private void fneg(int r,int a)
+	{
+		int ro=r*NLEN,ao=a*NLEN;
+		int sb=logb2(xes[a]-1);
+		long[] m=Constants.MODULUS_SHL[sb].w;
+		for (int i=0;i<NLEN;i++) w[ro+i]=m[i]-w[ao+i];
+		norm(ro);
+		xes[r]=(1<<sb);
+		if (xes[r]>FP.FEXCESS) reduce(r);
+	}
+
+	private void fmul(int r,int a,int b)
+	{
+		if (OpCounter.ENABLED) OpCounter.count(OpCounter.FP_MUL);
+		if ((long)xes[a]*xes[b]>(long)FP.FEXCESS)
+		{
+			reduce(a);
+			if ((long)xes[a]*xes[b]>(long)FP.FEXCESS) reduce(b);
+		}
+		mul(d0,w,a*NLEN,w,b*NLEN);
+		monty(r*NLEN,d0);
+		xes[r]=2;
+	}
+
+/* reduce coefficient r mod Modulus, by subtracting Modulus.2^k for each k below the excess. Constant time */
+	private void reduce(int r)
+	{
+		int ro=r*NLEN;
+		int k=logb2(xes[r]-1);
+		while (k>0)
+		{
+			long[] m=Constants.MODULUS_SHL[--k].w;
+			for (int i=0;i<NLEN;i++) s0[i]=w[ro+i]-m[i];
+			norm(s0,0);
+			long mask=~(s0[NLEN-1]>>(BIG.CHUNK-1));
+			for (int i=0;i<NLEN;i++) w[ro+i]^=(w[ro+i]^s0[i])&mask;
+		}
+		xes[r]=1;
+	}
+
+/* constant time log to base 2 (or number of bits in), as FP.logb2 */
+	private static int logb2(int v)
+	{
+		int r;
+		v |= v >>> 1;
+		v |= v >>> 2;
+		v |= v >>> 4;
+		v |= v >>> 8;
+		v |= v >>> 16;
+
+		v = v - ((v >>> 1) & 0x55555555);
+		v = (v & 0x33333333) + ((v >>> 2) & 0x33333333);
+		r = ((v + (v >>> 4) & 0xF0F0F0F) * 0x1010101) >>> 24;
+		return r;
+	}
+
+/**************** 64-bit specific, as BIG.mul, BIG.monty and BIG.norm ****************/
+
+	private void norm(int o)
+	{
+		norm(w,o);
+	}
+
+	private static void norm(long[] x,int o)
+	{
+		long d,carry=0;
+		for (int i=0;i<NLEN-1;i++)
+		{
+			d=x[o+i]+carry;
+			x[o+i]=d&BIG.BMASK;
+			carry=d>>BIG.BASEBITS;
+		}
+		x[o+NLEN-1]+=carry;
+	}
+
+	private static void dnorm(long[] x)
+	{
+		long d,carry=0;
+		for (int i=0;i<BIG.DNLEN-1;i++)
+		{
+			d=x[i]+carry;
+			x[i]=d&BIG.BMASK;
+			carry=d>>BIG.BASEBITS;
+		}
+		x[BIG.DNLEN-1]+=carry;
+	}
+
+/* c=a*b, a and b normalised */
+	private static void mul(long[] c,long[] a,int ao,long[] b,int bo)
+	{
+		long x0,x1,y0,y1,bot,top,mid,carry;
+		for (int i=0;i<BIG.DNLEN;i++) c[i]=0;
+		for (int i=0;i<NLEN;i++)
+		{
+			x0=a[ao+i]&BIG.HMASK;
+			x1=a[ao+i]>>BIG.HBITS;
+			carry=0;
+			for (int j=0;j<NLEN;j++)
+			{
+				if (Limb.INTRINSIC)
+				{
+					bot=((a[ao+i]*b[bo+j])&BIG.BMASK)+carry+c[i+j];
+					carry=Limb.mulhi(a[ao+i],b[bo+j],BIG.BASEBITS)+(bot>>BIG.BASEBITS);
+					c[i+j]=bot&BIG.BMASK;
+					continue;
+				}
+				y0=b[bo+j]&BIG.HMASK;
+				y1=b[bo+j]>>BIG.HBITS;
+				bot=x0*y0;
+				top=x1*y1;
+				mid=x0*y1+x1*y0;
+				bot+=(mid&BIG.HMASK)<<BIG.HBITS; bot+=carry; bot+=c[i+j];
+				top+=mid>>BIG.HBITS;
+				carry=top+(bot>>BIG.BASEBITS);
+				c[i+j]=bot&BIG.BMASK;
+			}
+			c[NLEN+i]=carry;
+		}
+	}
+
+/* coefficient at word offset ro = d.R^-1 mod Modulus, destroying d */
+	private void monty(int ro,long[] d)
+	{
+		long m,x0,x1,y0,y1,bot,top,mid,carry;
+		long[] p=Constants.MODULUS.w;
+		for (int i=0;i<NLEN;i++)
+		{
+			if (ROM.MConst==-1) m=(-d[i])&BIG.BMASK;
+			else
+			{
+				if (ROM.MConst==1) m=d[i];
+				else m=(ROM.MConst*d[i])&BIG.BMASK;
+			}
+			x0=m&BIG.HMASK;
+			x1=m>>BIG.HBITS;
+			carry=0;
+			for (int j=0;j<NLEN;j++)
+			{
+				if (Limb.INTRINSIC)
+				{
+					bot=((m*p[j])&BIG.BMASK)+carry+d[i+j];
+					carry=Limb.mulhi(m,p[j],BIG.BASEBITS)+(bot>>BIG.BASEBITS);
+					d[i+j]=bot&BIG.BMASK;
+					continue;
+				}
+				y0=p[j]&BIG.HMASK;
+				y1=p[j]>>BIG.HBITS;
+				bot=x0*y0;
+				top=x1*y1;
+				mid=x0*y1+x1*y0;
+				bot+=(mid&BIG.HMASK)<<BIG.HBITS; bot+=carry; bot+=d[i+j];
+				top+=mid>>BIG.HBITS;
+				carry=top+(bot>>BIG.BASEBITS);
+				d[i+j]=bot&BIG.BMASK;
+			}
+			d[NLEN+i]+=carry;
+		}
+		System.arraycopy(d,NLEN,w,ro,NLEN);
+		norm(ro);
+	}
+}
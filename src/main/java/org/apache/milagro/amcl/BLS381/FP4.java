@@ -23,6 +23,8 @@ under the License.
 
 package org.apache.milagro.amcl.BLS381;
 
+import java.nio.ByteBuffer;
+
 public final class FP4 {
 	private final FP2 a;
 	private final FP2 b;
@@ -76,6 +78,13 @@ public final class FP4 {
 	{
 		return b;
 	}
+/* sign of this for point compression - sign of the first non-zero coefficient */
+	public int sign()
+	{
+		if (!a.iszilch()) return a.sign();
+		return b.sign();
+	}
+
 /* test this=x? */
 	public boolean equals(FP4 x)
 	{
@@ -111,6 +120,19 @@ public final class FP4 {
 		a.copy(x.a);
 		b.copy(x.b);
 	}
+
+/* copy this to or from coefficients i.. of the flat representation, see FP12Flat */
+	void toFlat(long[] w,int[] xes,int i)
+	{
+		a.toFlat(w,xes,i);
+		b.toFlat(w,xes,i+2);
+	}
+
+	void fromFlat(long[] w,int[] xes,int i)
+	{
+		a.fromFlat(w,xes,i);
+		b.fromFlat(w,xes,i+2);
+	}
 /* set this=0 */
 	public void zero()
 	{
@@ -261,6 +283,22 @@ public final class FP4 {
 
 		norm();
 	}
+
+/* convert to bytes at the position of buffer w, advancing the position */
+	public void toBytes(ByteBuffer w)
+	{
+		a.toBytes(w);
+		b.toBytes(w);
+	}
+
+/* convert from bytes at the position of buffer w, advancing the position */
+	public static FP4 fromBytes(ByteBuffer w)
+	{
+		FP2 x=FP2.fromBytes(w);
+		FP2 y=FP2.fromBytes(w);
+		return new FP4(x,y);
+	}
+
 /* convert this to hex string */
 	public String toString() 
 	{
@@ -581,10 +619,23 @@ public final class FP4 {
 /* returns true if this is QR */
 	public boolean sqrt()
 	{
-		if (iszilch()) return true;
+		return sqrt(null);
+	}
+
+/* As sqrt(), also setting is=1/sqrt(this) if is is not null */
+/* The FP2 square roots return their own inverses, so no FP2 inversion is needed */
+	public boolean sqrt(FP4 is)
+	{
+		if (iszilch())
+		{
+			if (is!=null) is.zero();
+			return true;
+		}
 		FP2 wa=new FP2(a);
 		FP2 ws=new FP2(b);
 		FP2 wt=new FP2(a);
+		FP2 wi=new FP2(0);
+		FP2 wr=new FP2(0);
 		
 		if (ws.iszilch())
 		{
@@ -598,6 +649,11 @@ public final class FP4 {
 				b.copy(wt);
 				a.zero();
 			}
+			if (is!=null)
+			{
+				is.copy(this);
+				is.inverse();
+			}
 			return true;
 		}
 
@@ -608,26 +664,31 @@ public final class FP4 {
 		wa.sub(ws);
 
 		ws.copy(wa);
-		if (!ws.sqrt()) {
+		if (!ws.sqrt(wi)) {
 			return false;
 		}
 
 		wa.copy(wt); wa.add(ws); wa.norm(); wa.div2();
 
-		if (!wa.sqrt()) {
+		if (!wa.sqrt(wr)) {
 			wa.copy(wt); wa.sub(ws); wa.norm(); wa.div2();
-			if (!wa.sqrt()) {
+			if (!wa.sqrt(wr)) {
 				return false;
 			}
+			wi.neg(); wi.norm();
 		}
 		wt.copy(b);
-		ws.copy(wa); ws.add(wa);
-		ws.inverse();
-
-		wt.mul(ws);
+		wt.mul(wr);
+		wt.div2();
 		a.copy(wa);
 		b.copy(wt);
 
+		if (is!=null)
+		{ /* norm of the root is sqrt(a*a-n*b*b) or its negative */
+			is.copy(this);
+			is.conj();
+			is.pmul(wi);
+		}
 		return true;
 	}
 
@@ -21,12 +21,16 @@ under the License.
 
 package org.apache.milagro.amcl.BLS381;
 
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
 public final class PAIR {
 
 	public static final boolean USE_GLV =true;
 	public static final boolean USE_GS_G2 =true;
 	public static final boolean USE_GS_GT =true;	
 	public static final boolean GT_STRONG=false;
+	public static final int MP_MIN_PAIRS=4; /* minimum number of pairs per task in a parallel multi-pairing */
 
 
 /* Line function */
@@ -137,10 +141,10 @@ public final class PAIR {
 	public static FP12 ate(ECP2 P1,ECP Q1)
 	{
 		FP2 f;
-		BIG x=new BIG(ROM.CURVE_Bnx);
+		BIG x=Constants.BNX;
 		BIG n=new BIG(x);
 		ECP2 K=new ECP2();
-		FP12 lv;
+		FP12 lv,lv2;
 		int bt;
 
 // P is needed in affine form for line function, Q for (Qx,Qy) extraction
@@ -152,12 +156,7 @@ public final class PAIR {
 
 		if (ECP.CURVE_PAIRING_TYPE==ECP.BN)
 		{
-			f=new FP2(new BIG(ROM.Fra),new BIG(ROM.Frb));
-			if (ECP.SEXTIC_TWIST==ECP.M_TYPE)
-			{
-				f.inverse();
-				f.norm();
-			}
+			f=Constants.FROB_G2;
 			n.pmul(6);
 			if (ECP.SIGN_OF_X==ECP.POSITIVEX)
 			{
@@ -178,7 +177,7 @@ public final class PAIR {
 		FP Qy=new FP(Q.gety());
 
 		ECP2 A=new ECP2();
-		FP12 r=new FP12(1);
+		FP12Flat r=new FP12Flat(1);
 		A.copy(P);
 
 		ECP2 MP=new ECP2();
@@ -190,20 +189,23 @@ public final class PAIR {
 		{
 			r.sqr();
 			lv=line(A,A,Qx,Qy);
-			r.smul(lv,ECP.SEXTIC_TWIST);
 
 			bt=n3.bit(i)-n.bit(i); // bt=n.bit(i);
 			if (bt==1)
 			{
-				lv=line(A,P,Qx,Qy);
-				r.smul(lv,ECP.SEXTIC_TWIST);
+				lv2=line(A,P,Qx,Qy);
+				lv.ssmul(lv2,ECP.SEXTIC_TWIST);
+				r.smul2(lv,ECP.SEXTIC_TWIST);
 			}
 			if (bt==-1)
 			{
-				//P.neg();
-				lv=line(A,MP,Qx,Qy);
+				lv2=line(A,MP,Qx,Qy);
+				lv.ssmul(lv2,ECP.SEXTIC_TWIST);
+				r.smul2(lv,ECP.SEXTIC_TWIST);
+			}
+			if (bt==0)
+			{
 				r.smul(lv,ECP.SEXTIC_TWIST);
-				//P.neg();
 			}
 		}
 
@@ -223,23 +225,23 @@ public final class PAIR {
 			K.copy(P);
 			K.frob(f);
 			lv=line(A,K,Qx,Qy);
-			r.smul(lv,ECP.SEXTIC_TWIST);
 			K.frob(f);
 			K.neg();
-			lv=line(A,K,Qx,Qy);
-			r.smul(lv,ECP.SEXTIC_TWIST);
+			lv2=line(A,K,Qx,Qy);
+			lv.ssmul(lv2,ECP.SEXTIC_TWIST);
+			r.smul2(lv,ECP.SEXTIC_TWIST);
 		} 
-		return r;
+		return r.toFP12();
 	}
 
 /* Optimal R-ate double pairing e(P,Q).e(R,S) */
 	public static FP12 ate2(ECP2 P1,ECP Q1,ECP2 R1,ECP S1)
 	{
 		FP2 f;
-		BIG x=new BIG(ROM.CURVE_Bnx);
+		BIG x=Constants.BNX;
 		BIG n=new BIG(x);
 		ECP2 K=new ECP2();
-		FP12 lv;
+		FP12 lv,lv2;
 		int bt;
 
 		ECP2 P=new ECP2(P1);
@@ -256,12 +258,7 @@ public final class PAIR {
 
 		if (ECP.CURVE_PAIRING_TYPE==ECP.BN)
 		{
-			f=new FP2(new BIG(ROM.Fra),new BIG(ROM.Frb));
-			if (ECP.SEXTIC_TWIST==ECP.M_TYPE)
-			{
-				f.inverse();
-				f.norm();
-			}
+			f=Constants.FROB_G2;
 			n.pmul(6); 
 			if (ECP.SIGN_OF_X==ECP.POSITIVEX)
 			{
@@ -285,7 +282,7 @@ public final class PAIR {
 
 		ECP2 A=new ECP2();
 		ECP2 B=new ECP2();
-		FP12 r=new FP12(1);
+		FP12Flat r=new FP12Flat(1);
 
 		A.copy(P);
 		B.copy(R);
@@ -302,29 +299,24 @@ public final class PAIR {
 		{
 			r.sqr();
 			lv=line(A,A,Qx,Qy);
-			r.smul(lv,ECP.SEXTIC_TWIST);
-
-			lv=line(B,B,Sx,Sy);
-			r.smul(lv,ECP.SEXTIC_TWIST);
+			lv2=line(B,B,Sx,Sy);
+			lv.ssmul(lv2,ECP.SEXTIC_TWIST);
+			r.smul2(lv,ECP.SEXTIC_TWIST);
 
 			bt=n3.bit(i)-n.bit(i); // bt=n.bit(i);
 			if (bt==1)
 			{
 				lv=line(A,P,Qx,Qy);
-				r.smul(lv,ECP.SEXTIC_TWIST);
-				lv=line(B,R,Sx,Sy);
-				r.smul(lv,ECP.SEXTIC_TWIST);
+				lv2=line(B,R,Sx,Sy);
+				lv.ssmul(lv2,ECP.SEXTIC_TWIST);
+				r.smul2(lv,ECP.SEXTIC_TWIST);
 			}
 			if (bt==-1)
 			{
-				//P.neg(); 
 				lv=line(A,MP,Qx,Qy);
-				r.smul(lv,ECP.SEXTIC_TWIST);
-				//P.neg(); 
-				//R.neg();
-				lv=line(B,MR,Sx,Sy);
-				r.smul(lv,ECP.SEXTIC_TWIST);
-				//R.neg();
+				lv2=line(B,MR,Sx,Sy);
+				lv.ssmul(lv2,ECP.SEXTIC_TWIST);
+				r.smul2(lv,ECP.SEXTIC_TWIST);
 			}
 		}
 
@@ -347,32 +339,202 @@ public final class PAIR {
 			K.frob(f);
 
 			lv=line(A,K,Qx,Qy);
-			r.smul(lv,ECP.SEXTIC_TWIST);
 			K.frob(f);
 			K.neg();
-			lv=line(A,K,Qx,Qy);
-			r.smul(lv,ECP.SEXTIC_TWIST);
+			lv2=line(A,K,Qx,Qy);
+			lv.ssmul(lv2,ECP.SEXTIC_TWIST);
+			r.smul2(lv,ECP.SEXTIC_TWIST);
 			K.copy(R);
 			K.frob(f);
 			lv=line(B,K,Sx,Sy);
-			r.smul(lv,ECP.SEXTIC_TWIST);
 			K.frob(f);
 			K.neg();
-			lv=line(B,K,Sx,Sy);
-			r.smul(lv,ECP.SEXTIC_TWIST);
+			lv2=line(B,K,Sx,Sy);
+			lv.ssmul(lv2,ECP.SEXTIC_TWIST);
+			r.smul2(lv,ECP.SEXTIC_TWIST);
+		}
+		return r.toFP12();
+	}
+
+/* Calculate Miller loop bits n and n3=3n, returns number of bits in n3 */
+	private static int lbits(BIG n3,BIG n)
+	{
+		n.copy(Constants.BNX);
+		if (ECP.CURVE_PAIRING_TYPE==ECP.BN)
+		{
+			n.pmul(6);
+			if (ECP.SIGN_OF_X==ECP.POSITIVEX)
+			{
+				n.inc(2);
+			} else {
+				n.dec(2);
+			}
 		}
+		n.norm();
+		n3.copy(n);
+		n3.pmul(3);
+		n3.norm();
+		return n3.nbits();
+	}
+
+/* prepare for multi-pairing */
+	public static FP12[] initmp()
+	{
+		BIG n=new BIG(0);
+		BIG n3=new BIG(0);
+		int nb=lbits(n3,n);
+		FP12[] r=new FP12[nb-1];
+		for (int i=nb-2;i>=0;i--)
+			r[i]=new FP12(1);
 		return r;
 	}
 
+/* Accumulate the lines of another pairing e(P,Q) into r, without the squarings of the Miller loop */
+	public static void another(FP12[] r,ECP2 P1,ECP Q1)
+	{
+		BIG n=new BIG(0);
+		BIG n3=new BIG(0);
+		FP12 lv,lv2;
+		int bt;
+
+		ECP2 P=new ECP2(P1);
+		ECP Q=new ECP(Q1);
+
+		P.affine();
+		Q.affine();
+
+		int nb=lbits(n3,n);
+
+		FP Qx=new FP(Q.getx());
+		FP Qy=new FP(Q.gety());
+
+		ECP2 A=new ECP2();
+		A.copy(P);
+
+		ECP2 MP=new ECP2();
+		MP.copy(P); MP.neg();
+
+		for (int i=nb-2;i>=1;i--)
+		{
+			lv=line(A,A,Qx,Qy);
+
+			bt=n3.bit(i)-n.bit(i);
+			if (bt==1)
+			{
+				lv2=line(A,P,Qx,Qy);
+				lv.ssmul(lv2,ECP.SEXTIC_TWIST);
+				r[i].smul2(lv,ECP.SEXTIC_TWIST);
+			}
+			if (bt==-1)
+			{
+				lv2=line(A,MP,Qx,Qy);
+				lv.ssmul(lv2,ECP.SEXTIC_TWIST);
+				r[i].smul2(lv,ECP.SEXTIC_TWIST);
+			}
+			if (bt==0)
+			{
+				r[i].smul(lv,ECP.SEXTIC_TWIST);
+			}
+		}
+
+/* R-ate fixup required for BN curves */
+		if (ECP.CURVE_PAIRING_TYPE==ECP.BN)
+		{
+			FP2 f=Constants.FROB_G2;
+			if (ECP.SIGN_OF_X==ECP.NEGATIVEX)
+			{
+				A.neg();
+			}
+			ECP2 K=new ECP2();
+			K.copy(P);
+			K.frob(f);
+			lv=line(A,K,Qx,Qy);
+			K.frob(f);
+			K.neg();
+			lv2=line(A,K,Qx,Qy);
+			lv.ssmul(lv2,ECP.SEXTIC_TWIST);
+			r[0].smul2(lv,ECP.SEXTIC_TWIST);
+		}
+	}
+
+/* Complete the Miller loop of a multi-pairing, result still needs fexp */
+	public static FP12 miller(FP12[] r)
+	{
+		FP12Flat res=new FP12Flat(1);
+		for (int i=r.length-1;i>=1;i--)
+		{
+			res.sqr();
+			res.mul(r[i]);
+		}
+
+		if (ECP.SIGN_OF_X==ECP.NEGATIVEX)
+		{
+			res.conj();
+		}
+		res.mul(r[0]);
+		return res.toFP12();
+	}
+
+/* Miller loop for the product of pairings e(P[0],Q[0]).e(P[1],Q[1])... sharing all the squarings */
+	public static FP12 multi(ECP2[] P,ECP[] Q)
+	{
+		return multi(P,Q,0,P.length);
+	}
+
+	private static FP12 multi(ECP2[] P,ECP[] Q,int from,int to)
+	{
+		FP12[] r=initmp();
+		for (int i=from;i<to;i++)
+			another(r,P[i],Q[i]);
+		return miller(r);
+	}
+
+/* As above, but the pairs are partitioned across the threads of pool, and partial Miller loops multiplied together. If pool is null the pairs are done serially */
+	public static FP12 multi(ECP2[] P,ECP[] Q,ForkJoinPool pool)
+	{
+		int n=P.length;
+		if (pool==null) return multi(P,Q,0,n);
+		int chunk=(n+pool.getParallelism()-1)/pool.getParallelism();
+		if (chunk<MP_MIN_PAIRS) chunk=MP_MIN_PAIRS;
+		if (n<=chunk) return multi(P,Q,0,n);
+		return pool.invoke(new MultiTask(P,Q,0,n,chunk));
+	}
+
+	private static final class MultiTask extends RecursiveTask<FP12>
+	{
+		private static final long serialVersionUID=1L;
+		private final ECP2[] P;
+		private final ECP[] Q;
+		private final int from,to,chunk;
+
+		MultiTask(ECP2[] P,ECP[] Q,int from,int to,int chunk)
+		{
+			this.P=P; this.Q=Q;
+			this.from=from; this.to=to;
+			this.chunk=chunk;
+		}
+
+		protected FP12 compute()
+		{
+			if (to-from<=chunk) return multi(P,Q,from,to);
+			int mid=from+chunk*(((to-from)/chunk+1)/2);
+			MultiTask left=new MultiTask(P,Q,from,mid,chunk);
+			left.fork();
+			FP12 r=new MultiTask(P,Q,mid,to,chunk).compute();
+			r.mul(left.join());
+			return r;
+		}
+	}
+
 /* final exponentiation - keep separate for multi-pairings and to avoid thrashing stack */
 	public static FP12 fexp(FP12 m)
 	{
-		FP2 f=new FP2(new BIG(ROM.Fra),new BIG(ROM.Frb));
-		BIG x=new BIG(ROM.CURVE_Bnx);
-		FP12 r=new FP12(m);
+		FP2 f=Constants.FROB;
+		BIG x=new BIG(Constants.BNX);
+		FP12Flat r=new FP12Flat(m);
 
 /* Easy part of final exp */
-		FP12 lv=new FP12(r);
+		FP12Flat lv=new FP12Flat(r);
 		lv.inverse();
 		r.conj();
 
@@ -384,32 +546,32 @@ public final class PAIR {
 /* Hard part of final exp */
 		if (ECP.CURVE_PAIRING_TYPE==ECP.BN)
 		{
-			FP12 x0,x1,x2,x3,x4,x5;			
+			FP12Flat x0,x1,x2,x3,x4,x5;			
 			lv.copy(r);
 			lv.frob(f);
-			x0=new FP12(lv);
+			x0=new FP12Flat(lv);
 			x0.frob(f);
 			lv.mul(r);
 			x0.mul(lv);
 			x0.frob(f);
-			x1=new FP12(r);
+			x1=new FP12Flat(r);
 			x1.conj();
-			x4=r.pow(x);
+			x4=r.cpow(x);
 			if (ECP.SIGN_OF_X==ECP.POSITIVEX)
 			{
 				x4.conj();
 			}
 
-			x3=new FP12(x4);
+			x3=new FP12Flat(x4);
 			x3.frob(f);
 
-			x2=x4.pow(x);
+			x2=x4.cpow(x);
 			if (ECP.SIGN_OF_X==ECP.POSITIVEX)
 			{
 				x2.conj();
 			}
-			x5=new FP12(x2); x5.conj();
-			lv=x2.pow(x);
+			x5=new FP12Flat(x2); x5.conj();
+			lv=x2.cpow(x);
 			if (ECP.SIGN_OF_X==ECP.POSITIVEX)
 			{
 				lv.conj();
@@ -444,33 +606,33 @@ public final class PAIR {
 		else
 		{
 
-			FP12 y0,y1,y2,y3;
+			FP12Flat y0,y1,y2,y3;
 // Ghamman & Fouotsa Method
-			y0=new FP12(r); y0.usqr();
-			y1=y0.pow(x);
+			y0=new FP12Flat(r); y0.usqr();
+			y1=y0.cpow(x);
 			if (ECP.SIGN_OF_X==ECP.NEGATIVEX)
 			{
 				y1.conj();
 			}
-			x.fshr(1); y2=y1.pow(x); 
+			x.fshr(1); y2=y1.cpow(x); 
 			if (ECP.SIGN_OF_X==ECP.NEGATIVEX)
 			{
 				y2.conj();
 			}			
 			
 			x.fshl(1);
-			y3=new FP12(r); y3.conj();
+			y3=new FP12Flat(r); y3.conj();
 			y1.mul(y3);
 
 			y1.conj();
 			y1.mul(y2);
 
-			y2=y1.pow(x);
+			y2=y1.cpow(x);
 			if (ECP.SIGN_OF_X==ECP.NEGATIVEX)
 			{
 				y2.conj();
 			}
-			y3=y2.pow(x);
+			y3=y2.cpow(x);
 			if (ECP.SIGN_OF_X==ECP.NEGATIVEX)
 			{
 				y3.conj();
@@ -483,7 +645,7 @@ public final class PAIR {
 			y2.frob(f); y2.frob(f);
 			y1.mul(y2);
 
-			y2=y3.pow(x);
+			y2=y3.cpow(x);
 			if (ECP.SIGN_OF_X==ECP.NEGATIVEX)
 			{
 				y2.conj();
@@ -498,7 +660,7 @@ public final class PAIR {
 			r.reduce();
 		}
 		
-		return r;
+		return r.toFP12();
 	}
 
 /* GLV method */
@@ -509,7 +671,7 @@ public final class PAIR {
 		{
 			int i,j;
 			BIG t=new BIG(0);
-			BIG q=new BIG(ROM.CURVE_Order);
+			BIG q=Constants.ORDER;
 
 			BIG[] v=new BIG[2];
 			for (i=0;i<2;i++)
@@ -532,8 +694,8 @@ public final class PAIR {
 		}
 		else
 		{ // -(x^2).P = (Beta.x,y)
-			BIG q=new BIG(ROM.CURVE_Order);
-			BIG x=new BIG(ROM.CURVE_Bnx);
+			BIG q=Constants.ORDER;
+			BIG x=Constants.BNX;
 			BIG x2=BIG.smul(x,x);
 			u[0]=new BIG(e);
 			u[0].mod(x2);
@@ -552,7 +714,7 @@ public final class PAIR {
 		{
 			int i,j;
 			BIG t=new BIG(0);
-			BIG q=new BIG(ROM.CURVE_Order);
+			BIG q=Constants.ORDER;
 			BIG[] v=new BIG[4];
 			for (i=0;i<4;i++)
 			{
@@ -574,8 +736,8 @@ public final class PAIR {
 		}
 		else
 		{
-			BIG q=new BIG(ROM.CURVE_Order);
-			BIG x=new BIG(ROM.CURVE_Bnx);
+			BIG q=Constants.ORDER;
+			BIG x=Constants.BNX;
 			BIG w=new BIG(e);
 			for (int i=0;i<3;i++)
 			{
@@ -605,8 +767,8 @@ public final class PAIR {
 			int i,np,nn;
 			ECP Q=new ECP();
 			Q.copy(P); Q.affine();
-			BIG q=new BIG(ROM.CURVE_Order);
-			FP cru=new FP(new BIG(ROM.CURVE_Cru));
+			BIG q=Constants.ORDER;
+			FP cru=Constants.CRU;
 			BIG t=new BIG(0);
 			BIG[] u=glv(e);
 			Q.getx().mul(cru);
@@ -647,15 +809,9 @@ public final class PAIR {
 		if (USE_GS_G2)
 		{
 			ECP2[] Q=new ECP2[4];
-			FP2 f=new FP2(new BIG(ROM.Fra),new BIG(ROM.Frb));
-
-			if (ECP.SEXTIC_TWIST==ECP.M_TYPE)
-			{
-				f.inverse();
-				f.norm();
-			}
+			FP2 f=Constants.FROB_G2;
 
-			BIG q=new BIG(ROM.CURVE_Order);
+			BIG q=Constants.ORDER;
 			BIG[] u=gs(e);
 
 			BIG t=new BIG(0);
@@ -691,6 +847,27 @@ public final class PAIR {
 		return R;
 	}
 
+/* Comb table for the fixed generator of G2, mapped by TableStore.loadG2comb, or else built when first needed */
+	private static volatile FlatTable g2comb;
+
+	private static final class G2Comb
+	{
+		static final FlatTable T=ECP2.mkcomb(ECP2.generator());
+	}
+
+	static void setG2comb(FlatTable T)
+	{
+		g2comb=T;
+	}
+
+/* Multiply the fixed generator of G2 by e, using the precomputed comb table */
+	public static ECP2 G2mulGen(BIG e)
+	{
+		FlatTable T=g2comb;
+		if (T==null) T=G2Comb.T;
+		return ECP2.mulcomb(T,e);
+	}
+
 /* f=f^e */
 /* Note that this method requires a lot of RAM! Better to use compressed XTR method, see FP4.java */
 	public static FP12 GTpow(FP12 d,BIG e)
@@ -699,8 +876,8 @@ public final class PAIR {
 		if (USE_GS_GT)
 		{
 			FP12[] g=new FP12[4];
-			FP2 f=new FP2(new BIG(ROM.Fra),new BIG(ROM.Frb));
-			BIG q=new BIG(ROM.CURVE_Order);
+			FP2 f=Constants.FROB;
+			BIG q=Constants.ORDER;
 			BIG t=new BIG(0);
 			int i,np,nn;
 			BIG[] u=gs(e);
@@ -743,7 +920,7 @@ public final class PAIR {
 		r.mul(m);
 		if (!r.isunity()) return false;
 
-		FP2 f=new FP2(new BIG(ROM.Fra),new BIG(ROM.Frb));
+		FP2 f=Constants.FROB;
 
 		r.copy(m); r.frob(f); r.frob(f);
 		FP12 w=new FP12(r); w.frob(f); w.frob(f);
@@ -751,7 +928,7 @@ public final class PAIR {
 		if (!ROM.GT_STRONG)
 		{
 			if (!w.equals(r)) return false;
-			BIG x=new BIG(ROM.CURVE_Bnx);
+			BIG x=Constants.BNX;
 			r.copy(m); w=r.pow(x); w=w.pow(x);
 			r.copy(w); r.sqr(); r.mul(w); r.sqr();
 			w.copy(m); w.frob(f);
@@ -764,7 +941,7 @@ public final class PAIR {
 		ECP Q=new ECP(new BIG(ROM.CURVE_Gx),new BIG(ROM.CURVE_Gy));
 		ECP2 P=new ECP2(new FP2(new BIG(ROM.CURVE_Pxa),new BIG(ROM.CURVE_Pxb)),new FP2(new BIG(ROM.CURVE_Pya),new BIG(ROM.CURVE_Pyb)));
 
-		BIG r=new BIG(ROM.CURVE_Order);
+		BIG r=Constants.ORDER;
 		BIG xa=new BIG(ROM.CURVE_Pxa);
 
 		System.out.println("P= "+P.toString());
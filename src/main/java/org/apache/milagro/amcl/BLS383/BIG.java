@@ -20,6 +20,9 @@ under the License.
 /* AMCL BIG number class */ 
 
 package org.apache.milagro.amcl.BLS383;
+
+import java.nio.ByteBuffer;
+import org.apache.milagro.amcl.Limb;
 import org.apache.milagro.amcl.RAND;
 
 public class BIG {
@@ -179,6 +182,13 @@ public class BIG {
 	{
 		long x0,x1,y0,y1;
 		long[] tb=new long[2];
+		if (Limb.INTRINSIC)
+		{
+			long bot=((a*b)&BMASK)+c+r;
+			tb[0]=Limb.mulhi(a,b,BASEBITS)+(bot>>BASEBITS);
+			tb[1]=bot&BMASK;
+			return tb;
+		}
 		x0=a&HMASK;
 		x1=(a>>HBITS);
 		y0=b&HMASK;
@@ -556,6 +566,32 @@ public class BIG {
 		return m; 
 	}
 
+/* convert to MODBYTES bytes at the position of buffer b, advancing the position */
+	public void tobytebuffer(ByteBuffer b)
+	{
+		BIG c=new BIG(this);
+		c.norm();
+		int n=b.position();
+		for (int i=MODBYTES-1;i>=0;i--)
+		{
+			b.put(i+n,(byte)c.w[0]);
+			c.fshr(8);
+		}
+		b.position(n+MODBYTES);
+	}
+
+/* convert from MODBYTES bytes at the position of buffer b, advancing the position */
+	public static BIG frombytebuffer(ByteBuffer b)
+	{
+		BIG m=new BIG(0);
+
+		for (int i=0;i<MODBYTES;i++)
+		{
+			m.fshl(8); m.w[0]+=(int)b.get()&0xff;
+		}
+		return m;
+	}
+
 	public void toBytes(byte[] b)
 	{
 		tobytearray(b,0);
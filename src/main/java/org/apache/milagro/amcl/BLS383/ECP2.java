@@ -21,7 +21,14 @@ under the License.
 
 package org.apache.milagro.amcl.BLS383;
 
+import org.apache.milagro.amcl.Tuning;
+
+import java.nio.ByteBuffer;
+
 public final class ECP2 {
+/* width of the signed windows of mul, see Tuning */
+	static final int WINDOW=Tuning.get("BLS383","ECP2.window",4,2,6);
+
 	private FP2 x;
 	private FP2 y;
 	private FP2 z;
@@ -106,6 +113,50 @@ public final class ECP2 {
 		cmove(MP,(int)(m&1));
 	}
 
+/* Constant time select from pre-computed table of any size, see FlatTable */
+	void select(FlatTable W,int b)
+	{
+		ECP2 MP=new ECP2(); 
+		long[] r=new long[W.k*BIG.NLEN];
+		int[] rx=new int[W.k];
+		int m=b>>31;
+		int babs=(b^m)-m;
+
+		babs=(babs-1)/2;
+		W.select(babs,r,rx);
+		fromFlat(r,rx,0,W.k==6);
+
+		MP.copy(this);
+		MP.neg();
+		cmove(MP,m&1);
+	}
+
+/* copy this to or from coefficients i.. of the flat representation. If z is false the point must be affine, and only x and y are held */
+	void toFlat(long[] w,int[] xes,int i,boolean z)
+	{
+		x.toFlat(w,xes,i);
+		y.toFlat(w,xes,i+2);
+		if (z) this.z.toFlat(w,xes,i+4);
+	}
+
+	void fromFlat(long[] w,int[] xes,int i,boolean z)
+	{
+		x.fromFlat(w,xes,i);
+		y.fromFlat(w,xes,i+2);
+		if (z) this.z.fromFlat(w,xes,i+4);
+		else this.z.one();
+	}
+
+/* Flatten table of points, which must all be affine if z is false */
+	static FlatTable flatten(ECP2[] W,boolean z)
+	{
+		int k=z?6:4;
+		FlatTable T=new FlatTable(W.length,k);
+		for (int i=0;i<W.length;i++)
+			W[i].toFlat(T.w,T.xes,k*i,z);
+		return T;
+	}
+
 /* Test if P == Q */
 	public boolean equals(ECP2 Q) {
 //		if (is_infinity() && Q.is_infinity()) return true;
@@ -179,43 +230,50 @@ public final class ECP2 {
 /* convert to byte array */
 	public void toBytes(byte[] b)
 	{
-		byte[] t=new byte[BIG.MODBYTES];
+		toBytes(ByteBuffer.wrap(b),false);
+	}
+/* convert to byte array. If compress is true write 0x02|sign(y) followed by x, 2*MODBYTES+1 bytes in all */
+	public void toBytes(byte[] b,boolean compress)
+	{
+		toBytes(ByteBuffer.wrap(b),compress);
+	}
+/* convert to bytes at the position of buffer b, advancing the position */
+	public void toBytes(ByteBuffer b,boolean compress)
+	{
 		ECP2 W=new ECP2(this);
 		W.affine();
-		W.x.getA().toBytes(t);
-		for (int i=0;i<BIG.MODBYTES;i++)
-			b[i]=t[i];
-		W.x.getB().toBytes(t);
-		for (int i=0;i<BIG.MODBYTES;i++)
-			b[i+BIG.MODBYTES]=t[i];
-
-		W.y.getA().toBytes(t);
-		for (int i=0;i<BIG.MODBYTES;i++)
-			b[i+2*BIG.MODBYTES]=t[i];
-		W.y.getB().toBytes(t);
-		for (int i=0;i<BIG.MODBYTES;i++)
-			b[i+3*BIG.MODBYTES]=t[i];
-	}
-/* convert from byte array to point */
+		if (!compress)
+		{
+			W.x.toBytes(b);
+			W.y.toBytes(b);
+			return;
+		}
+		if (W.is_infinity())
+		{
+			for (int i=0;i<2*BIG.MODBYTES+1;i++) b.put((byte)0);
+			return;
+		}
+		b.put((byte)(0x02+W.y.sign()));
+		W.x.toBytes(b);
+	}
+/* convert from byte array to point. Arrays of length 2*MODBYTES+1 are taken to be compressed */
 	public static ECP2 fromBytes(byte[] b)
 	{
-		byte[] t=new byte[BIG.MODBYTES];
-		BIG ra;
-		BIG rb;
-
-		for (int i=0;i<BIG.MODBYTES;i++) t[i]=b[i];
-		ra=BIG.fromBytes(t);
-		for (int i=0;i<BIG.MODBYTES;i++) t[i]=b[i+BIG.MODBYTES];
-		rb=BIG.fromBytes(t);
-		FP2 rx=new FP2(ra,rb);
-
-		for (int i=0;i<BIG.MODBYTES;i++) t[i]=b[i+2*BIG.MODBYTES];
-		ra=BIG.fromBytes(t);
-		for (int i=0;i<BIG.MODBYTES;i++) t[i]=b[i+3*BIG.MODBYTES];
-		rb=BIG.fromBytes(t);
-		FP2 ry=new FP2(ra,rb);
-
-		return new ECP2(rx,ry);
+		return fromBytes(ByteBuffer.wrap(b),b.length==2*BIG.MODBYTES+1);
+	}
+/* convert from bytes at the position of buffer b, advancing the position. If compressed is true read the form written by toBytes(b,true) */
+	public static ECP2 fromBytes(ByteBuffer b,boolean compressed)
+	{
+		if (compressed)
+		{
+			byte c=b.get();
+			FP2 x=FP2.fromBytes(b);
+			if (c!=0x02 && c!=0x03) return new ECP2();
+			return new ECP2(x,c&1);
+		}
+		FP2 x=FP2.fromBytes(b);
+		FP2 y=FP2.fromBytes(b);
+		return new ECP2(x,y);
 	}
 /* convert this to hex string */
 	public String toString() {
@@ -230,22 +288,8 @@ public final class ECP2 {
 		x.norm();
 		FP2 r=new FP2(x);
 		r.sqr();
-		FP2 b=new FP2(new BIG(ROM.CURVE_B));
-
-		if (ECP.SEXTIC_TWIST==ECP.D_TYPE)
-		{
-			b.div_ip();
-		}
-		if (ECP.SEXTIC_TWIST==ECP.M_TYPE)
-		{
-			b.norm();
-			b.mul_ip();
-			b.norm();
-		}
-
-
 		r.mul(x);
-		r.add(b);
+		r.add(Constants.CURVE_BT);
 
 		r.reduce();
 		return r;
@@ -278,6 +322,20 @@ public final class ECP2 {
 		else {/*x.zero();INF=true;*/ inf();}
 	}
 
+/* construct this from x and the sign s of y - but set to O if not on curve */
+	public ECP2(FP2 ix,int s) {
+		x=new FP2(ix);
+		y=new FP2(1);
+		z=new FP2(1);
+		FP2 rhs=RHS(x);
+		if (rhs.sqrt())
+		{
+			if (rhs.sign()!=s) {rhs.neg(); rhs.norm();}
+			y.copy(rhs);
+		}
+		else inf();
+	}
+
 /* this+=this */
 	public int dbl() {
 //		if (INF) return -1;      
@@ -449,8 +507,9 @@ public final class ECP2 {
 		ECP2 P=new ECP2();
 		ECP2 Q=new ECP2();
 		ECP2 C=new ECP2();
-		ECP2[] W=new ECP2[8];
-		byte[] w=new byte[1+(BIG.NLEN*BIG.BASEBITS+3)/4];
+		int wb=WINDOW,ts=1<<(wb-1);
+		FlatTable W=new FlatTable(ts,6);
+		byte[] w=new byte[2+(BIG.NLEN*BIG.BASEBITS+wb-1)/wb];
 
 		if (is_infinity()) return new ECP2();
 
@@ -459,14 +518,13 @@ public final class ECP2 {
 /* precompute table */
 		Q.copy(this);
 		Q.dbl();
-		W[0]=new ECP2();
-		W[0].copy(this);
+		C.copy(this);
+		C.toFlat(W.w,W.xes,0,true);
 
-		for (i=1;i<8;i++)
+		for (i=1;i<ts;i++)
 		{
-			W[i]=new ECP2();
-			W[i].copy(W[i-1]);
-			W[i].add(Q);
+			C.add(Q);
+			C.toFlat(W.w,W.xes,6*i,true);
 		}
 
 /* make exponent odd - add 2P if even, P if odd */
@@ -477,24 +535,21 @@ public final class ECP2 {
 		Q.cmove(this,ns);
 		C.copy(Q);
 
-		nb=1+(t.nbits()+3)/4;
-/* convert exponent to signed 4-bit window */
+		nb=1+(t.nbits()+wb-1)/wb;
+/* convert exponent to signed wb-bit window */
 		for (i=0;i<nb;i++)
 		{
-			w[i]=(byte)(t.lastbits(5)-16);
+			w[i]=(byte)(t.lastbits(wb+1)-(1<<wb));
 			t.dec(w[i]); t.norm();
-			t.fshr(4);	
+			t.fshr(wb);	
 		}
-		w[nb]=(byte)t.lastbits(5);
+		w[nb]=(byte)t.lastbits(wb+1);
 	
-		P.copy(W[(w[nb]-1)/2]);  
+		P.select(W,w[nb]);  
 		for (i=nb-1;i>=0;i--)
 		{
 			Q.select(W,w[i]);
-			P.dbl();
-			P.dbl();
-			P.dbl();
-			P.dbl();
+			for (b=0;b<wb;b++) P.dbl();
 			P.add(Q);
 		}
 		P.sub(C);
@@ -569,11 +624,14 @@ public final class ECP2 {
             }
         } 
 
+    // Flatten tables
+        FlatTable F=flatten(T,true);
+
     // Main loop
-        P.select(T,(int)(2*w[nb-1]+1));  
+        P.select(F,2*w[nb-1]+1);  
         for (i=nb-2;i>=0;i--) {
             P.dbl();
-            W.select(T,(int)(2*w[i]+s[i]));
+            W.select(F,2*w[i]+s[i]);
             P.add(W);
         }
 
@@ -671,10 +729,117 @@ public final class ECP2 {
 	}
 */
 
+/* Fixed base comb method of Lim & Lee, with the sign aligned recoding used by mul4 */
+/* Table entries are G_0 plus subsets of G_j=2^(j.d).G_0 for j=1..COMB_TEETH-1, where d is the number of columns */
+	public static final int COMB_TEETH=8;
+
+/* number of comb columns */
+	private static int combcols()
+	{
+		BIG r=Constants.ORDER;
+		return (r.nbits()+COMB_TEETH-1)/COMB_TEETH;
+	}
+
+/* Build comb table for fixed base G. Entries are held affine. The table is never modified, so may be shared */
+	public static FlatTable mkcomb(ECP2 G)
+	{
+		int i,j,d=combcols();
+		ECP2[] B=new ECP2[COMB_TEETH];
+		ECP2[] T=new ECP2[1<<(COMB_TEETH-1)];
+
+		B[0]=new ECP2(G);
+		for (j=1;j<COMB_TEETH;j++)
+		{
+			B[j]=new ECP2(B[j-1]);
+			for (i=0;i<d;i++) B[j].dbl();
+		}
+		T[0]=new ECP2(B[0]);
+		for (j=1;j<COMB_TEETH;j++)
+		{
+			for (i=(1<<(j-1));i<(1<<j);i++)
+			{
+				T[i]=new ECP2(T[i-(1<<(j-1))]);
+				T[i].add(B[j]);
+			}
+		}
+		for (i=0;i<T.length;i++) T[i].affine();
+		return flatten(T,false);
+	}
+
+/* P=e.G where T=mkcomb(G). Side channel attack secure */
+	public static ECP2 mulcomb(FlatTable T,BIG e)
+	{
+		int i,j,d,nb,pb;
+		ECP2 W=new ECP2();
+		ECP2 P=new ECP2();
+		BIG r=Constants.ORDER;
+		BIG k=new BIG(e);
+		BIG[] t=new BIG[COMB_TEETH];
+
+		byte[] w=new byte[BIG.NLEN*BIG.BASEBITS+1];
+		byte[] s=new byte[BIG.NLEN*BIG.BASEBITS+1];
+
+		d=combcols();
+		nb=d+1;
+		k.mod(r);
+
+    // Make it odd
+		pb=1-k.parity();
+		k.inc(pb);
+		k.norm();
+
+    // Split into teeth
+		for (j=0;j<COMB_TEETH;j++)
+		{
+			t[j]=new BIG(k);
+			t[j].shr(j*d);
+			t[j].mod2m(d);
+		}
+
+    // Sign pivot 
+		s[nb-1]=1;
+		for (i=0;i<nb-1;i++) {
+			t[0].fshr(1);
+			s[i]=(byte)(2*t[0].parity()-1);
+		}
+
+    // Recoded exponent
+		for (i=0;i<nb;i++) {
+			w[i]=0;
+			int m=1;
+			for (j=1;j<COMB_TEETH;j++) {
+				byte bt=(byte)(s[i]*t[j].parity());
+				t[j].fshr(1);
+				t[j].dec((int)(bt)>>1);
+				t[j].norm();
+				w[i]+=bt*(byte)m;
+				m*=2;
+			}
+		}
+
+    // Main loop
+		P.select(T,(int)(2*w[nb-1]+1));  
+		for (i=nb-2;i>=0;i--) {
+			P.dbl();
+			W.select(T,(int)(2*w[i]+s[i]));
+			P.add(W);
+		}
+
+    // apply correction
+		long[] tw=new long[T.k*BIG.NLEN];
+		int[] tx=new int[T.k];
+		T.get(0,tw,tx);
+		W.fromFlat(tw,tx,0,T.k==6);
+		W.neg(); W.add(P);
+		P.cmove(W,pb);   
+		P.affine();
+		return P;
+	}
+
 /* needed for SOK */
 	public static ECP2 mapit(byte[] h)
 	{
-		BIG q=new BIG(ROM.Modulus);
+		BIG q=Constants.MODULUS;
 		BIG x=BIG.fromBytes(h);
 		BIG one=new BIG(1);
 		FP2 X;
@@ -688,17 +853,9 @@ public final class ECP2 {
 			x.inc(1); x.norm();
 		}
 
-		BIG Fra=new BIG(ROM.Fra);
-		BIG Frb=new BIG(ROM.Frb);
-		X=new FP2(Fra,Frb);
-
-		if (ECP.SEXTIC_TWIST==ECP.M_TYPE)
-		{
-			X.inverse();
-			X.norm();
-		}
+		X=Constants.FROB_G2;
 
-		x=new BIG(ROM.CURVE_Bnx);
+		x=Constants.BNX;
 
 /* Fast Hashing to G2 - Fuentes-Castaneda, Knapp and Rodriguez-Henriquez */
 
@@ -760,7 +917,7 @@ public final class ECP2 {
 
 	public static ECP2 generator()
 	{
-		return new ECP2(new FP2(new BIG(ROM.CURVE_Pxa),new BIG(ROM.CURVE_Pxb)),new FP2(new BIG(ROM.CURVE_Pya),new BIG(ROM.CURVE_Pyb)));
+		return new ECP2(Constants.G2);
 	}
 
 /*
@@ -0,0 +1,94 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+*/
+
+/* Precomputed table of field elements or points, held as one contiguous slab of limbs */
+/* Entry j occupies coefficients j.k..j.k+k-1, each of BIG.NLEN limbs, in the order used by toFlat() of the element type */
+/* The limbs are either in w, for a table built in memory, or in mw, for a table mapped read-only from a file */
+/* A table is never modified once built, so may be shared between threads */
+
+package org.apache.milagro.amcl.BLS383;
+
+import java.nio.LongBuffer;
+
+public final class FlatTable {
+	final int n;		// number of entries
+	final int k;		// number of Fp coefficients per entry
+	final long[] w;
+	final LongBuffer mw;
+	final int[] xes;
+
+	FlatTable(int n,int k)
+	{
+		this.n=n;
+		this.k=k;
+		w=new long[n*k*BIG.NLEN];
+		mw=null;
+		xes=new int[n*k];
+	}
+
+	FlatTable(int n,int k,LongBuffer mw,int[] xes)
+	{
+		this.n=n;
+		this.k=k;
+		w=null;
+		this.mw=mw;
+		this.xes=xes;
+	}
+
+/* number of entries */
+	public int size()
+	{
+		return n;
+	}
+
+/* Constant time copy of entry i to r and rx. Every entry is read, and there are no branches on i */
+	void select(int i,long[] r,int[] rx)
+	{
+		int j,t,o,len=k*BIG.NLEN;
+		for (j=0;j<n;j++)
+		{
+			int d=j^i;
+			int m=((d-1)>>31);	// -1 if j==i, else 0
+			long lm=(long)m;
+			o=j*len;
+			if (w!=null)
+			{
+				for (t=0;t<len;t++)
+					r[t]^=(r[t]^w[o+t])&lm;
+			}
+			else
+			{
+				for (t=0;t<len;t++)
+					r[t]^=(r[t]^mw.get(o+t))&lm;
+			}
+			o=j*k;
+			for (t=0;t<k;t++)
+				rx[t]^=(rx[t]^xes[o+t])&m;
+		}
+	}
+
+/* copy of entry i to r and rx. Not constant time, so only for public i */
+	void get(int i,long[] r,int[] rx)
+	{
+		int len=k*BIG.NLEN;
+		if (w!=null) System.arraycopy(w,i*len,r,0,len);
+		else for (int t=0;t<len;t++) r[t]=mw.get(i*len+t);
+		System.arraycopy(xes,i*k,rx,0,k);
+	}
+}
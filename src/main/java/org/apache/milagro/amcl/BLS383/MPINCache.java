@@ -0,0 +1,265 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+*/
+
+/* Bounded cache of per-identity M-Pin values */
+/* Memoizes the hash-to-curve points HID and HTID of MPIN.SERVER_1, keyed by (date,H(CID)), and the pairings of MPIN.PRECOMPUTE, keyed by H(TOKEN|CID) */
+/* The cache is split into independently locked segments, each evicting its least recently used entries once over its share of the memory limit */
+/* Entry sizes are estimates of the retained bytes, not exact heap usage */
+
+package org.apache.milagro.amcl.BLS383;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+public final class MPINCache {
+	public static final int SEGMENTS=16;
+	public static final int OVERHEAD=128;	/* estimated fixed cost of an entry in bytes */
+
+	private static final int ID=0;
+	private static final int GT=1;
+
+	private final long limit;
+	private final Segment[] seg;
+	private final LongAdder hits=new LongAdder();
+	private final LongAdder misses=new LongAdder();
+	private final LongAdder evictions=new LongAdder();
+
+/* n is the date for points, and the output size for pairings */
+	private static final class Key
+	{
+		private final int type;
+		private final int n;
+		private final byte[] h;
+		private final int hash;
+
+		Key(int type,int n,byte[] h)
+		{
+			this.type=type;
+			this.n=n;
+			this.h=h;
+			hash=31*(31*type+n)+Arrays.hashCode(h);
+		}
+
+		public int hashCode()
+		{
+			return hash;
+		}
+
+		public boolean equals(Object o)
+		{
+			if (!(o instanceof Key)) return false;
+			Key k=(Key)o;
+			return type==k.type && n==k.n && Arrays.equals(h,k.h);
+		}
+
+		int size()
+		{
+			return h.length;
+		}
+	}
+
+	private static final class Segment extends LinkedHashMap<Key,byte[][]>
+	{
+		private static final long serialVersionUID=1L;
+		long bytes;
+
+		Segment()
+		{
+			super(16,0.75f,true);
+		}
+	}
+
+/* Create cache holding roughly maxBytes of entries */
+	public MPINCache(long maxBytes)
+	{
+		limit=maxBytes/SEGMENTS;
+		seg=new Segment[SEGMENTS];
+		for (int i=0;i<SEGMENTS;i++) seg[i]=new Segment();
+	}
+
+	private static long size(Key k,byte[][] v)
+	{
+		long n=OVERHEAD+k.size();
+		for (int i=0;i<v.length;i++) n+=v[i].length;
+		return n;
+	}
+
+	private Segment segment(Key k)
+	{
+		int h=k.hashCode();
+		h^=(h>>>16);
+		return seg[h&(SEGMENTS-1)];
+	}
+
+	private byte[][] get(Key k)
+	{
+		byte[][] v;
+		Segment s=segment(k);
+		synchronized (s)
+		{
+			v=s.get(k);
+		}
+		if (v==null) misses.increment();
+		else hits.increment();
+		return v;
+	}
+
+	private void put(Key k,byte[][] v)
+	{
+		long n=size(k,v);
+		if (n>limit) return;
+		Segment s=segment(k);
+		synchronized (s)
+		{
+			byte[][] old=s.put(k,v);
+			if (old!=null) s.bytes-=size(k,old);
+			s.bytes+=n;
+			Iterator<Map.Entry<Key,byte[][]>> it=s.entrySet().iterator();
+			while (s.bytes>limit && it.hasNext())
+			{
+				Map.Entry<Key,byte[][]> e=it.next();
+				s.bytes-=size(e.getKey(),e.getValue());
+				it.remove();
+				evictions.increment();
+			}
+		}
+	}
+
+/* return H(CID)+H(date|H(CID)), given hid=H(CID), or H(CID) if date=0, as an uncompressed point, computing it on a miss */
+	private byte[] point(int sha,int date,byte[] h,byte[] hid)
+	{
+		Key k=new Key(ID,date,h);
+		byte[][] v=get(k);
+		if (v!=null) return v[0];
+
+		byte[] W=new byte[2*MPIN.EFS+1];
+		ECP P;
+		if (date!=0)
+		{
+			P=ECP.mapit(MPIN.hashit(sha,date,h,MPIN.EFS));
+			P.add(ECP.fromBytes(hid));
+		}
+		else P=ECP.mapit(h);
+		P.toBytes(W,false);
+		put(k,new byte[][] {W});
+		return W;
+	}
+
+/* As MPIN.SERVER_1, using cached points where available */
+	public void SERVER_1(int sha,int date,byte[] CID,byte[] HID,byte[] HTID)
+	{
+		byte[] h=MPIN.hashit(sha,0,CID,MPIN.EFS);
+		byte[] W=point(sha,0,h,null);
+		for (int i=0;i<W.length;i++) HID[i]=W[i];
+		if (date!=0)
+		{
+			W=point(sha,date,h,W);
+			for (int i=0;i<W.length;i++) HTID[i]=W[i];
+		}
+	}
+
+/* As MPIN.PRECOMPUTE, using cached pairings where available. G1 and G2 may be compressed as for MPIN.PRECOMPUTE */
+	public int PRECOMPUTE(byte[] TOKEN,byte[] CID,byte[] G1,byte[] G2)
+	{
+		byte[] id=new byte[TOKEN.length+CID.length];
+		for (int i=0;i<TOKEN.length;i++) id[i]=TOKEN[i];
+		for (int i=0;i<CID.length;i++) id[i+TOKEN.length]=CID[i];
+		Key k=new Key(GT,G1.length,MPIN.hashit(ECP.HASH_TYPE,0,id,MPIN.EFS));
+		byte[][] v=get(k);
+		if (v==null)
+		{
+			byte[] g1=new byte[G1.length];
+			byte[] g2=new byte[G2.length];
+			int rtn=MPIN.PRECOMPUTE(TOKEN,CID,g1,g2);
+			if (rtn!=0) return rtn;
+			v=new byte[][] {g1,g2};
+			put(k,v);
+		}
+		for (int i=0;i<G1.length;i++) G1[i]=v[0][i];
+		for (int i=0;i<G2.length;i++) G2[i]=v[1][i];
+		return 0;
+	}
+
+/* remove all entries */
+	public void clear()
+	{
+		for (int i=0;i<SEGMENTS;i++)
+		{
+			synchronized (seg[i])
+			{
+				seg[i].clear();
+				seg[i].bytes=0;
+			}
+		}
+	}
+
+/* number of lookups that found an entry */
+	public long hits()
+	{
+		return hits.sum();
+	}
+
+/* number of lookups that did not */
+	public long misses()
+	{
+		return misses.sum();
+	}
+
+/* number of entries evicted to stay within the memory limit */
+	public long evictions()
+	{
+		return evictions.sum();
+	}
+
+/* number of entries currently held */
+	public int entries()
+	{
+		int n=0;
+		for (int i=0;i<SEGMENTS;i++)
+		{
+			synchronized (seg[i])
+			{
+				n+=seg[i].size();
+			}
+		}
+		return n;
+	}
+
+/* estimated bytes currently held */
+	public long bytes()
+	{
+		long n=0;
+		for (int i=0;i<SEGMENTS;i++)
+		{
+			synchronized (seg[i])
+			{
+				n+=seg[i].bytes;
+			}
+		}
+		return n;
+	}
+
+	public String toString()
+	{
+		return "MPINCache[entries="+entries()+", bytes="+bytes()+", hits="+hits()+", misses="+misses()+", evictions="+evictions()+"]";
+	}
+}
@@ -0,0 +1,158 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+*/
+
+/* Bulk issuance of M-Pin client secrets and time permits by the trusted authority */
+/* The GLV split of the master secret S is done once, and reused for every identity */
+/* Identities are mapped to the curve and multiplied in parallel, and written out in batches of fixed size records */
+
+package org.apache.milagro.amcl.BLS383;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+public final class MPINIssuer {
+	public static final int BATCH=1024;	/* identities per write */
+	public static final int RECORD=2*MPIN.EFS+1;	/* size of an output record */
+
+	private final BIG e,f;
+	private final boolean n0,n1;
+	private final FP cru;
+
+/* Split master secret S */
+	public MPINIssuer(byte[] S)
+	{
+		BIG q=Constants.ORDER;
+		BIG t=new BIG(0);
+		BIG[] u=PAIR.glv(BIG.fromBytes(S));
+
+		t.copy(BIG.modneg(u[0],q));
+		n0=(t.nbits()<u[0].nbits());
+		if (n0) u[0].copy(t);
+
+		t.copy(BIG.modneg(u[1],q));
+		n1=(t.nbits()<u[1].nbits());
+		if (n1) u[1].copy(t);
+
+		u[0].norm();
+		u[1].norm();
+		e=u[0];
+		f=u[1];
+		cru=Constants.CRU;
+	}
+
+/* return S.P, as PAIR.G1mul */
+	private ECP mul(ECP P)
+	{
+		ECP R=new ECP();
+		ECP Q=new ECP();
+		R.copy(P);
+		Q.copy(P); Q.affine();
+		Q.getx().mul(cru);
+		if (n0) R.neg();
+		if (n1) Q.neg();
+		return R.mul2(e,Q,f);
+	}
+
+/* As MPIN.GET_CLIENT_SECRET */
+	public int GET_CLIENT_SECRET(byte[] CID,byte[] CST)
+	{
+		mul(ECP.mapit(CID)).toBytes(CST,false);
+		return 0;
+	}
+
+/* As MPIN.GET_CLIENT_PERMIT */
+	public int GET_CLIENT_PERMIT(int sha,int date,byte[] CID,byte[] CTT)
+	{
+		mul(ECP.mapit(MPIN.hashit(sha,date,CID,MPIN.EFS))).toBytes(CTT,false);
+		return 0;
+	}
+
+/* Write the client secret of each externally hashed identity in CID to out, as RECORD byte records in the same order */
+/* If pool is not null identities are processed on its threads. Returns the number of records written */
+	public long CLIENT_SECRETS(Iterator<byte[]> CID,OutputStream out,ForkJoinPool pool) throws IOException
+	{
+		return issue(0,0,CID,out,pool);
+	}
+
+/* As CLIENT_SECRETS, writing the time permit of each identity for date */
+	public long CLIENT_PERMITS(int sha,int date,Iterator<byte[]> CID,OutputStream out,ForkJoinPool pool) throws IOException
+	{
+		return issue(sha,date,CID,out,pool);
+	}
+
+	private long issue(int sha,int date,Iterator<byte[]> CID,OutputStream out,ForkJoinPool pool) throws IOException
+	{
+		byte[][] id=new byte[BATCH][];
+		byte[] buf=new byte[BATCH*RECORD];
+		long total=0;
+		while (CID.hasNext())
+		{
+			int n=0;
+			while (n<BATCH && CID.hasNext()) id[n++]=CID.next();
+			if (pool==null)
+			{
+				for (int i=0;i<n;i++) record(sha,date,id[i],buf,i);
+			}
+			else pool.invoke(new Issue(this,sha,date,id,buf,0,n));
+			out.write(buf,0,n*RECORD);
+			total+=n;
+		}
+		out.flush();
+		return total;
+	}
+
+/* write the secret or permit of id as record i of buf */
+	private void record(int sha,int date,byte[] id,byte[] buf,int i)
+	{
+		byte[] W=new byte[RECORD];
+		if (date==0) GET_CLIENT_SECRET(id,W);
+		else GET_CLIENT_PERMIT(sha,date,id,W);
+		System.arraycopy(W,0,buf,i*RECORD,RECORD);
+	}
+
+	private static final class Issue extends RecursiveAction
+	{
+		private static final long serialVersionUID=1L;
+		private final MPINIssuer s;
+		private final int sha,date,from,to;
+		private final byte[][] id;
+		private final byte[] buf;
+
+		Issue(MPINIssuer s,int sha,int date,byte[][] id,byte[] buf,int from,int to)
+		{
+			this.s=s; this.sha=sha; this.date=date;
+			this.id=id; this.buf=buf;
+			this.from=from; this.to=to;
+		}
+
+		protected void compute()
+		{
+			if (to-from==1)
+			{
+				s.record(sha,date,id[from],buf,from);
+				return;
+			}
+			int mid=(from+to)/2;
+			invokeAll(new Issue(s,sha,date,id,buf,from,mid),new Issue(s,sha,date,id,buf,mid,to));
+		}
+	}
+}
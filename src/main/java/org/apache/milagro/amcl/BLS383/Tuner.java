@@ -0,0 +1,59 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+*/
+
+/* Calibration workloads of the tuned parameters of this package, see Tuning */
+/* Tuning runs main in a new JVM for each candidate value, as the parameters are fixed when the classes are initialised */
+
+package org.apache.milagro.amcl.BLS383;
+
+import org.apache.milagro.amcl.RAND;
+import org.apache.milagro.amcl.Tuning;
+
+public final class Tuner {
+	public static final String[] PARAMS={"ECP.window","ECP2.window","FP.window"};	/* tuned parameters */
+	public static final int[][] VALUES={{2,3,4,5,6},{2,3,4,5,6},{2,3,4,5,6,7}};	/* their candidate values */
+
+	private Tuner() {}
+
+/* Print the nanoseconds per run of the workload of parameter args[0], with the parameters read from amcl.tuning */
+	public static void main(String[] args)
+	{
+		RAND rng=new RAND();
+		rng.seed(32,new byte[32]);	/* fixed seed, so runs are comparable */
+		final BIG e=BIG.randomnum(Constants.ORDER,rng);
+		Runnable r=null;
+		if (args[0].equals("ECP.window"))
+		{
+			final ECP G=ECP.generator();
+			r=() -> G.mul(e);
+		}
+		if (args[0].equals("ECP2.window"))
+		{
+			final ECP2 Q=ECP2.generator();
+			r=() -> Q.mul(e);
+		}
+		if (args[0].equals("FP.window"))
+		{
+			final FP a=new FP(BIG.randomnum(Constants.MODULUS,rng));
+			r=() -> a.pow(Constants.SQRTEXP);
+		}
+		if (r==null) throw new IllegalArgumentException("no parameter "+args[0]);
+		System.out.println(Tuning.time(r));
+	}
+}
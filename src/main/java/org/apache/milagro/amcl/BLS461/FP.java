@@ -22,6 +22,10 @@ under the License.
 
 package org.apache.milagro.amcl.BLS461;
 
+import org.apache.milagro.amcl.BinaryGCD;
+import org.apache.milagro.amcl.OpCounter;
+import org.apache.milagro.amcl.Tuning;
+
 public final class FP {
 
 	public static final int NOT_SPECIAL=0;
@@ -38,6 +42,8 @@ public final class FP {
 	public static final int TBITS=MODBITS%BIG.BASEBITS; // Number of active bits in top word 
 	public static final long TMASK=((long)1<<TBITS)-1;
 
+/* width of the windows of pow, see Tuning */
+	static final int WINDOW=Tuning.get("BLS461","FP.window",4,2,7);
 
 	public final BIG x;
 	//public BIG p=new BIG(ROM.Modulus);
@@ -112,7 +118,7 @@ public final class FP {
 		}
 		if (MODTYPE==NOT_SPECIAL)
 		{
-			return BIG.monty(new BIG(ROM.Modulus),ROM.MConst,d);
+			return BIG.monty(Constants.MODULUS,ROM.MConst,d);
 		}
 
 		return new BIG(0);
@@ -166,7 +172,7 @@ public final class FP {
 	{
 		if (MODTYPE!=PSEUDO_MERSENNE && MODTYPE!=GENERALISED_MERSENNE)
 		{
-			DBIG d=BIG.mul(x,new BIG(ROM.R2modp));  /*** Change ***/
+			DBIG d=BIG.mul(x,Constants.R2MODP);
 			x.copy(mod(d));
 			XES=2;
 		}
@@ -203,6 +209,19 @@ public final class FP {
 		XES=b.XES;
 	}
 
+/* copy this to or from coefficient i of the flat representation, see FP12Flat */
+	void toFlat(long[] w,int[] xes,int i)
+	{
+		System.arraycopy(x.w,0,w,i*BIG.NLEN,BIG.NLEN);
+		xes[i]=XES;
+	}
+
+	void fromFlat(long[] w,int[] xes,int i)
+	{
+		System.arraycopy(w,i*BIG.NLEN,x.w,0,BIG.NLEN);
+		XES=xes[i];
+	}
+
 /* set this=0 */
 	public void zero()
 	{
@@ -244,6 +263,7 @@ public final class FP {
 /* this*=b mod Modulus */
 	public void mul(FP b)
 	{
+		if (OpCounter.ENABLED) OpCounter.count(OpCounter.FP_MUL);
 		if ((long)XES*b.XES>(long)FEXCESS) reduce();
 
 		DBIG d=BIG.mul(x,b.x);
@@ -303,6 +323,7 @@ public final class FP {
 /* this*=this mod Modulus */
 	public void sqr()
 	{
+		if (OpCounter.ENABLED) OpCounter.count(OpCounter.FP_SQR);
 		DBIG d;
 		if ((long)XES*XES>(long)FEXCESS) reduce();
 
@@ -339,12 +360,8 @@ public final class FP {
 /* this = -this mod Modulus */
 	public void neg()
 	{
-		int sb;
-		BIG m=new BIG(ROM.Modulus);
-
-		sb=logb2(XES-1);
-		m.fshl(sb);
-		x.rsub(m);		
+		int sb=logb2(XES-1);
+		x.rsub(Constants.MODULUS_SHL[sb]);
 
 		XES=(1<<sb);
 		if (XES>FEXCESS) reduce();
@@ -373,25 +390,21 @@ public final class FP {
 			x.fshr(1);
 		else
 		{
-			x.add(new BIG(ROM.Modulus));
+			x.add(Constants.MODULUS);
 			x.norm();
 			x.fshr(1);
 		}
 	}
 
-/* this=1/this mod Modulus */
+/* this=1/this mod Modulus. Constant time binary GCD, see BinaryGCD */
 	public void inverse()
 	{
-/*
+		if (OpCounter.ENABLED) OpCounter.count(OpCounter.FP_INVERSE);
 		BIG r=redc();
-		r.invmodp(p);
+		r.mod(Constants.MODULUS);
+		BinaryGCD.inverse(r.w,Constants.MODULUS.w,BIG.BASEBITS,MODBITS);
 		x.copy(r);
 		nres();
-*/
-		BIG m2=new BIG(ROM.Modulus);
-		m2.dec(2); m2.norm();
-		copy(pow(m2));
-
 	}
 
 /* return TRUE if this==a */
@@ -408,29 +421,31 @@ public final class FP {
 /* reduce this mod Modulus */
 	public void reduce()
 	{
-		x.mod(new BIG(ROM.Modulus));
+		x.mod(Constants.MODULUS);
 		XES=1;
 	}
 
+/* return this^e, with fixed windows of WINDOW bits. Not constant time, so only for public e */
 	public FP pow(BIG e)
 	{
-		byte[] w=new byte[1+(BIG.NLEN*BIG.BASEBITS+3)/4];
-		FP [] tb=new FP[16];
+		int wb=WINDOW,ts=1<<wb;
+		byte[] w=new byte[1+(BIG.NLEN*BIG.BASEBITS+wb-1)/wb];
+		FP [] tb=new FP[ts];
 		BIG t=new BIG(e);
 		t.norm();
-		int nb=1+(t.nbits()+3)/4;
+		int nb=1+(t.nbits()+wb-1)/wb;
 
 		for (int i=0;i<nb;i++)
 		{
-			int lsbs=t.lastbits(4);
+			int lsbs=t.lastbits(wb);
 			t.dec(lsbs);
 			t.norm();
 			w[i]=(byte)lsbs;
-			t.fshr(4);
+			t.fshr(wb);
 		}
 		tb[0]=new FP(1);
 		tb[1]=new FP(this);
-		for (int i=2;i<16;i++)
+		for (int i=2;i<ts;i++)
 		{
 			tb[i]=new FP(tb[i-1]);
 			tb[i].mul(this);
@@ -438,10 +453,7 @@ public final class FP {
 		FP r=new FP(tb[w[nb-1]]);
 		for (int i=nb-2;i>=0;i--)
 		{
-			r.sqr();
-			r.sqr();
-			r.sqr();
-			r.sqr();
+			for (int j=0;j<wb;j++) r.sqr();
 			r.mul(tb[w[i]]);
 		}
 		r.reduce();
@@ -471,13 +483,12 @@ public final class FP {
 /* return sqrt(this) mod Modulus */
 	public FP sqrt()
 	{
+		if (OpCounter.ENABLED) OpCounter.count(OpCounter.FP_SQRT);
 		reduce();
-		BIG b=new BIG(ROM.Modulus);
 		if (MOD8==5)
 		{
-			b.dec(5); b.norm(); b.shr(3);
 			FP i=new FP(this); i.x.shl(1);
-			FP v=i.pow(b);
+			FP v=i.pow(Constants.SQRTEXP);
 			i.mul(v); i.mul(v);
 			i.x.dec(1);
 			FP r=new FP(this);
@@ -486,17 +497,28 @@ public final class FP {
 			return r;
 		}
 		else
+			return pow(Constants.SQRTEXP);
+	}
+
+/* return 1/sqrt(this) mod Modulus for QR this. When p=3 mod 4 this is this^((p-3)/4) */
+/* For a non-QR the result t satisfies this*t^2=-1, so sqrt(-1/this)=t */
+	public FP invsqrt()
+	{
+		if (MOD8==5)
 		{
-			b.inc(1); b.norm(); b.shr(2);
-			return pow(b);
+			FP r=sqrt();
+			r.inverse();
+			return r;
 		}
+		reduce();
+		return pow(Constants.INVSQRTEXP);
 	}
 
 /* return jacobi symbol (this/Modulus) */
 	public int jacobi()
 	{
 		BIG w=redc();
-		return w.jacobi(new BIG(ROM.Modulus));
+		return w.jacobi(Constants.MODULUS);
 	}
 /*
 	public static void main(String[] args) {
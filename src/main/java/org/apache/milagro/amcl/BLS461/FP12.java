@@ -22,6 +22,9 @@ under the License.
 
 package org.apache.milagro.amcl.BLS461;
 
+import java.nio.ByteBuffer;
+import org.apache.milagro.amcl.OpCounter;
+
 public final class FP12 {
 	private final FP4 a;
 	private final FP4 b;
@@ -84,6 +87,32 @@ public final class FP12 {
 		cmove(invf,(int)(m&1));
 	}
 
+/* Constant time select from pre-computed table of any size, see FlatTable */
+	void select(FlatTable g,int b)
+	{
+		long[] r=new long[12*BIG.NLEN];
+		int[] rx=new int[12];
+		int m=b>>31;
+		int babs=(b^m)-m;
+
+		babs=(babs-1)/2;
+		g.select(babs,r,rx);
+		fromFlat(r,rx,0);
+
+		FP12 invf=new FP12(this); 
+		invf.conj();
+		cmove(invf,m&1);
+	}
+
+/* Flatten table */
+	static FlatTable flatten(FP12[] g)
+	{
+		FlatTable T=new FlatTable(g.length,12);
+		for (int i=0;i<g.length;i++)
+			g[i].toFlat(T.w,T.xes,12*i);
+		return T;
+	}
+
 
 /* test x==1 ? */
 	public boolean isunity() {
@@ -117,6 +146,21 @@ public final class FP12 {
 		b.copy(x.b);
 		c.copy(x.c);
 	}
+
+/* copy this to or from coefficients i.. of the flat representation, see FP12Flat */
+	void toFlat(long[] w,int[] xes,int i)
+	{
+		a.toFlat(w,xes,i);
+		b.toFlat(w,xes,i+4);
+		c.toFlat(w,xes,i+8);
+	}
+
+	void fromFlat(long[] w,int[] xes,int i)
+	{
+		a.fromFlat(w,xes,i);
+		b.fromFlat(w,xes,i+4);
+		c.fromFlat(w,xes,i+8);
+	}
 /* set this=1 */
 	public void one()
 	{
@@ -247,6 +291,7 @@ public final class FP12 {
 /* FP12 full multiplication this=this*y */
 	public void mul(FP12 y)
 	{
+		if (OpCounter.ENABLED) OpCounter.count(OpCounter.FP12_MUL);
 //System.out.println("Into mul");
 		FP4 z0=new FP4(a);
 		FP4 z1=new FP4(0);
@@ -408,6 +453,144 @@ t1.norm();
 //System.out.println("Out of smul");
 	}
 
+/* Multiplication of two line functions this=this*y, 7 Fp2 multiplications */
+/* D_TYPE result has c=(c0,0), M_TYPE result has b=(0,b1), ready for smul2 */
+	public void ssmul(FP12 y,int type)
+	{
+		if (type==ECP.D_TYPE)
+		{
+			FP4 z0=new FP4(a);
+			FP2 z2=new FP2(b.real());
+			FP4 t0=new FP4(a);
+			FP4 t1=new FP4(y.a);
+
+			z0.mul(y.a);
+			z2.mul(y.b.real());
+
+			t0.add(b);
+			t1.add(y.b);
+			t0.norm();
+			t1.norm();
+			t0.mul(t1);
+
+			FP4 t2=new FP4(z2);
+			t1.copy(z0); t1.neg();
+			t0.add(t1);
+			t1.copy(t2); t1.neg();
+			t0.add(t1);
+
+			a.copy(z0);
+			b.copy(t0);
+			c.copy(t2);
+		}
+		if (type==ECP.M_TYPE)
+		{
+			FP4 z0=new FP4(a);
+			FP2 z2=new FP2(c.getb());
+			FP4 t0=new FP4(a);
+			FP4 t1=new FP4(y.a);
+
+			z0.mul(y.a);
+			z2.mul(y.c.getb());
+			z2.mul_ip();
+			z2.norm();
+
+			t0.add(c);
+			t1.add(y.c);
+			t0.norm();
+			t1.norm();
+			t0.mul(t1);
+
+			FP4 t2=new FP4(z2);
+			t1.copy(z0); t1.neg();
+			t0.add(t1);
+			t1.copy(t2); t1.neg();
+			t0.add(t1);
+
+			t2.times_i();
+			a.copy(z0);
+			b.copy(t2);
+			c.copy(t0);
+		}
+		norm();
+	}
+
+/* Multiplication by the product of two line functions this=this*y, where y is output of ssmul */
+	public void smul2(FP12 y,int type)
+	{
+		FP4 z0=new FP4(a);
+		FP4 z1=new FP4(0);
+		FP4 z2=new FP4(b);
+		FP4 z3=new FP4(0);
+		FP4 t0=new FP4(a);
+		FP4 t1=new FP4(y.a);
+
+		z0.mul(y.a);
+		if (type==ECP.D_TYPE)
+		{
+			z2.mul(y.b);
+		}
+		if (type==ECP.M_TYPE)
+		{
+			z2.pmul(y.b.getb());
+			z2.times_i();
+		}
+
+		t0.add(b);
+		t1.add(y.b);
+
+		t0.norm();
+		t1.norm();
+
+		z1.copy(t0); z1.mul(t1);
+		t0.copy(b); t0.add(c);
+
+		t1.copy(y.b); t1.add(y.c);
+
+		t0.norm();
+		t1.norm();
+
+		z3.copy(t0); z3.mul(t1);
+
+		t0.copy(z0); t0.neg();
+		t1.copy(z2); t1.neg();
+
+		z1.add(t0);
+		b.copy(z1); b.add(t1);
+
+		z3.add(t1);
+		z2.add(t0);
+
+		t0.copy(a); t0.add(c);
+		t1.copy(y.a); t1.add(y.c);
+
+		t0.norm();
+		t1.norm();
+
+		t0.mul(t1);
+		z2.add(t0);
+
+		t0.copy(c);
+		if (type==ECP.D_TYPE)
+		{
+			t0.pmul(y.c.real());
+		}
+		if (type==ECP.M_TYPE)
+		{
+			t0.mul(y.c);
+		}
+		t1.copy(t0); t1.neg();
+
+		c.copy(z2); c.add(t1);
+		z3.add(t1);
+		t0.times_i();
+		b.add(t0);
+		z3.norm();
+		z3.times_i();
+		a.copy(z0); a.add(z3);
+		norm();
+	}
+
 /* this=1/this */
 	public void inverse()
 	{
@@ -476,91 +659,81 @@ t1.norm();
 		return t;
 	}
 
-/* convert from byte array to FP12 */
+/* convert from byte array to FP12. Arrays of length 6*MODBYTES are taken to be torus-compressed, see toBytes(w,true) */
 	public static FP12 fromBytes(byte[] w)
 	{
-		BIG a,b;
-		FP2 c,d;
-		FP4 e,f,g;
-		byte[] t=new byte[BIG.MODBYTES];
-
-		for (int i=0;i<BIG.MODBYTES;i++) t[i]=w[i];
-		a=BIG.fromBytes(t);
-		for (int i=0;i<BIG.MODBYTES;i++) t[i]=w[i+BIG.MODBYTES];
-		b=BIG.fromBytes(t);
-		c=new FP2(a,b);
-
-		for (int i=0;i<BIG.MODBYTES;i++) t[i]=w[i+2*BIG.MODBYTES];
-		a=BIG.fromBytes(t);
-		for (int i=0;i<BIG.MODBYTES;i++) t[i]=w[i+3*BIG.MODBYTES];
-		b=BIG.fromBytes(t);
-		d=new FP2(a,b);
-
-		e=new FP4(c,d);
-
-
-		for (int i=0;i<BIG.MODBYTES;i++) t[i]=w[i+4*BIG.MODBYTES];
-		a=BIG.fromBytes(t);
-		for (int i=0;i<BIG.MODBYTES;i++) t[i]=w[i+5*BIG.MODBYTES];
-		b=BIG.fromBytes(t);
-		c=new FP2(a,b);
-
-		for (int i=0;i<BIG.MODBYTES;i++) t[i]=w[i+6*BIG.MODBYTES];
-		a=BIG.fromBytes(t);
-		for (int i=0;i<BIG.MODBYTES;i++) t[i]=w[i+7*BIG.MODBYTES];
-		b=BIG.fromBytes(t);
-		d=new FP2(a,b);
-
-		f=new FP4(c,d);
-
-
-		for (int i=0;i<BIG.MODBYTES;i++) t[i]=w[i+8*BIG.MODBYTES];
-		a=BIG.fromBytes(t);
-		for (int i=0;i<BIG.MODBYTES;i++) t[i]=w[i+9*BIG.MODBYTES];
-		b=BIG.fromBytes(t);
-		c=new FP2(a,b);
-
-		for (int i=0;i<BIG.MODBYTES;i++) t[i]=w[i+10*BIG.MODBYTES];
-		a=BIG.fromBytes(t);
-		for (int i=0;i<BIG.MODBYTES;i++) t[i]=w[i+11*BIG.MODBYTES];
-		b=BIG.fromBytes(t);
-		d=new FP2(a,b);
-
-		g=new FP4(c,d);
+		return fromBytes(ByteBuffer.wrap(w),w.length==6*BIG.MODBYTES);
+	}
 
+/* convert from bytes at the position of buffer w, advancing the position. If compressed is true read the torus-compressed form */
+	public static FP12 fromBytes(ByteBuffer w,boolean compressed)
+	{
+		if (compressed) return fromCompressedBytes(w);
+		FP4 e=FP4.fromBytes(w);
+		FP4 f=FP4.fromBytes(w);
+		FP4 g=FP4.fromBytes(w);
 		return new FP12(e,f,g);
 	}
 
 /* convert this to byte array */
 	public void toBytes(byte[] w)
 	{
-		byte[] t=new byte[BIG.MODBYTES];
-		a.geta().getA().toBytes(t);
-		for (int i=0;i<BIG.MODBYTES;i++) w[i]=t[i];
-		a.geta().getB().toBytes(t);
-		for (int i=0;i<BIG.MODBYTES;i++) w[i+BIG.MODBYTES]=t[i];
-		a.getb().getA().toBytes(t);
-		for (int i=0;i<BIG.MODBYTES;i++) w[i+2*BIG.MODBYTES]=t[i];
-		a.getb().getB().toBytes(t);
-		for (int i=0;i<BIG.MODBYTES;i++) w[i+3*BIG.MODBYTES]=t[i];
-
-		b.geta().getA().toBytes(t);
-		for (int i=0;i<BIG.MODBYTES;i++) w[i+4*BIG.MODBYTES]=t[i];
-		b.geta().getB().toBytes(t);
-		for (int i=0;i<BIG.MODBYTES;i++) w[i+5*BIG.MODBYTES]=t[i];
-		b.getb().getA().toBytes(t);
-		for (int i=0;i<BIG.MODBYTES;i++) w[i+6*BIG.MODBYTES]=t[i];
-		b.getb().getB().toBytes(t);
-		for (int i=0;i<BIG.MODBYTES;i++) w[i+7*BIG.MODBYTES]=t[i];
-
-		c.geta().getA().toBytes(t);
-		for (int i=0;i<BIG.MODBYTES;i++) w[i+8*BIG.MODBYTES]=t[i];
-		c.geta().getB().toBytes(t);
-		for (int i=0;i<BIG.MODBYTES;i++) w[i+9*BIG.MODBYTES]=t[i];
-		c.getb().getA().toBytes(t);
-		for (int i=0;i<BIG.MODBYTES;i++) w[i+10*BIG.MODBYTES]=t[i];
-		c.getb().getB().toBytes(t);
-		for (int i=0;i<BIG.MODBYTES;i++) w[i+11*BIG.MODBYTES]=t[i];
+		toBytes(ByteBuffer.wrap(w),false);
+	}
+
+/* Torus compression of an element g of the cyclotomic subgroup, such as the output of PAIR.fexp */
+/* h=(1+g)/(1-g) satisfies conj(h)=-h, so only its coefficients a.b, b.a and c.b are non-zero */
+/* If compress is true output is 6*MODBYTES, half the size of toBytes(w). The identity is encoded as zero */
+	public void toBytes(byte[] w,boolean compress)
+	{
+		toBytes(ByteBuffer.wrap(w),compress);
+	}
+
+/* convert to bytes at the position of buffer w, advancing the position. If compress is true write the torus-compressed form */
+	public void toBytes(ByteBuffer w,boolean compress)
+	{
+		if (!compress)
+		{
+			a.toBytes(w);
+			b.toBytes(w);
+			c.toBytes(w);
+			return;
+		}
+		FP4 one=new FP4(1);
+		FP12 h=new FP12(this);
+		FP12 d=new FP12(this);
+
+		h.a.add(one);
+		d.a.neg(); d.b.neg(); d.c.neg();
+		d.a.add(one);
+		h.norm(); d.norm();
+		d.inverse();
+		h.mul(d);
+		h.reduce();
+
+		h.a.getb().toBytes(w);
+		h.b.geta().toBytes(w);
+		h.c.getb().toBytes(w);
+	}
+
+/* Recover g=(h-1)/(h+1) from torus-compressed h */
+	private static FP12 fromCompressedBytes(ByteBuffer w)
+	{
+		FP2 s0=FP2.fromBytes(w);
+		FP2 s1=FP2.fromBytes(w);
+		FP2 s2=FP2.fromBytes(w);
+		FP12 h=new FP12(new FP4(new FP2(0),s0),new FP4(s1,new FP2(0)),new FP4(new FP2(0),s2));
+		if (h.iszilch()) return new FP12(1);
+
+		FP4 one=new FP4(1);
+		FP12 g=new FP12(h);
+		g.a.sub(one);
+		h.a.add(one);
+		g.norm(); h.norm();
+		h.inverse();
+		g.mul(h);
+		g.reduce();
+		return g;
 	}
 
 /* convert to hex string */
@@ -633,8 +806,8 @@ t1.norm();
 	{
 		FP12 g1=new FP12(0);
 		FP12 g2=new FP12(0);
-		FP2 f=new FP2(new BIG(ROM.Fra),new BIG(ROM.Frb));
-		BIG q=new BIG(ROM.Modulus);
+		FP2 f=Constants.FROB;
+		BIG q=Constants.MODULUS;
 
 		BIG m=new BIG(q);
 		m.mod(r);
@@ -732,11 +905,14 @@ t1.norm();
             }
         } 
 
+    // Flatten tables
+        FlatTable G=flatten(g);
+
      // Main loop
-        p.select(g,(int)(2*w[nb-1]+1)); 
+        p.select(G,2*w[nb-1]+1); 
         for (i=nb-2;i>=0;i--) {
             p.usqr();
-            r.select(g,(int)(2*w[i]+s[i]));
+            r.select(G,2*w[i]+s[i]);
             p.mul(r);
         }
 
@@ -0,0 +1,225 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+*/
+
+/* Fixed base exponentiation in GT */
+/* A comb table is built once for a base g in GT, after which g^e costs about |r|/TEETH squarings and multiplications */
+/* The table is never modified, so a PreparedGT may be shared between threads */
+/* A table saved by save() is mapped back by load(), rather than rebuilt, see TableStore */
+
+package org.apache.milagro.amcl.BLS461;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+public final class PreparedGT {
+	public static final int TEETH=8;
+
+	private final FlatTable T;
+
+/* Build comb table for g, which must be in GT (i.e. the output of PAIR.fexp) */
+	public PreparedGT(FP12 g)
+	{
+		int i,j,d=cols();
+		FP12[] B=new FP12[TEETH];
+		FP12[] W=new FP12[1<<(TEETH-1)];
+
+		B[0]=new FP12(g);
+		B[0].reduce();
+		for (j=1;j<TEETH;j++)
+		{
+			B[j]=new FP12(B[j-1]);
+			for (i=0;i<d;i++) B[j].usqr();
+			B[j].reduce();
+		}
+		W[0]=B[0];
+		for (j=1;j<TEETH;j++)
+		{
+			for (i=(1<<(j-1));i<(1<<j);i++)
+			{
+				W[i]=new FP12(W[i-(1<<(j-1))]);
+				W[i].mul(B[j]);
+				W[i].reduce();
+			}
+		}
+		T=FP12.flatten(W);
+	}
+
+/* Build comb table from serialized GT element */
+	public static PreparedGT fromBytes(byte[] w)
+	{
+		return new PreparedGT(FP12.fromBytes(w));
+	}
+
+	private PreparedGT(FlatTable T)
+	{
+		this.T=T;
+	}
+
+/* Write the comb table to file */
+	public void save(Path file) throws IOException
+	{
+		TableStore.write(file,TableStore.GTCOMB,T);
+	}
+
+/* Map a comb table written by save() from file */
+	public static PreparedGT load(Path file) throws IOException
+	{
+		return new PreparedGT(TableStore.read(file,TableStore.GTCOMB));
+	}
+
+/* return the base g */
+	public FP12 base()
+	{
+		FP12 g=new FP12(0);
+		load(g,T);
+		return g;
+	}
+
+/* r=T[0], the base of table T */
+	private static void load(FP12 r,FlatTable T)
+	{
+		long[] w=new long[T.k*BIG.NLEN];
+		int[] xes=new int[T.k];
+		T.get(0,w,xes);
+		r.fromFlat(w,xes,0);
+	}
+
+/* number of comb columns */
+	private static int cols()
+	{
+		BIG r=Constants.ORDER;
+		return (r.nbits()+TEETH-1)/TEETH;
+	}
+
+/* Recode e mod r for the comb as in ECP2.mulcomb. Returns 1 if e was even and has been incremented */
+	private static int recode(BIG e,byte[] w,byte[] s)
+	{
+		int i,j,pb,d=cols(),nb=d+1;
+		BIG r=Constants.ORDER;
+		BIG k=new BIG(e);
+		BIG[] t=new BIG[TEETH];
+
+		k.mod(r);
+
+    // Make it odd
+		pb=1-k.parity();
+		k.inc(pb);
+		k.norm();
+
+    // Split into teeth
+		for (j=0;j<TEETH;j++)
+		{
+			t[j]=new BIG(k);
+			t[j].shr(j*d);
+			t[j].mod2m(d);
+		}
+
+    // Sign pivot
+		s[nb-1]=1;
+		for (i=0;i<nb-1;i++) {
+			t[0].fshr(1);
+			s[i]=(byte)(2*t[0].parity()-1);
+		}
+
+    // Recoded exponent
+		for (i=0;i<nb;i++) {
+			w[i]=0;
+			int m=1;
+			for (j=1;j<TEETH;j++) {
+				byte bt=(byte)(s[i]*t[j].parity());
+				t[j].fshr(1);
+				t[j].dec((int)(bt)>>1);
+				t[j].norm();
+				w[i]+=bt*(byte)m;
+				m*=2;
+			}
+		}
+		return pb;
+	}
+
+/* return g^e. Side channel attack secure */
+	public FP12 pow(BIG e)
+	{
+		int i,pb,nb=cols()+1;
+		FP12 p=new FP12(0);
+		FP12 r=new FP12(0);
+		byte[] w=new byte[nb];
+		byte[] s=new byte[nb];
+
+		pb=recode(e,w,s);
+
+		p.select(T,2*w[nb-1]+1);
+		for (i=nb-2;i>=0;i--)
+		{
+			p.usqr();
+			r.select(T,2*w[i]+s[i]);
+			p.mul(r);
+		}
+
+    // apply correction
+		load(r,T); r.conj();
+		r.mul(p);
+		p.cmove(r,pb);
+		p.reduce();
+		return p;
+	}
+
+/* return g^a.h^b, sharing the squarings. Side channel attack secure */
+	public static FP12 pow2(PreparedGT g,BIG a,PreparedGT h,BIG b)
+	{
+		int i,pa,pb,nb=cols()+1;
+		FP12 p=new FP12(0);
+		FP12 r=new FP12(0);
+		byte[] wa=new byte[nb];
+		byte[] sa=new byte[nb];
+		byte[] wb=new byte[nb];
+		byte[] sb=new byte[nb];
+
+		pa=recode(a,wa,sa);
+		pb=recode(b,wb,sb);
+
+		p.select(g.T,2*wa[nb-1]+1);
+		r.select(h.T,2*wb[nb-1]+1);
+		p.mul(r);
+		for (i=nb-2;i>=0;i--)
+		{
+			p.usqr();
+			r.select(g.T,2*wa[i]+sa[i]);
+			p.mul(r);
+			r.select(h.T,2*wb[i]+sb[i]);
+			p.mul(r);
+		}
+
+    // apply corrections
+		load(r,g.T); r.conj();
+		r.mul(p);
+		p.cmove(r,pa);
+		load(r,h.T); r.conj();
+		r.mul(p);
+		p.cmove(r,pb);
+		p.reduce();
+		return p;
+	}
+
+/* return compressed XTR form of g^e, as FP12.compow */
+	public FP4 compow(BIG e)
+	{
+		return pow(e).trace();
+	}
+}
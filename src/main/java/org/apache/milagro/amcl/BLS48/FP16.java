@@ -23,6 +23,8 @@ under the License.
 
 package org.apache.milagro.amcl.BLS48;
 
+import java.nio.ByteBuffer;
+
 public final class FP16 {
 	private final FP8 a;
 	private final FP8 b;
@@ -111,6 +113,19 @@ public final class FP16 {
 		a.copy(x.a);
 		b.copy(x.b);
 	}
+
+/* copy this to or from coefficients i.. of the flat representation, see FP48Flat */
+	void toFlat(long[] w,int[] xes,int i)
+	{
+		a.toFlat(w,xes,i);
+		b.toFlat(w,xes,i+8);
+	}
+
+	void fromFlat(long[] w,int[] xes,int i)
+	{
+		a.fromFlat(w,xes,i);
+		b.fromFlat(w,xes,i+8);
+	}
 /* set this=0 */
 	public void zero()
 	{
@@ -263,6 +278,21 @@ public final class FP16 {
 		norm();
 	}
 
+/* convert to bytes at the position of buffer w, advancing the position */
+	public void toBytes(ByteBuffer w)
+	{
+		a.toBytes(w);
+		b.toBytes(w);
+	}
+
+/* convert from bytes at the position of buffer w, advancing the position */
+	public static FP16 fromBytes(ByteBuffer w)
+	{
+		FP8 x=FP8.fromBytes(w);
+		FP8 y=FP8.fromBytes(w);
+		return new FP16(x,y);
+	}
+
 /* convert this to hex string */
 	public String toString() 
 	{
@@ -317,9 +347,15 @@ public final class FP16 {
 	public void frob(FP2 f)
 	{
 		FP2 ff=new FP2(f); ff.sqr(); ff.norm();
+		FP2 fff=new FP2(ff); fff.sqr(); fff.mul_ip(); fff.norm();
+		frob(f,ff,fff);
+	}
 
-		a.frob(ff);
-		b.frob(ff);
+/* this=this^p using Frobenius, where ff=f^2 and fff=ff^2.i have been precomputed */
+	public void frob(FP2 f,FP2 ff,FP2 fff)
+	{
+		a.frob(ff,fff);
+		b.frob(ff,fff);
 		b.qmul(f);
 		b.times_i();
 	}
@@ -23,6 +23,9 @@ under the License.
 
 package org.apache.milagro.amcl.BLS48;
 
+import java.nio.ByteBuffer;
+import org.apache.milagro.amcl.OpCounter;
+
 public final class FP2 {
 	private final FP a;
 	private final FP b;
@@ -59,6 +62,13 @@ public final class FP2 {
 		return (a.equals(one) && b.iszilch());
 	}
 
+/* sign of this for point compression - parity of the first non-zero coefficient */
+	public int sign()
+	{
+		if (!a.iszilch()) return a.redc().parity();
+		return b.redc().parity();
+	}
+
 /* test this=x */
 	public boolean equals(FP2 x) {
 		return (a.equals(x.a) && b.equals(x.b));
@@ -125,6 +135,19 @@ public final class FP2 {
 		b.copy(x.b);
 	}
 
+/* copy this to or from coefficients i.. of the flat representation, see FP48Flat */
+	void toFlat(long[] w,int[] xes,int i)
+	{
+		a.toFlat(w,xes,i);
+		b.toFlat(w,xes,i+1);
+	}
+
+	void fromFlat(long[] w,int[] xes,int i)
+	{
+		a.fromFlat(w,xes,i);
+		b.fromFlat(w,xes,i+1);
+	}
+
 /* set this=0 */
 	public void zero()
 	{
@@ -221,6 +244,7 @@ public final class FP2 {
 /* Now uses Lazy reduction */
 	public void mul(FP2 y)
 	{
+		if (OpCounter.ENABLED) OpCounter.count(OpCounter.FP_MUL,3);
 		if ((long)(a.XES+b.XES)*(y.a.XES+y.b.XES)>(long)FP.FEXCESS)
 		{
 			if (a.XES>1) a.reduce();
@@ -231,7 +255,7 @@ public final class FP2 {
 		BIG C=new BIG(a.x);
 		BIG D=new BIG(y.a.x);
 
-		pR.ucopy(new BIG(ROM.Modulus));
+		pR.ucopy(Constants.MODULUS);
 
 		DBIG A=BIG.mul(a.x,y.a.x);
 		DBIG B=BIG.mul(b.x,y.b.x);
@@ -254,28 +278,91 @@ public final class FP2 {
 /* returns true if this is QR */
 	public boolean sqrt()
 	{
-		if (iszilch()) return true;
+		return sqrt(null);
+	}
+
+/* As sqrt(), also setting is=1/sqrt(this) if is is not null. Costs two exponentiations in FP */
+/* With w=(a+sqrt(a*a+b*b))/2 and t=1/sqrt(w) both the real and imaginary parts follow from t, */
+/* and if w is not a QR then t=sqrt(-1/w) gives the root via the conjugate choice (a-sqrt(a*a+b*b))/2 */
+	public boolean sqrt(FP2 is)
+	{
+		if (iszilch())
+		{
+			if (is!=null) is.zero();
+			return true;
+		}
 		FP w1=new FP(b);
 		FP w2=new FP(a);
-		w1.sqr(); w2.sqr(); w1.add(w2);
+		FP w3=new FP(0);
+
+		if (w1.iszilch())
+		{
+			if (w2.jacobi()==1)
+			{
+				a.copy(w2.sqrt());
+			}
+			else
+			{
+				w2.neg(); w2.norm();
+				b.copy(w2.sqrt());
+				a.zero();
+			}
+			if (is!=null)
+			{
+				is.copy(this);
+				is.inverse();
+			}
+			return true;
+		}
+
+		w1.sqr(); w2.sqr(); w1.add(w2); w1.norm();
 		if (w1.jacobi()!=1) { zero(); return false; }
-		w1=w1.sqrt();
-		w2.copy(a); w2.add(w1); 
+		FP n=w1.invsqrt();
+		w1.mul(n);
+		w2.copy(a); w2.add(w1);
 		w2.norm(); w2.div2();
-		if (w2.jacobi()!=1)
+
+		FP t=w2.invsqrt();
+		w3.copy(t); w3.sqr(); w3.mul(w2);
+		boolean qr=w3.equals(new FP(1));
+		w2.mul(t);
+		t.mul(b); t.div2();
+		if (qr)
+		{
+			a.copy(w2);
+			b.copy(t);
+		}
+		else
 		{
-			w2.copy(a); w2.sub(w1); 
-			w2.norm(); w2.div2();
-			if (w2.jacobi()!=1) { zero(); return false; }
+			w2.neg(); w2.norm();
+			a.copy(t);
+			b.copy(w2);
+		}
+		if (is!=null)
+		{ /* norm of the root is sqrt(a*a+b*b) or its negative */
+			if (!qr) {n.neg(); n.norm();}
+			is.copy(this);
+			is.conj();
+			is.pmul(n);
 		}
-		w2=w2.sqrt();
-		a.copy(w2);
-		w2.add(w2);
-		w2.inverse();
-		b.mul(w2);
 		return true;
 	}
 
+/* convert to bytes at the position of buffer w, advancing the position */
+	public void toBytes(ByteBuffer w)
+	{
+		a.redc().tobytebuffer(w);
+		b.redc().tobytebuffer(w);
+	}
+
+/* convert from bytes at the position of buffer w, advancing the position */
+	public static FP2 fromBytes(ByteBuffer w)
+	{
+		BIG x=BIG.frombytebuffer(w);
+		BIG y=BIG.frombytebuffer(w);
+		return new FP2(x,y);
+	}
+
 /* output to hex string */
 	public String toString() 
 	{
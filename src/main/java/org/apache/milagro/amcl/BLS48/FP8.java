@@ -23,6 +23,8 @@ under the License.
 
 package org.apache.milagro.amcl.BLS48;
 
+import java.nio.ByteBuffer;
+
 public final class FP8 {
 	private final FP4 a;
 	private final FP4 b;
@@ -76,6 +78,13 @@ public final class FP8 {
 	{
 		return b;
 	}
+/* sign of this for point compression - sign of the first non-zero coefficient */
+	public int sign()
+	{
+		if (!a.iszilch()) return a.sign();
+		return b.sign();
+	}
+
 /* test this=x? */
 	public boolean equals(FP8 x)
 	{
@@ -111,6 +120,19 @@ public final class FP8 {
 		a.copy(x.a);
 		b.copy(x.b);
 	}
+
+/* copy this to or from coefficients i.. of the flat representation, see FP48Flat */
+	void toFlat(long[] w,int[] xes,int i)
+	{
+		a.toFlat(w,xes,i);
+		b.toFlat(w,xes,i+4);
+	}
+
+	void fromFlat(long[] w,int[] xes,int i)
+	{
+		a.fromFlat(w,xes,i);
+		b.fromFlat(w,xes,i+4);
+	}
 /* set this=0 */
 	public void zero()
 	{
@@ -276,6 +298,21 @@ public final class FP8 {
 		norm();
 	}
 
+/* convert to bytes at the position of buffer w, advancing the position */
+	public void toBytes(ByteBuffer w)
+	{
+		a.toBytes(w);
+		b.toBytes(w);
+	}
+
+/* convert from bytes at the position of buffer w, advancing the position */
+	public static FP8 fromBytes(ByteBuffer w)
+	{
+		FP4 x=FP4.fromBytes(w);
+		FP4 y=FP4.fromBytes(w);
+		return new FP8(x,y);
+	}
+
 /* convert this to hex string */
 	public String toString() 
 	{
@@ -325,12 +362,16 @@ public final class FP8 {
 	public void frob(FP2 f)
 	{
 		FP2 ff=new FP2(f); ff.sqr(); ff.mul_ip(); ff.norm();
+		frob(f,ff);
+	}
 
+/* this=this^p using Frobenius, where ff=f^2.i has been precomputed */
+	public void frob(FP2 f,FP2 ff)
+	{
 		a.frob(ff);
 		b.frob(ff);
 		b.pmul(f);
 		b.times_i();
-
 	}
 
 /* this=this^e */
@@ -601,13 +642,14 @@ public final class FP8 {
 	}
 
 /* sqrt(a+ib) = sqrt(a+sqrt(a*a-n*b*b)/2)+ib/(2*sqrt(a+sqrt(a*a-n*b*b)/2)) */
-/* returns true if this is QR */
+/* returns true if this is QR. The FP4 square root also returns its inverse, so no FP4 inversion is needed */
 	public boolean sqrt()
 	{
 		if (iszilch()) return true;
 		FP4 wa=new FP4(a);
 		FP4 ws=new FP4(b);
 		FP4 wt=new FP4(a);
+		FP4 wr=new FP4(0);
 		
 		if (ws.iszilch())
 		{
@@ -637,17 +679,15 @@ public final class FP8 {
 
 		wa.copy(wt); wa.add(ws); wa.norm(); wa.div2();
 
-		if (!wa.sqrt()) {
+		if (!wa.sqrt(wr)) {
 			wa.copy(wt); wa.sub(ws); wa.norm(); wa.div2();
-			if (!wa.sqrt()) {
+			if (!wa.sqrt(wr)) {
 				return false;
 			}
 		}
 		wt.copy(b);
-		ws.copy(wa); ws.add(wa);
-		ws.inverse();
-
-		wt.mul(ws);
+		wt.mul(wr);
+		wt.div2();
 		a.copy(wa);
 		b.copy(wt);
 
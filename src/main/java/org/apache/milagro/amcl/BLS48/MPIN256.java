@@ -21,13 +21,19 @@ under the License.
 
 package org.apache.milagro.amcl.BLS48;
 
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import org.apache.milagro.amcl.RAND;
 import org.apache.milagro.amcl.HASH256;
 import org.apache.milagro.amcl.HASH384;
 import org.apache.milagro.amcl.HASH512;
 import org.apache.milagro.amcl.AES;
+import org.apache.milagro.amcl.CryptoMonitor;
 
 public class MPIN256
 {
@@ -43,13 +49,13 @@ public class MPIN256
 	public static final int BAD_PARAMS=-11;
 	public static final int WRONG_ORDER=-18;
 	public static final int BAD_PIN=-19;
+	public static final int BATCH_BITS=64; /* Size of random multipliers in BATCH_SERVER_2 */
 
 /* Configure your PIN here */
 
-	public static final int MAXPIN=10000;  /* PIN less than this */
-	public static final int PBLEN=14;      /* Number of bits in PIN */
-	public static final int TS=10;         /* 10 for 4 digit PIN, 14 for 6-digit PIN - 2^TS/TS approx = sqrt(MAXPIN) */
-	public static final int TRAP=200;      /* 200 for 4 digit PIN, 2000 for 6-digit PIN  - approx 2*sqrt(MAXPIN) */
+	public static final int MAXPIN=1000000; /* PIN less than this */
+	public static final int PBLEN=20;      /* Number of bits in PIN */
+	public static final int PINRANGE=10000; /* PIN errors searched by KANGAROO(E,F), as for 4-digit PINs */
 
 //	public static final int HASH_TYPE=SHA256;
 
@@ -209,7 +215,7 @@ public class MPIN256
 	{
 		ECP P;
 		BIG x=new BIG(u);
-		BIG p=new BIG(ROM.Modulus);
+		BIG p=Constants.MODULUS;
 		x.mod(p);
 		while (true)
 		{
@@ -256,7 +262,7 @@ public class MPIN256
 		ECP P=new ECP(u,v);
 		if (P.is_infinity()) return INVALID_POINT;
 
-		BIG p=new BIG(ROM.Modulus);
+		BIG p=Constants.MODULUS;
 		u=BIG.randomnum(p,rng);
 
 		su=rng.getByte(); /*if (su<0) su=-su;*/ su%=2;
@@ -319,6 +325,7 @@ public class MPIN256
 	}
 
 /* W=W1+W2 in group G2 */
+/* W1, W2 and W may be 8*EFS+1 bytes, in which case they are compressed */
 	public static int RECOMBINE_G2(byte[] W1,byte[] W2,byte[] W)
 	{
 		ECP8 P=ECP8.fromBytes(W1);
@@ -328,7 +335,7 @@ public class MPIN256
 
 		P.add(Q); //P.affine();
 	
-		P.toBytes(W);
+		P.toBytes(W,W.length<16*EFS);
 		return 0;
 	}
 	
@@ -336,7 +343,7 @@ public class MPIN256
 	public static int RANDOM_GENERATE(RAND rng,byte[] S)
 	{
 		BIG s;
-		BIG r=new BIG(ROM.CURVE_Order);
+		BIG r=Constants.ORDER;
 		s=BIG.randomnum(r,rng);
 		//if (ROM.AES_S>0)
 		//{
@@ -368,7 +375,7 @@ public class MPIN256
 /* Implement step 2 on client side of MPin protocol */
 	public static int CLIENT_2(byte[] X,byte[] Y,byte[] SEC)
 	{
-		BIG r=new BIG(ROM.CURVE_Order);
+		BIG r=Constants.ORDER;
 		ECP P=ECP.fromBytes(SEC);
 		if (P.is_infinity()) return INVALID_POINT;
 
@@ -387,7 +394,7 @@ public class MPIN256
 /* Implement step 1 on client side of MPin protocol */
 	public static int CLIENT_1(int sha,int date,byte[] CLIENT_ID,RAND rng,byte[] X,int pin,byte[] TOKEN,byte[] SEC,byte[] xID,byte[] xCID,byte[] PERMIT)
 	{
-		BIG r=new BIG(ROM.CURVE_Order);
+		BIG r=Constants.ORDER;
 		BIG x;
 		if (rng!=null)
 		{
@@ -451,12 +458,12 @@ public class MPIN256
 	}
 
 /* Extract Server Secret SST=S*Q where Q is fixed generator in G2 and S is master secret */
+/* SST may be 8*EFS+1 bytes, in which case it is compressed */
 	public static int GET_SERVER_SECRET(byte[] S,byte[] SST)
 	{
-		ECP8 Q=ECP8.generator();
 		BIG s=BIG.fromBytes(S);
-		Q=PAIR256.G2mul(Q,s);
-		Q.toBytes(SST);
+		ECP8 Q=PAIR256.G2mulGen(s);
+		Q.toBytes(SST,SST.length<16*EFS);
 		return 0;
 	}
 
@@ -469,7 +476,7 @@ public class MPIN256
 	public static int GET_G1_MULTIPLE(RAND rng, int type,byte[] X,byte[] G,byte[] W)
 	{
 		BIG x;
-		BIG r=new BIG(ROM.CURVE_Order);
+		BIG r=Constants.ORDER;
 		if (rng!=null)
 		{
 			x=BIG.randomnum(r,rng);
@@ -535,40 +542,79 @@ public class MPIN256
 	}
 
 /* Implement step 2 of MPin protocol on server side */
+/* E and F may be 24*EFS bytes, in which case they are torus-compressed */
 	public static int SERVER_2(int date,byte[] HID,byte[] HTID,byte[] Y,byte[] SST,byte[] xID,byte[] xCID,byte[] mSEC,byte[] E,byte[] F)
 	{
-		BIG q=new BIG(ROM.Modulus);
+		return SERVER_2(date,wrap(HID),wrap(HTID),wrap(Y),wrap(SST),wrap(xID),wrap(xCID),wrap(mSEC),wrap(E),wrap(F));
+	}
+
+/* As SERVER_2 above, with each argument held in a buffer from its position to its limit, so that requests can be decoded in place */
+/* Buffer positions are not changed */
+	public static int SERVER_2(int date,ByteBuffer HID,ByteBuffer HTID,ByteBuffer Y,ByteBuffer SST,ByteBuffer xID,ByteBuffer xCID,ByteBuffer mSEC,ByteBuffer E,ByteBuffer F)
+	{
+		CryptoMonitor.Op op=CryptoMonitor.begin();
+		int r=server2(date,HID,HTID,Y,SST,xID,xCID,mSEC,E,F);
+		CryptoMonitor.end(op,"BLS48","MPIN256.SERVER_2",r);
+		return r;
+	}
+
+	private static int server2(int date,ByteBuffer HID,ByteBuffer HTID,ByteBuffer Y,ByteBuffer SST,ByteBuffer xID,ByteBuffer xCID,ByteBuffer mSEC,ByteBuffer E,ByteBuffer F)
+	{
 		ECP8 Q=ECP8.generator();
 
-		ECP8 sQ=ECP8.fromBytes(SST);
+		ECP8 sQ=ECP8.fromBytes(SST.duplicate(),SST.remaining()==8*EFS+1);
 		if (sQ.is_infinity()) return INVALID_POINT;	
 
+		ECP[] RP=new ECP[2];
+		int rtn=server2prepare(date,HID,HTID,Y,xID,xCID,mSEC,RP);
+		if (rtn!=0) return rtn;
+		return server2check(date,Q,sQ,RP[0],RP[1],HID,Y,xID,E,F);
+	}
+
+/* wrap an optional argument */
+	private static ByteBuffer wrap(byte[] b)
+	{
+		if (b==null) return null;
+		return ByteBuffer.wrap(b);
+	}
+
+/* Parse the client values of SERVER_2. On success RP[0]=mSEC and RP[1]=y.H(ID)+xID */
+	private static int server2prepare(int date,ByteBuffer HID,ByteBuffer HTID,ByteBuffer Y,ByteBuffer xID,ByteBuffer xCID,ByteBuffer mSEC,ECP[] RP)
+	{
 		ECP R;
 		if (date!=0)
-			R=ECP.fromBytes(xCID);
+			R=ECP.fromBytes(xCID.duplicate());
 		else 
 		{
 			if (xID==null) return BAD_PARAMS;
-			R=ECP.fromBytes(xID);
+			R=ECP.fromBytes(xID.duplicate());
 		}
 		if (R.is_infinity()) return INVALID_POINT;
 
-		BIG y=BIG.fromBytes(Y);
+		BIG y=BIG.frombytebuffer(Y.duplicate());
 		ECP P;
-		if (date!=0) P=ECP.fromBytes(HTID);
+		if (date!=0) P=ECP.fromBytes(HTID.duplicate());
 		else 
 		{
 			if (HID==null) return BAD_PARAMS;
-			P=ECP.fromBytes(HID);
+			P=ECP.fromBytes(HID.duplicate());
 		}
 	
 		if (P.is_infinity()) return INVALID_POINT;
 
 		P=PAIR256.G1mul(P,y);
 		P.add(R); //P.affine();
-		R=ECP.fromBytes(mSEC);
+		R=ECP.fromBytes(mSEC.duplicate());
 		if (R.is_infinity()) return INVALID_POINT;
 
+		RP[0]=R;
+		RP[1]=P;
+		return 0;
+	}
+
+/* Check e(Q,R).e(sQ,P)=1, and if not output E and F for KANGAROO */
+	private static int server2check(int date,ECP8 Q,ECP8 sQ,ECP R,ECP P,ByteBuffer HID,ByteBuffer Y,ByteBuffer xID,ByteBuffer E,ByteBuffer F)
+	{
 		FP48 g;
 
 		g=PAIR256.ate2(Q,R,sQ,P);
@@ -578,20 +624,20 @@ public class MPIN256
 		{
 			if (HID!=null && xID!=null && E!=null && F!=null)
 			{
-				g.toBytes(E);
+				g.toBytes(E.duplicate(),E.remaining()<48*EFS);
 				if (date!=0)
 				{
-					P=ECP.fromBytes(HID);
+					P=ECP.fromBytes(HID.duplicate());
 					if (P.is_infinity()) return INVALID_POINT;
-					R=ECP.fromBytes(xID);
+					R=ECP.fromBytes(xID.duplicate());
 					if (R.is_infinity()) return INVALID_POINT;
 
-					P=PAIR256.G1mul(P,y);
+					P=PAIR256.G1mul(P,BIG.frombytebuffer(Y.duplicate()));
 					P.add(R); //P.affine();
 				}
 				g=PAIR256.ate(Q,P);
 				g=PAIR256.fexp(g);
-				g.toBytes(F);
+				g.toBytes(F.duplicate(),F.remaining()<48*EFS);
 			}
 			return BAD_PIN;
 		}
@@ -599,60 +645,226 @@ public class MPIN256
 		return 0;
 	}
 
-/* Pollards kangaroos used to return PIN error */
-	public static int KANGAROO(byte[] E,byte[] F)
+/* Step 2 of MPin protocol on server side for n login attempts against the same server secret SST */
+/* Attempt i has arguments HID[i], HTID[i], Y[i], xID[i], xCID[i], mSEC[i], E[i] and F[i] as for SERVER_2 */
+/* HID, HTID, xID, xCID, E and F may be null where SERVER_2 allows their entries to be null */
+/* If rng is not null the product e(Q,r0.mSEC0+r1.mSEC1+...).e(sQ,r0.P0+r1.P1+...) is checked first, for random BATCH_BITS-bit ri */
+/* Attempts are only checked one by one if that product is not 1. If pool is not null the attempts are processed on its threads */
+/* Returns the SERVER_2 result of each attempt */
+	public static int[] BATCH_SERVER_2(int date,byte[][] HID,byte[][] HTID,byte[][] Y,byte[] SST,byte[][] xID,byte[][] xCID,byte[][] mSEC,byte[][] E,byte[][] F,RAND rng,ForkJoinPool pool)
 	{
-		FP48 ge=FP48.fromBytes(E);
-		FP48 gf=FP48.fromBytes(F);
-		int[] distance = new int[TS];
-		FP48 t=new FP48(gf);
-		FP48[] table=new FP48[TS];
-		int i,j,m,s,dn,dm,res,steps;
-
-		s=1;
-		for (m=0;m<TS;m++)
-		{
-			distance[m]=s;
-			table[m]=new FP48(t);
-			s*=2;
-			t.usqr();
+		int n=Y.length;
+		int[] rtn=new int[n];
+		ECP8 sQ=ECP8.fromBytes(SST);
+		if (sQ.is_infinity())
+		{
+			Arrays.fill(rtn,INVALID_POINT);
+			return rtn;
+		}
+		Batch b=new Batch(date,HID,HTID,Y,xID,xCID,mSEC,E,F,ECP8.generator(),sQ,rtn);
+
+		if (rng!=null)
+		{
+			b.r=new BIG[n];
+			for (int i=0;i<n;i++)
+			{
+				BIG ri=new BIG(0);
+				for (int j=0;j<BATCH_BITS/8;j++)
+				{
+					ri.fshl(8);
+					ri.inc(rng.getByte()&0xff);
+					ri.norm();
+				}
+				ri.inc(1);
+				ri.norm();
+				b.r[i]=ri;
+			}
+		}
+		b.run(Batch.PREPARE,pool);
+
+		if (rng!=null)
+		{
+			ECP A=new ECP();
+			ECP B=new ECP();
+			for (int i=0;i<n;i++)
+			{
+				if (rtn[i]!=0) continue;
+				A.add(b.RP[i][2]);
+				B.add(b.RP[i][3]);
+			}
+			if (A.is_infinity() && B.is_infinity()) return rtn;
+			if (!A.is_infinity() && !B.is_infinity())
+			{
+				FP48 g=PAIR256.fexp(PAIR256.ate2(b.Q,A,sQ,B));
+				if (g.isunity()) return rtn;
+			}
+		}
+		b.run(Batch.CHECK,pool);
+		return rtn;
+	}
+
+/* State shared by the steps of BATCH_SERVER_2 */
+	private static final class Batch
+	{
+		static final int PREPARE=0;
+		static final int CHECK=1;
+
+		final int date;
+		final byte[][] HID,HTID,Y,xID,xCID,mSEC,E,F;
+		final ECP8 Q,sQ;
+		final int[] rtn;
+		final ECP[][] RP;
+		BIG[] r;
+
+		Batch(int date,byte[][] HID,byte[][] HTID,byte[][] Y,byte[][] xID,byte[][] xCID,byte[][] mSEC,byte[][] E,byte[][] F,ECP8 Q,ECP8 sQ,int[] rtn)
+		{
+			this.date=date;
+			this.HID=HID; this.HTID=HTID; this.Y=Y;
+			this.xID=xID; this.xCID=xCID; this.mSEC=mSEC;
+			this.E=E; this.F=F;
+			this.Q=Q; this.sQ=sQ;
+			this.rtn=rtn;
+			RP=new ECP[rtn.length][];
+		}
+
+		private static ByteBuffer at(byte[][] a,int i)
+		{
+			if (a==null) return null;
+			return wrap(a[i]);
+		}
+
+		void step(int phase,int i)
+		{
+			if (phase==PREPARE)
+			{
+				RP[i]=new ECP[4];
+				rtn[i]=server2prepare(date,at(HID,i),at(HTID,i),at(Y,i),at(xID,i),at(xCID,i),at(mSEC,i),RP[i]);
+				if (rtn[i]==0 && r!=null)
+				{
+					RP[i][2]=RP[i][0].mul(r[i]);
+					RP[i][3]=RP[i][1].mul(r[i]);
+				}
+			}
+			if (phase==CHECK && rtn[i]==0)
+				rtn[i]=server2check(date,Q,sQ,RP[i][0],RP[i][1],at(HID,i),at(Y,i),at(xID,i),at(E,i),at(F,i));
+		}
+
+		void run(int phase,ForkJoinPool pool)
+		{
+			if (pool==null)
+			{
+				for (int i=0;i<rtn.length;i++) step(phase,i);
+				return;
+			}
+			pool.invoke(new BatchTask(this,phase,0,rtn.length));
 		}
-		t.one();
-		dn=0;
-		for (j=0;j<TRAP;j++)
+	}
+
+	private static final class BatchTask extends RecursiveAction
+	{
+		private static final long serialVersionUID=1L;
+		private final Batch b;
+		private final int phase,from,to;
+
+		BatchTask(Batch b,int phase,int from,int to)
 		{
-			i=t.geta().geta().geta().geta().getA().lastbits(20)%TS;
-			t.mul(table[i]);
-			dn+=distance[i];
+			this.b=b; this.phase=phase;
+			this.from=from; this.to=to;
 		}
-		gf.copy(t); gf.conj();
-		steps=0; dm=0;
-		res=0;
-		while (dm-dn<MAXPIN)
-		{
-			steps++;
-			if (steps>4*TRAP) break;
-			i=ge.geta().geta().geta().geta().getA().lastbits(20)%TS;
-			ge.mul(table[i]);
-			dm+=distance[i];
-			if (ge.equals(t))
+
+		protected void compute()
+		{
+			if (to-from==1)
 			{
-				res=dm-dn;
-				break;
+				b.step(phase,from);
+				return;
 			}
-			if (ge.equals(gf))
+			int mid=(from+to)/2;
+			invokeAll(new BatchTask(b,phase,from,mid),new BatchTask(b,phase,mid,to));
+		}
+	}
+
+/* Return the PIN error err, with E=F^-err and 0<|err|<PINRANGE, or 0 if there is none - probable invalid token */
+/* For 6-digit PINs use KANGAROO(E,F,MAXPIN), which costs about ten times as much on every bad PIN */
+	public static int KANGAROO(byte[] E,byte[] F)
+	{
+		return KANGAROO(E,F,PINRANGE);
+	}
+
+/* As KANGAROO(E,F), searching only errors with |err|<range. Baby-step giant-step, about 2*sqrt(range) multiplications */
+/* The baby steps F^j, 0<=j<=m, are indexed by a coefficient unchanged by conjugation, so each giant step of 2m+1 tests both F^j and F^-j */
+	public static int KANGAROO(byte[] E,byte[] F,int range)
+	{
+		CryptoMonitor.Op op=CryptoMonitor.begin();
+		int r=kangaroo(E,F,range);
+		CryptoMonitor.end(op,"BLS48","MPIN256.KANGAROO",r);
+		return r;
+	}
+
+	private static int kangaroo(byte[] E,byte[] F,int range)
+	{
+		FP48 ge=FP48.fromBytes(E);
+		FP48 gf=FP48.fromBytes(F);
+		FP48 gc=new FP48(0);
+		int i,j,k,m,s,d;
+
+		m=1;
+		while (m*m<range) m++;
+
+		FP48[] baby=new FP48[m+1];
+		int[] next=new int[m+1];
+		HashMap<Integer,Integer> index=new HashMap<Integer,Integer>(2*m+2);
+		baby[0]=new FP48(1);
+		for (j=0;j<=m;j++)
+		{
+			if (j>0)
 			{
-				res=dn-dm;
-				break;
+				baby[j]=new FP48(baby[j-1]);
+				baby[j].mul(gf);
 			}
+			Integer h=index.put(fingerprint(baby[j]),j);
+			next[j]=(h==null)?-1:h;
+		}
+
+		FP48 giant=new FP48(baby[m]);
+		giant.usqr(); giant.mul(gf);
+		FP48 igiant=new FP48(giant);
+		igiant.conj();
 
+		FP48 up=new FP48(ge);
+		FP48 dn=new FP48(ge);
+		for (k=0;k*(2*m+1)-m<range;k++)
+		{ /* up=E.F^(k(2m+1)) and dn=E.F^(-k(2m+1)) */
+			for (i=0;i<(k==0?1:2);i++)
+			{
+				FP48 g=(i==0)?up:dn;
+				Integer h=index.get(fingerprint(g));
+				if (h==null) continue;
+				gc.copy(g); gc.conj();
+				for (j=h;j>=0;j=next[j])
+				{
+					if (g.equals(baby[j])) s=j;
+					else if (gc.equals(baby[j])) s=-j;
+					else continue;
+					d=(i==0)?k*(2*m+1)-s:-k*(2*m+1)-s;
+					if (d>-range && d<range) return d;
+					return 0;
+				}
+			}
+			up.mul(giant);
+			dn.mul(igiant);
 		}
-		if (steps>4*TRAP || dm-dn>=MAXPIN) {res=0; }    // Trap Failed  - probable invalid token
-		return res;
+		return 0;
+	}
+
+	private static Integer fingerprint(FP48 g)
+	{
+		return g.geta().geta().geta().geta().getA().lastbits(30);
 	}
 
 /* Functions to support M-Pin Full */
 
+/* G1 and G2 may be 24*EFS bytes, in which case they are torus-compressed */
 	public static int PRECOMPUTE(byte[] TOKEN,byte[] CID,byte[] G1,byte[] G2)
 	{
 		ECP P,T;
@@ -667,11 +879,11 @@ public class MPIN256
 
 		g=PAIR256.ate(Q,T);
 		g=PAIR256.fexp(g);
-		g.toBytes(G1);
+		g.toBytes(G1,G1.length<48*EFS);
 
 		g=PAIR256.ate(Q,P);
 		g=PAIR256.fexp(g);
-		g.toBytes(G2);
+		g.toBytes(G2,G2.length<48*EFS);
 
 		return 0;
 	}
@@ -696,7 +908,7 @@ public class MPIN256
 		W=PAIR256.G1mul(W,x);
 
 //		FP2 f=new FP2(new BIG(ROM.Fra),new BIG(ROM.Frb));
-		BIG r=new BIG(ROM.CURVE_Order);
+		BIG r=Constants.ORDER;
 //		BIG q=new BIG(ROM.Modulus);
 
 		z.add(h);	//new
@@ -714,6 +926,36 @@ public class MPIN256
 		return 0;
 	}
 
+/* As above, but with G1 and G2 prepared once by PreparedGT.fromBytes for repeated logins */
+/* CK is derived from G1^z.G2^(pin.z), computed with shared squarings */
+	public static int CLIENT_KEY(int sha,PreparedGT G1,PreparedGT G2,int pin,byte[] R,byte[] X,byte[] H,byte[] wCID,byte[] CK)
+	{
+		byte[] t;
+
+		BIG z=BIG.fromBytes(R);
+		BIG x=BIG.fromBytes(X);
+		BIG h=BIG.fromBytes(H);
+
+		ECP W=ECP.fromBytes(wCID);
+		if (W.is_infinity()) return INVALID_POINT; 
+
+		W=PAIR256.G1mul(W,x);
+
+		BIG r=Constants.ORDER;
+
+		z.add(h);
+		z.mod(r);
+
+		BIG pz=BIG.modmul(z,new BIG(pin),r);
+		FP16 c=PreparedGT.pow2(G1,z,G2,pz).trace();
+
+		t=mpin_hash(sha,c,W);
+
+		for (int i=0;i<ECP.AESKEY;i++) CK[i]=t[i];
+
+		return 0;
+	}
+
 /* calculate common key on server side */
 /* Z=r.A - no time permits involved */
 
@@ -758,7 +1000,7 @@ public class MPIN256
 	{
 		byte[] h = hashit(sha,TimeValue,xCID,EFS);
 		BIG y = BIG.fromBytes(h);
-		BIG q=new BIG(ROM.CURVE_Order);
+		BIG q=Constants.ORDER;
 		y.mod(q);
 		//if (ROM.AES_S>0)
 		//{
@@ -21,12 +21,16 @@ under the License.
 
 package org.apache.milagro.amcl.BLS48;
 
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
 public final class PAIR256 {
 
 	public static final boolean USE_GLV =true;
 	public static final boolean USE_GS_G2 =true;
 	public static final boolean USE_GS_GT =true;	
 	public static final boolean GT_STRONG=false;
+	public static final int MP_MIN_PAIRS=4; /* minimum number of pairs per task in a parallel multi-pairing */
 
 
 /* Line function */
@@ -137,9 +141,9 @@ public final class PAIR256 {
 	public static FP48 ate(ECP8 P1,ECP Q1)
 	{
 		FP2 f;
-		BIG x=new BIG(ROM.CURVE_Bnx);
+		BIG x=Constants.BNX;
 		BIG n=new BIG(x);
-		FP48 lv;
+		FP48 lv,lv2;
 		int bt;
 		
 		ECP8 P=new ECP8(P1);
@@ -157,7 +161,7 @@ public final class PAIR256 {
 		FP Qy=new FP(Q.gety());
 
 		ECP8 A=new ECP8();
-		FP48 r=new FP48(1);
+		FP48Flat r=new FP48Flat(1);
 		A.copy(P);
 
 		ECP8 MP=new ECP8();
@@ -169,20 +173,23 @@ public final class PAIR256 {
 		{
 			r.sqr();
 			lv=line(A,A,Qx,Qy);
-			r.smul(lv,ECP.SEXTIC_TWIST);
 
 			bt=n3.bit(i)-n.bit(i); // bt=n.bit(i);
 			if (bt==1)
 			{
-				lv=line(A,P,Qx,Qy);
-				r.smul(lv,ECP.SEXTIC_TWIST);
+				lv2=line(A,P,Qx,Qy);
+				lv.ssmul(lv2,ECP.SEXTIC_TWIST);
+				r.smul2(lv,ECP.SEXTIC_TWIST);
 			}
 			if (bt==-1)
 			{
-				//P.neg();
-				lv=line(A,MP,Qx,Qy);
+				lv2=line(A,MP,Qx,Qy);
+				lv.ssmul(lv2,ECP.SEXTIC_TWIST);
+				r.smul2(lv,ECP.SEXTIC_TWIST);
+			}
+			if (bt==0)
+			{
 				r.smul(lv,ECP.SEXTIC_TWIST);
-				//P.neg();
 			}
 		}
 
@@ -191,16 +198,16 @@ public final class PAIR256 {
 			r.conj();
 		}
 
-		return r;
+		return r.toFP48();
 	}
 
 /* Optimal R-ate double pairing e(P,Q).e(R,S) */
 	public static FP48 ate2(ECP8 P1,ECP Q1,ECP8 R1,ECP S1)
 	{
 		FP2 f;
-		BIG x=new BIG(ROM.CURVE_Bnx);
+		BIG x=Constants.BNX;
 		BIG n=new BIG(x);
-		FP48 lv;
+		FP48 lv,lv2;
 		int bt;
 
 		ECP8 P=new ECP8(P1);
@@ -226,7 +233,7 @@ public final class PAIR256 {
 
 		ECP8 A=new ECP8();
 		ECP8 B=new ECP8();
-		FP48 r=new FP48(1);
+		FP48Flat r=new FP48Flat(1);
 
 		A.copy(P);
 		B.copy(R);
@@ -243,29 +250,24 @@ public final class PAIR256 {
 		{
 			r.sqr();
 			lv=line(A,A,Qx,Qy);
-			r.smul(lv,ECP.SEXTIC_TWIST);
-
-			lv=line(B,B,Sx,Sy);
-			r.smul(lv,ECP.SEXTIC_TWIST);
+			lv2=line(B,B,Sx,Sy);
+			lv.ssmul(lv2,ECP.SEXTIC_TWIST);
+			r.smul2(lv,ECP.SEXTIC_TWIST);
 
 			bt=n3.bit(i)-n.bit(i); // bt=n.bit(i);
 			if (bt==1)
 			{
 				lv=line(A,P,Qx,Qy);
-				r.smul(lv,ECP.SEXTIC_TWIST);
-				lv=line(B,R,Sx,Sy);
-				r.smul(lv,ECP.SEXTIC_TWIST);
+				lv2=line(B,R,Sx,Sy);
+				lv.ssmul(lv2,ECP.SEXTIC_TWIST);
+				r.smul2(lv,ECP.SEXTIC_TWIST);
 			}
 			if (bt==-1)
 			{
-				//P.neg(); 
 				lv=line(A,MP,Qx,Qy);
-				r.smul(lv,ECP.SEXTIC_TWIST);
-				//P.neg(); 
-				//R.neg();
-				lv=line(B,MR,Sx,Sy);
-				r.smul(lv,ECP.SEXTIC_TWIST);
-				//R.neg();
+				lv2=line(B,MR,Sx,Sy);
+				lv.ssmul(lv2,ECP.SEXTIC_TWIST);
+				r.smul2(lv,ECP.SEXTIC_TWIST);
 			}
 		}
 
@@ -274,171 +276,213 @@ public final class PAIR256 {
 			r.conj();
 		}
 
-		return r;
+		return r.toFP48();
 	}
 
-/* final exponentiation - keep separate for multi-pairings and to avoid thrashing stack */
-	public static FP48 fexp(FP48 m)
+/* Calculate Miller loop bits n and n3=3n, returns number of bits in n3 */
+	private static int lbits(BIG n3,BIG n)
 	{
-		FP2 f=new FP2(new BIG(ROM.Fra),new BIG(ROM.Frb));
-		BIG x=new BIG(ROM.CURVE_Bnx);
-		FP48 r=new FP48(m);
+		n.copy(Constants.BNX);
+		n3.copy(n);
+		n3.pmul(3);
+		n3.norm();
+		return n3.nbits();
+	}
 
-/* Easy part of final exp */
-		FP48 lv=new FP48(r);
-		lv.inverse();
-		r.conj();
+/* prepare for multi-pairing */
+	public static FP48[] initmp()
+	{
+		BIG n=new BIG(0);
+		BIG n3=new BIG(0);
+		int nb=lbits(n3,n);
+		FP48[] r=new FP48[nb-1];
+		for (int i=nb-2;i>=0;i--)
+			r[i]=new FP48(1);
+		return r;
+	}
 
-		r.mul(lv);
-		lv.copy(r);
-		r.frob(f,8);
-		r.mul(lv);
+/* Accumulate the lines of another pairing e(P,Q) into r, without the squarings of the Miller loop */
+	public static void another(FP48[] r,ECP8 P1,ECP Q1)
+	{
+		BIG n=new BIG(0);
+		BIG n3=new BIG(0);
+		FP48 lv,lv2;
+		int bt;
 
-		FP48 t0,t1,t2,t3,t4,t5,t6,t7;
-/* Hard part of final exp */	
-// Ghamman & Fouotsa Method
+		ECP8 P=new ECP8(P1);
+		ECP Q=new ECP(Q1);
 
-		t7=new FP48(r); t7.usqr();
-		t1=t7.pow(x);
+		P.affine();
+		Q.affine();
 
-		x.fshr(1);
-		t2=t1.pow(x);
-		x.fshl(1);
+		int nb=lbits(n3,n);
 
-		if (ECP.SIGN_OF_X==ECP.NEGATIVEX) {
-			t1.conj();
-		}
+		FP Qx=new FP(Q.getx());
+		FP Qy=new FP(Q.gety());
 
-		t3=new FP48(t1); t3.conj();
-		t2.mul(t3);
-		t2.mul(r);
+		ECP8 A=new ECP8();
+		A.copy(P);
 
-		r.mul(t7);
+		ECP8 MP=new ECP8();
+		MP.copy(P); MP.neg();
 
-		t1=t2.pow(x);
-		if (ECP.SIGN_OF_X==ECP.NEGATIVEX) {
-			t1.conj();
-		}
-		t3.copy(t1);
-		t3.frob(f,14);
-		r.mul(t3);
-		t1=t1.pow(x);
-		if (ECP.SIGN_OF_X==ECP.NEGATIVEX) {
-			t1.conj();
-		}
+		for (int i=nb-2;i>=1;i--)
+		{
+			lv=line(A,A,Qx,Qy);
 
-		t3.copy(t1);
-		t3.frob(f,13);
-		r.mul(t3);
-		t1=t1.pow(x);
-		if (ECP.SIGN_OF_X==ECP.NEGATIVEX) {
-			t1.conj();
+			bt=n3.bit(i)-n.bit(i);
+			if (bt==1)
+			{
+				lv2=line(A,P,Qx,Qy);
+				lv.ssmul(lv2,ECP.SEXTIC_TWIST);
+				r[i].smul2(lv,ECP.SEXTIC_TWIST);
+			}
+			if (bt==-1)
+			{
+				lv2=line(A,MP,Qx,Qy);
+				lv.ssmul(lv2,ECP.SEXTIC_TWIST);
+				r[i].smul2(lv,ECP.SEXTIC_TWIST);
+			}
+			if (bt==0)
+			{
+				r[i].smul(lv,ECP.SEXTIC_TWIST);
+			}
 		}
+	}
 
-		t3.copy(t1);
-		t3.frob(f,12);
-		r.mul(t3);
-		t1=t1.pow(x);
-		if (ECP.SIGN_OF_X==ECP.NEGATIVEX) {
-			t1.conj();
+/* Complete the Miller loop of a multi-pairing, result still needs fexp */
+	public static FP48 miller(FP48[] r)
+	{
+		FP48Flat res=new FP48Flat(1);
+		for (int i=r.length-1;i>=1;i--)
+		{
+			res.sqr();
+			res.mul(r[i]);
 		}
 
-		t3.copy(t1);
-		t3.frob(f,11);
-		r.mul(t3);
-		t1=t1.pow(x);
-		if (ECP.SIGN_OF_X==ECP.NEGATIVEX) {
-			t1.conj();
+		if (ECP.SIGN_OF_X==ECP.NEGATIVEX)
+		{
+			res.conj();
 		}
+		res.mul(r[0]);
+		return res.toFP48();
+	}
 
-		t3.copy(t1);
-		t3.frob(f,10);
-		r.mul(t3);
-		t1=t1.pow(x);
-		if (ECP.SIGN_OF_X==ECP.NEGATIVEX) {
-			t1.conj();
-		}
+/* Miller loop for the product of pairings e(P[0],Q[0]).e(P[1],Q[1])... sharing all the squarings */
+	public static FP48 multi(ECP8[] P,ECP[] Q)
+	{
+		return multi(P,Q,0,P.length);
+	}
 
-		t3.copy(t1);
-		t3.frob(f,9);
-		r.mul(t3);
-		t1=t1.pow(x);
-		if (ECP.SIGN_OF_X==ECP.NEGATIVEX) {
-			t1.conj();
-		}
+	private static FP48 multi(ECP8[] P,ECP[] Q,int from,int to)
+	{
+		FP48[] r=initmp();
+		for (int i=from;i<to;i++)
+			another(r,P[i],Q[i]);
+		return miller(r);
+	}
 
-		t3.copy(t1);
-		t3.frob(f,8);
-		r.mul(t3);
-		t1=t1.pow(x);
-		if (ECP.SIGN_OF_X==ECP.NEGATIVEX) {
-			t1.conj();
-		}
+/* As above, but the pairs are partitioned across the threads of pool, and partial Miller loops multiplied together. If pool is null the pairs are done serially */
+	public static FP48 multi(ECP8[] P,ECP[] Q,ForkJoinPool pool)
+	{
+		int n=P.length;
+		if (pool==null) return multi(P,Q,0,n);
+		int chunk=(n+pool.getParallelism()-1)/pool.getParallelism();
+		if (chunk<MP_MIN_PAIRS) chunk=MP_MIN_PAIRS;
+		if (n<=chunk) return multi(P,Q,0,n);
+		return pool.invoke(new MultiTask(P,Q,0,n,chunk));
+	}
 
-		t3.copy(t2); t3.conj();
-		t1.mul(t3);
-		t3.copy(t1);
-		t3.frob(f,7);
-		r.mul(t3);
-		t1=t1.pow(x);
-		if (ECP.SIGN_OF_X==ECP.NEGATIVEX) {
-			t1.conj();
-		}
+	private static final class MultiTask extends RecursiveTask<FP48>
+	{
+		private static final long serialVersionUID=1L;
+		private final ECP8[] P;
+		private final ECP[] Q;
+		private final int from,to,chunk;
 
-		t3.copy(t1);
-		t3.frob(f,6);
-		r.mul(t3);
-		t1=t1.pow(x);
-		if (ECP.SIGN_OF_X==ECP.NEGATIVEX) {
-			t1.conj();
+		MultiTask(ECP8[] P,ECP[] Q,int from,int to,int chunk)
+		{
+			this.P=P; this.Q=Q;
+			this.from=from; this.to=to;
+			this.chunk=chunk;
 		}
 
-		t3.copy(t1);
-		t3.frob(f,5);
-		r.mul(t3);
-		t1=t1.pow(x);
-		if (ECP.SIGN_OF_X==ECP.NEGATIVEX) {
-			t1.conj();
+		protected FP48 compute()
+		{
+			if (to-from<=chunk) return multi(P,Q,from,to);
+			int mid=from+chunk*(((to-from)/chunk+1)/2);
+			MultiTask left=new MultiTask(P,Q,from,mid,chunk);
+			left.fork();
+			FP48 r=new MultiTask(P,Q,mid,to,chunk).compute();
+			r.mul(left.join());
+			return r;
 		}
+	}
 
-		t3.copy(t1);
-		t3.frob(f,4);
-		r.mul(t3);
-		t1=t1.pow(x);
-		if (ECP.SIGN_OF_X==ECP.NEGATIVEX) {
-			t1.conj();
-		}
+/* final exponentiation - keep separate for multi-pairings and to avoid thrashing stack */
+	public static FP48 fexp(FP48 m)
+	{
+		BIG x=new BIG(Constants.BNX);
+		FP48Flat r=new FP48Flat(m);
 
-		t3.copy(t1);
-		t3.frob(f,3);
-		r.mul(t3);
-		t1=t1.pow(x);
-		if (ECP.SIGN_OF_X==ECP.NEGATIVEX) {
-			t1.conj();
-		}
+/* Easy part of final exp */
+		FP48Flat lv=new FP48Flat(r);
+		lv.inverse();
+		r.conj();
+
+		r.mul(lv);
+		lv.copy(r);
+		r.frob(8);
+		r.mul(lv);
+
+		FP48Flat t1,t2,t3,t4,t7;
+/* Hard part of final exp */	
+// Ghamman & Fouotsa Method
+
+		t7=new FP48Flat(r); t7.usqr();
+		t1=t7.cpow(x);
+
+		x.fshr(1);
+		t2=t1.cpow(x);
+		x.fshl(1);
 
-		t3.copy(t1);
-		t3.frob(f,2);
-		r.mul(t3);
-		t1=t1.pow(x);
 		if (ECP.SIGN_OF_X==ECP.NEGATIVEX) {
 			t1.conj();
 		}
 
-		t3.copy(t1);
-		t3.frob(f,1);
-		r.mul(t3);
-		t1=t1.pow(x);
+		t3=new FP48Flat(t1); t3.conj();
+		t2.mul(t3);
+		t2.mul(r);
+
+		r.mul(t7);
+
+// The Frobenius terms are accumulated in t4 by Horner's rule, so only 15 Frobenius maps are needed
+		t4=new FP48Flat(t2);
+		t1=t2.cpow(x);
 		if (ECP.SIGN_OF_X==ECP.NEGATIVEX) {
 			t1.conj();
 		}
-	
+		for (int i=0;i<14;i++)
+		{
+			if (i==7)
+			{
+				t3.copy(t2); t3.conj();
+				t1.mul(t3);
+			}
+			t4.frob(1);
+			t4.mul(t1);
+			t1=t1.cpow(x);
+			if (ECP.SIGN_OF_X==ECP.NEGATIVEX) {
+				t1.conj();
+			}
+		}
+		t4.frob(1);
+
+		r.mul(t4);
 		r.mul(t1);
-		t2.frob(f,15);
-		r.mul(t2);
 
 		r.reduce();
-		return r;
+		return r.toFP48();
 	}
 
 /* GLV method */
@@ -446,8 +490,8 @@ public final class PAIR256 {
 	{
 		BIG[] u=new BIG[2];
 // -(x^8).P = (Beta.x,y)
-		BIG q=new BIG(ROM.CURVE_Order);
-		BIG x=new BIG(ROM.CURVE_Bnx);
+		BIG q=Constants.ORDER;
+		BIG x=Constants.BNX;
 		BIG x2=BIG.smul(x,x);
 		x=BIG.smul(x2,x2);
 		x2=BIG.smul(x,x);
@@ -465,8 +509,8 @@ public final class PAIR256 {
 	{
 		BIG[] u=new BIG[16];
 
-		BIG q=new BIG(ROM.CURVE_Order);
-		BIG x=new BIG(ROM.CURVE_Bnx);
+		BIG q=Constants.ORDER;
+		BIG x=Constants.BNX;
 		BIG w=new BIG(e);
 		for (int i=0;i<15;i++)
 		{
@@ -502,8 +546,8 @@ public final class PAIR256 {
 			int i,np,nn;
 			ECP Q=new ECP(); 
 			Q.copy(P); Q.affine();
-			BIG q=new BIG(ROM.CURVE_Order);
-			FP cru=new FP(new BIG(ROM.CURVE_Cru));
+			BIG q=Constants.ORDER;
+			FP cru=Constants.CRU;
 			BIG t=new BIG(0);
 			BIG[] u=glv(e);
 			Q.getx().mul(cru);
@@ -544,9 +588,9 @@ public final class PAIR256 {
 		if (USE_GS_G2)
 		{
 			ECP8[] Q=new ECP8[16];
-			FP2[] F=ECP8.frob_constants();
+			FP2[] F=Constants.FROB_G2;
 
-			BIG q=new BIG(ROM.CURVE_Order);
+			BIG q=Constants.ORDER;
 			BIG[] u=gs(e);
 
 			BIG t=new BIG(0);
@@ -582,6 +626,27 @@ public final class PAIR256 {
 		return R;
 	}
 
+/* Comb table for the fixed generator of G2, mapped by TableStore.loadG2comb, or else built when first needed */
+	private static volatile FlatTable g2comb;
+
+	private static final class G2Comb
+	{
+		static final FlatTable T=ECP8.mkcomb(ECP8.generator());
+	}
+
+	static void setG2comb(FlatTable T)
+	{
+		g2comb=T;
+	}
+
+/* Multiply the fixed generator of G2 by e, using the precomputed comb table */
+	public static ECP8 G2mulGen(BIG e)
+	{
+		FlatTable T=g2comb;
+		if (T==null) T=G2Comb.T;
+		return ECP8.mulcomb(T,e);
+	}
+
 /* f=f^e */
 /* Note that this method requires a lot of RAM! Better to use compressed XTR method, see FP16.java */
 	public static FP48 GTpow(FP48 d,BIG e)
@@ -590,8 +655,7 @@ public final class PAIR256 {
 		if (USE_GS_GT)
 		{
 			FP48[] g=new FP48[16];
-			FP2 f=new FP2(new BIG(ROM.Fra),new BIG(ROM.Frb));
-			BIG q=new BIG(ROM.CURVE_Order);
+			BIG q=Constants.ORDER;
 			BIG t=new BIG(0);
 			int i,np,nn;
 			BIG[] u=gs(e);
@@ -600,7 +664,7 @@ public final class PAIR256 {
 			for (i=1;i<16;i++)
 			{
 				g[i]=new FP48(0); g[i].copy(g[i-1]);
-				g[i].frob(f,1);
+				g[i].frob(1);
 			}
 			for (i=0;i<16;i++)
 			{
@@ -0,0 +1,203 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+*/
+
+/*
+ * Constant time modular inversion, for FP.inverse of every curve
+ *
+ * This is the optimised binary GCD of T. Pornin, https://eprint.iacr.org/2020/972
+ * Values are held as digits of 30 bits. Each outer iteration runs 30 steps of the
+ * binary GCD on 62 bit approximations of a and b, made of their low 30 and top 32
+ * bits, and then applies the combined update to the full values, which costs a
+ * few multiplications of a value by a 30 bit factor. The number of iterations,
+ * and the memory accessed, depend only on the size of the modulus, so this is
+ * constant time, and about ten times faster than Fermat's method.
+ */
+
+package org.apache.milagro.amcl;
+
+public final class BinaryGCD {
+	private static final int DBITS=30;
+	private static final long DMASK=((long)1<<DBITS)-1;
+
+	private BinaryGCD() {}
+
+/* x=1/x mod m, or 0 if x=0. m is odd and of nbits bits, x<m, and both are normalised limbs of basebits bits */
+	public static void inverse(long[] x,long[] m,int basebits,int nbits)
+	{
+		int n=nbits/DBITS+2;
+		long[] a=digits(x,basebits,n);
+		long[] b=digits(m,basebits,n);
+		long[] p=digits(m,basebits,n);
+		long[] u=new long[n];
+		long[] v=new long[n];
+		long[] t=new long[n];
+		u[0]=1;
+
+/* minv=-1/p mod 2^30, by Newton's method */
+		long inv=p[0];
+		for (int i=0;i<4;i++) inv*=2-p[0]*inv;
+		long minv=(-inv)&DMASK;
+
+		for (int it=(2*nbits-1+DBITS-1)/DBITS;it>0;it--)
+		{
+/* len=max(len(a),len(b),62), and the digits t, t-1 and t-2, where t holds bit len-1 */
+			int len=0;
+			for (int i=0;i<n;i++)
+			{
+				long c=a[i]|b[i];
+				int l=DBITS*i+64-Long.numberOfLeadingZeros(c);
+				int nz=(int)-((c|-c)>>>63);
+				len^=(len^l)&nz;
+			}
+			len^=(len^(2*DBITS+2))&((len-2*DBITS-2)>>31);
+			int top=(len-1)/DBITS;
+			int lt=len-DBITS*top;
+			long a2=0,a1=0,a0=0,b2=0,b1=0,b0=0;
+			for (int i=2;i<n;i++)
+			{
+				long s=((i^top)-1)>>31;
+				a2|=a[i]&s; a1|=a[i-1]&s; a0|=a[i-2]&s;
+				b2|=b[i]&s; b1|=b[i-1]&s; b0|=b[i-2]&s;
+			}
+
+/* the approximations, low 30 bits and bits len-32 to len-1 */
+			long xa=a[0]|((((a2<<32)|(a1<<2)|(a0>>>28))>>>lt)<<DBITS);
+			long xb=b[0]|((((b2<<32)|(b1<<2)|(b0>>>28))>>>lt)<<DBITS);
+
+			long f0=1,g0=0,f1=0,g1=1;
+			for (int j=0;j<DBITS;j++)
+			{
+				long odd=-(xa&1);
+				long sw=odd&((xa-xb)>>63);
+				long s;
+				s=(xa^xb)&sw; xa^=s; xb^=s;
+				s=(f0^f1)&sw; f0^=s; f1^=s;
+				s=(g0^g1)&sw; g0^=s; g1^=s;
+				xa-=xb&odd; f0-=f1&odd; g0-=g1&odd;
+				xa>>=1; f1<<=1; g1<<=1;
+			}
+
+/* (a,b)=((a.f0+b.g0)/2^30,(a.f1+b.g1)/2^30), made non-negative */
+			long ca=a[0]*f0+b[0]*g0;
+			long cb=a[0]*f1+b[0]*g1;
+			ca>>=DBITS; cb>>=DBITS;
+			for (int i=1;i<n;i++)
+			{
+				long ai=a[i],bi=b[i];
+				ca+=ai*f0+bi*g0;
+				cb+=ai*f1+bi*g1;
+				a[i-1]=ca&DMASK; b[i-1]=cb&DMASK;
+				ca>>=DBITS; cb>>=DBITS;
+			}
+			a[n-1]=ca; b[n-1]=cb;
+			long sa=ca>>63,sb=cb>>63;
+			neg(a,sa); f0=(f0^sa)-sa; g0=(g0^sa)-sa;
+			neg(b,sb); f1=(f1^sb)-sb; g1=(g1^sb)-sb;
+
+/* (u,v)=((u.f0+v.g0)/2^30,(u.f1+v.g1)/2^30) mod p, by Montgomery reduction */
+			long cu=u[0]*f0+v[0]*g0;
+			long cv=u[0]*f1+v[0]*g1;
+			long qu=((cu&DMASK)*minv)&DMASK;
+			long qv=((cv&DMASK)*minv)&DMASK;
+			cu=(cu+qu*p[0])>>DBITS;
+			cv=(cv+qv*p[0])>>DBITS;
+			for (int i=1;i<n;i++)
+			{
+				long ui=u[i],vi=v[i];
+				cu+=ui*f0+vi*g0+qu*p[i];
+				cv+=ui*f1+vi*g1+qv*p[i];
+				u[i-1]=cu&DMASK; v[i-1]=cv&DMASK;
+				cu>>=DBITS; cv>>=DBITS;
+			}
+			u[n-1]=cu; v[n-1]=cv;
+			mod(u,p,t);
+			mod(v,p,t);
+		}
+		limbs(v,x,basebits);
+	}
+
+/* x=-x if s is all ones, else x is unchanged */
+	private static void neg(long[] x,long s)
+	{
+		int n=x.length;
+		long c=0;
+		for (int i=0;i<n-1;i++)
+		{
+			c+=(x[i]^s)-s;
+			x[i]=c&DMASK;
+			c>>=DBITS;
+		}
+		x[n-1]=((x[n-1]^s)-s)+c;
+	}
+
+/* x mod p, for -p<x<2p, using t as workspace */
+	private static void mod(long[] x,long[] p,long[] t)
+	{
+		int n=x.length;
+		long s=x[n-1]>>63;
+		long c=0;
+		for (int i=0;i<n-1;i++)
+		{
+			c+=x[i]+(p[i]&s);
+			x[i]=c&DMASK;
+			c>>=DBITS;
+		}
+		x[n-1]+=(p[n-1]&s)+c;
+		c=0;
+		for (int i=0;i<n-1;i++)
+		{
+			c+=x[i]-p[i];
+			t[i]=c&DMASK;
+			c>>=DBITS;
+		}
+		t[n-1]=x[n-1]-p[n-1]+c;
+		s=~(t[n-1]>>63);
+		for (int i=0;i<n;i++) x[i]^=(x[i]^t[i])&s;
+	}
+
+/* n digits of 30 bits of the limbs x of basebits bits */
+	private static long[] digits(long[] x,int basebits,int n)
+	{
+		long[] d=new long[n];
+		for (int j=0;j<n;j++)
+		{
+			int k=DBITS*j;
+			int i=k/basebits,o=k%basebits;
+			long w=0;
+			if (i<x.length) w=x[i]>>>o;
+			if (o+DBITS>basebits && i+1<x.length) w|=x[i+1]<<(basebits-o);
+			d[j]=w&DMASK;
+		}
+		return d;
+	}
+
+/* limbs x of basebits bits of the digits d of 30 bits */
+	private static void limbs(long[] d,long[] x,int basebits)
+	{
+		long bmask=((long)1<<basebits)-1;
+		for (int i=0;i<x.length;i++) x[i]=0;
+		for (int j=0;j<d.length;j++)
+		{
+			int k=DBITS*j;
+			int i=k/basebits,o=k%basebits;
+			if (i<x.length) x[i]|=(d[j]<<o)&bmask;
+			if (o+DBITS>basebits && i+1<x.length) x[i+1]|=d[j]>>>(basebits-o);
+		}
+	}
+}
@@ -0,0 +1,43 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+*/
+
+/* Flight Recorder events for CryptoMonitor */
+/* Java 8 version, which records none. The Java 11 version in META-INF/versions/11 of the multi-release JAR records them */
+
+package org.apache.milagro.amcl;
+
+final class CryptoEvent {
+	private CryptoEvent() {}
+
+/* Tell CryptoMonitor whenever a recording starts or stops. Returns false, as there are no events to record before Java 11 */
+	static boolean listen()
+	{
+		return false;
+	}
+
+/* Return a started event, or null if no recording has it enabled */
+	static Object start()
+	{
+		return null;
+	}
+
+	static void finish(Object event,String curve,String operation,int result)
+	{
+	}
+}
@@ -0,0 +1,270 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+*/
+
+/*
+ * Asynchronous execution of slow library calls
+ *
+ * Calls such as MPIN.SERVER, PAIR.ate and PAIR.fexp, RSA.DECRYPT or ECDH.VP_DSA are
+ * submitted as a Supplier and complete a CompletableFuture, so they do not block
+ * I/O threads. The number of calls waiting or running is bounded - once full,
+ * submit fails fast with a RejectedExecutionException so callers can shed load.
+ * Queue depth, queueing delay and run time are counted for monitoring.
+ *
+ * Calls run on a fixed pool of platform threads, or with virtual() on virtual
+ * threads when the JDK provides them (Java 21 or later).
+ */
+
+package org.apache.milagro.amcl;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+public final class CryptoExecutor implements AutoCloseable {
+	public static final int QUEUE_FACTOR=64;	/* default waiting calls per thread */
+
+	private final ExecutorService pool;
+	private final Semaphore permits;
+	private final int capacity;
+	private final boolean virtual;
+
+	private final AtomicInteger queued=new AtomicInteger();
+	private final AtomicInteger active=new AtomicInteger();
+	private final AtomicInteger maxQueued=new AtomicInteger();
+	private final LongAdder completed=new LongAdder();
+	private final LongAdder failed=new LongAdder();
+	private final LongAdder rejected=new LongAdder();
+	private final LongAdder waitNanos=new LongAdder();
+	private final LongAdder runNanos=new LongAdder();
+
+/* One thread per core, with QUEUE_FACTOR waiting calls per thread */
+	public CryptoExecutor()
+	{
+		this(Runtime.getRuntime().availableProcessors(),QUEUE_FACTOR*Runtime.getRuntime().availableProcessors());
+	}
+
+/* threads platform threads, with at most queue calls waiting for a thread */
+	public CryptoExecutor(int threads,int queue)
+	{
+		this(Executors.newFixedThreadPool(threads,new Daemon()),threads+queue,false);
+	}
+
+	private CryptoExecutor(ExecutorService pool,int capacity,boolean virtual)
+	{
+		this.pool=pool;
+		this.capacity=capacity;
+		this.virtual=virtual;
+		permits=new Semaphore(capacity);
+	}
+
+/* Run each call on its own virtual thread, with at most QUEUE_FACTOR+1 calls per core waiting or running */
+	public static CryptoExecutor virtual()
+	{
+		return virtual((QUEUE_FACTOR+1)*Runtime.getRuntime().availableProcessors());
+	}
+
+/* Run each call on its own virtual thread, with at most capacity calls waiting or running */
+/* Falls back to a platform pool of at most one thread per core if the JDK has no virtual threads - see isVirtual() */
+/* Throws IllegalArgumentException if capacity<1 */
+	public static CryptoExecutor virtual(int capacity)
+	{
+		if (capacity<1) throw new IllegalArgumentException("capacity "+capacity);
+		try
+		{
+			Method m=Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return new CryptoExecutor((ExecutorService)m.invoke(null),capacity,true);
+		}
+		catch (ReflectiveOperationException e)
+		{
+			int n=Math.min(Runtime.getRuntime().availableProcessors(),capacity);
+			return new CryptoExecutor(n,capacity-n);
+		}
+	}
+
+/* Run op asynchronously. The future fails with RejectedExecutionException if capacity calls are already waiting or running */
+	public <T> CompletableFuture<T> submit(Supplier<T> op)
+	{
+		CompletableFuture<T> f=new CompletableFuture<T>();
+		if (!permits.tryAcquire())
+		{
+			rejected.increment();
+			f.completeExceptionally(new RejectedExecutionException("CryptoExecutor full, capacity "+capacity));
+			return f;
+		}
+		int q=queued.incrementAndGet();
+		int m;
+		while (q>(m=maxQueued.get()) && !maxQueued.compareAndSet(m,q)) ;
+		try
+		{
+			pool.execute(new Job<T>(op,f,System.nanoTime()));
+		}
+		catch (RejectedExecutionException e)
+		{ /* executor has been closed */
+			queued.decrementAndGet();
+			permits.release();
+			rejected.increment();
+			f.completeExceptionally(e);
+		}
+		return f;
+	}
+
+	private final class Job<T> implements Runnable
+	{
+		private final Supplier<T> op;
+		private final CompletableFuture<T> f;
+		private final long start;
+
+		Job(Supplier<T> op,CompletableFuture<T> f,long start)
+		{
+			this.op=op; this.f=f; this.start=start;
+		}
+
+		public void run()
+		{
+			long t=System.nanoTime();
+			queued.decrementAndGet();
+			active.incrementAndGet();
+			waitNanos.add(t-start);
+			T r=null;
+			Throwable x=null;
+			try
+			{
+				r=op.get();
+			}
+			catch (Throwable e)
+			{
+				x=e;
+			}
+			runNanos.add(System.nanoTime()-t);
+			active.decrementAndGet();
+			permits.release();
+			if (x==null)
+			{
+				completed.increment();
+				f.complete(r);
+			}
+			else
+			{
+				failed.increment();
+				f.completeExceptionally(x);
+			}
+		}
+	}
+
+	private static final class Daemon implements ThreadFactory
+	{
+		private static final AtomicInteger count=new AtomicInteger();
+
+		public Thread newThread(Runnable r)
+		{
+			Thread t=new Thread(r,"amcl-crypto-"+count.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		}
+	}
+
+/* true if calls run on virtual threads */
+	public boolean isVirtual()
+	{
+		return virtual;
+	}
+
+/* maximum number of calls waiting or running */
+	public int capacity()
+	{
+		return capacity;
+	}
+
+/* number of calls waiting for a thread */
+	public int queueDepth()
+	{
+		return queued.get();
+	}
+
+/* largest queueDepth() seen */
+	public int maxQueueDepth()
+	{
+		return maxQueued.get();
+	}
+
+/* number of calls running */
+	public int active()
+	{
+		return active.get();
+	}
+
+/* number of calls that returned */
+	public long completed()
+	{
+		return completed.sum();
+	}
+
+/* number of calls that threw */
+	public long failed()
+	{
+		return failed.sum();
+	}
+
+/* number of calls refused because the executor was full or closed */
+	public long rejected()
+	{
+		return rejected.sum();
+	}
+
+/* total time calls spent waiting for a thread, in nanoseconds */
+	public long waitNanos()
+	{
+		return waitNanos.sum();
+	}
+
+/* total time calls spent running, in nanoseconds */
+	public long runNanos()
+	{
+		return runNanos.sum();
+	}
+
+/* refuse new calls, and wait up to millis milliseconds for those submitted to finish. Returns true if they did */
+	public boolean shutdown(long millis) throws InterruptedException
+	{
+		pool.shutdown();
+		return pool.awaitTermination(millis,TimeUnit.MILLISECONDS);
+	}
+
+/* refuse new calls. Those already submitted still run */
+	public void close()
+	{
+		pool.shutdown();
+	}
+
+	public String toString()
+	{
+		long n=completed()+failed();
+		return "CryptoExecutor[capacity="+capacity+", virtual="+virtual+", queued="+queueDepth()+", maxQueued="+maxQueueDepth()+", active="+active()
+			+", completed="+completed()+", failed="+failed()+", rejected="+rejected()
+			+", meanWaitUs="+(n==0?0:waitNanos()/n/1000)+", meanRunUs="+(n==0?0:runNanos()/n/1000)+"]";
+	}
+}
@@ -0,0 +1,114 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+*/
+
+/* Counters and timers of monitored operations, for export to a monitoring system */
+/* Install with CryptoMonitor.setListener(metrics), and read periodically with timers() */
+
+package org.apache.milagro.amcl;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+public final class CryptoMetrics implements CryptoMonitor.Listener {
+/* Calls of one operation on one curve */
+	public static final class Timer
+	{
+		private final LongAdder count=new LongAdder();
+		private final LongAdder failures=new LongAdder();
+		private final LongAdder nanos=new LongAdder();
+		private final AtomicLong max=new AtomicLong();
+
+		private void record(int result,long t)
+		{
+			count.increment();
+			if (result!=0) failures.increment();
+			nanos.add(t);
+			long m;
+			while (t>(m=max.get()) && !max.compareAndSet(m,t)) ;
+		}
+
+/* number of calls */
+		public long count()
+		{
+			return count.sum();
+		}
+
+/* number of calls with a non-zero result */
+		public long failures()
+		{
+			return failures.sum();
+		}
+
+/* total duration of the calls, in nanoseconds */
+		public long totalNanos()
+		{
+			return nanos.sum();
+		}
+
+/* longest call, in nanoseconds */
+		public long maxNanos()
+		{
+			return max.get();
+		}
+
+		public String toString()
+		{
+			long n=count();
+			return "count="+n+", failures="+failures()+", meanUs="+(n==0?0:totalNanos()/n/1000)+", maxUs="+maxNanos()/1000;
+		}
+	}
+
+	private final ConcurrentHashMap<String,Timer> timers=new ConcurrentHashMap<String,Timer>();
+
+	public void operation(String curve,String operation,int result,long nanos)
+	{
+		String key=curve+"."+operation;
+		Timer t=timers.get(key);
+		if (t==null)
+		{
+			Timer n=new Timer();
+			t=timers.putIfAbsent(key,n);
+			if (t==null) t=n;
+		}
+		t.record(result,nanos);
+	}
+
+/* Timers by curve.operation, for example BLS381.MPIN.SERVER_2 */
+	public Map<String,Timer> timers()
+	{
+		return new TreeMap<String,Timer>(timers);
+	}
+
+/* remove all timers */
+	public void clear()
+	{
+		timers.clear();
+	}
+
+	public String toString()
+	{
+		StringBuilder sb=new StringBuilder();
+		for (Map.Entry<String,Timer> e : timers().entrySet())
+			sb.append(e.getKey()).append(": ").append(e.getValue()).append('\n');
+		return sb.toString();
+	}
+}
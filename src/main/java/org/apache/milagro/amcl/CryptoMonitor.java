@@ -0,0 +1,107 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+*/
+
+/*
+ * Monitoring of protocol level operations
+ *
+ * Calls of MPIN.SERVER_2 and KANGAROO, ECDH.SP_DSA, VP_DSA, SVDP_DH, ECIES_ENCRYPT
+ * and ECIES_DECRYPT, RSA.KEY_PAIR, ENCRYPT and DECRYPT, and NHS.SERVER_1, CLIENT
+ * and SERVER_2 in every package are reported with their package, name, result
+ * and duration
+ *
+ * - as org.apache.milagro.amcl.Operation Flight Recorder events (see CryptoEvent),
+ *   while a recording that enables them is running
+ * - to the Listener set with setListener, such as a CryptoMetrics
+ *
+ * When neither is in use an operation costs one volatile read.
+ */
+
+package org.apache.milagro.amcl;
+
+public final class CryptoMonitor {
+	public interface Listener
+	{
+/* curve is the package name, or NHS. result is the return code, 0 for success. nanos is the duration */
+		void operation(String curve,String operation,int result,long nanos);
+	}
+
+/* An operation in progress */
+	public static final class Op
+	{
+		private final long start;
+		private final Object event;
+
+		private Op(long start,Object event)
+		{
+			this.start=start;
+			this.event=event;
+		}
+	}
+
+	private static final boolean JFR=jfr();
+	private static volatile boolean recording;
+	private static volatile Listener listener;
+	private static volatile boolean active;	/* recording || listener!=null, updated with both under the class lock */
+
+	private CryptoMonitor() {}
+
+	private static boolean jfr()
+	{
+		try
+		{
+			return CryptoEvent.listen();
+		}
+		catch (LinkageError e)
+		{ /* a Java 11 or later runtime without the jdk.jfr module */
+			return false;
+		}
+	}
+
+	static synchronized void recording(boolean running)
+	{
+		recording=running;
+		active=running || listener!=null;
+	}
+
+/* Report operations to l, or stop reporting if l is null */
+	public static synchronized void setListener(Listener l)
+	{
+		listener=l;
+		active=recording || l!=null;
+	}
+
+/* Start timing an operation. Returns null if nothing is monitoring */
+	public static Op begin()
+	{
+		if (!active) return null;
+		Object event=null;
+		if (JFR && recording) event=CryptoEvent.start();
+		return new Op(System.nanoTime(),event);
+	}
+
+/* Report operation op, started by begin, with its result */
+	public static void end(Op op,String curve,String operation,int result)
+	{
+		if (op==null) return;
+		long nanos=System.nanoTime()-op.start;
+		if (op.event!=null) CryptoEvent.finish(op.event,curve,operation,result);
+		Listener l=listener;
+		if (l!=null) l.operation(curve,operation,result,nanos);
+	}
+}
@@ -28,6 +28,8 @@ under the License.
 
 package org.apache.milagro.amcl;
 
+import java.nio.ByteBuffer;
+
 public class HASH256 {
 	private int[] length=new int[2];
 	private int[] h=new int[8];
@@ -163,6 +165,12 @@ public class HASH256 {
 		for (int i=0;i<b.length;i++) process((int)b[i]);
 	}
 
+/* process the bytes of b from its position to its limit, advancing the position */
+	public void process_buffer(ByteBuffer b)
+	{
+		while (b.hasRemaining()) process((int)b.get());
+	}
+
 /* process a 32-bit integer */
 	public void process_num(int n)
 	{
@@ -29,6 +29,8 @@ under the License.
 
 package org.apache.milagro.amcl;
 
+import java.nio.ByteBuffer;
+
 public class HASH512 {
 
 	private long[] length=new long[2];
@@ -176,6 +178,12 @@ public class HASH512 {
 		for (int i=0;i<b.length;i++) process((int)b[i]);
 	}
 
+/* process the bytes of b from its position to its limit, advancing the position */
+	public void process_buffer(ByteBuffer b)
+	{
+		while (b.hasRemaining()) process((int)b.get());
+	}
+
 /* process a 32-bit integer */
 	public void process_num(int n)
 	{
@@ -0,0 +1,61 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+*/
+
+/*
+ * High part of the product of two limbs, for the multiplication and Montgomery
+ * reduction of the BIG classes
+ *
+ * Limbs are signed longs of at most 62 bits, so products fit in 124 bits. This
+ * is the version for Java 8, where INTRINSIC is false and the BIG classes keep
+ * their own product of four half limb products. The multi-release JAR has
+ * another version in META-INF/versions/9, which JVMs from Java 9 on load
+ * instead. There INTRINSIC is true, and mulhi uses Math.multiplyHigh, which
+ * the JIT compiles to one multiply instruction. Results are the same.
+ */
+
+package org.apache.milagro.amcl;
+
+public final class Limb {
+/* whether mulhi is an intrinsic. Not a compile time constant, so that callers read it from whichever Limb is loaded */
+	public static final boolean INTRINSIC=intrinsic();
+
+	private Limb() {}
+
+	private static boolean intrinsic()
+	{
+		return false;
+	}
+
+/* floor(a*b/2^n), for even n. The low part is (a*b)&((1<<n)-1) */
+	public static long mulhi(long a,long b,int n)
+	{
+		int h=n/2;
+		long m=((long)1<<h)-1;
+		long x0=a&m;
+		long x1=a>>h;
+		long y0=b&m;
+		long y1=b>>h;
+		long bot=x0*y0;
+		long top=x1*y1;
+		long mid=x0*y1+x1*y0;
+		bot+=(mid&m)<<h;
+		top+=mid>>h;
+		return top+(bot>>n);
+	}
+}
@@ -382,6 +382,13 @@ public final class NHS {
 /* API files */
 
 	public static void SERVER_1(RAND RNG,byte[] SB,byte[] S)
+	{
+		CryptoMonitor.Op op=CryptoMonitor.begin();
+		server1(RNG,SB,S);
+		CryptoMonitor.end(op,"NHS","NHS.SERVER_1",0);
+	}
+
+	private static void server1(RAND RNG,byte[] SB,byte[] S)
 	{
 		int i;
 		byte[] seed=new byte[32];
@@ -423,6 +430,13 @@ public final class NHS {
 	}
 
 	public static void CLIENT(RAND RNG,byte[] SB,byte[] UC,byte[] KEY)
+	{
+		CryptoMonitor.Op op=CryptoMonitor.begin();
+		client(RNG,SB,UC,KEY);
+		CryptoMonitor.end(op,"NHS","NHS.CLIENT",0);
+	}
+
+	private static void client(RAND RNG,byte[] SB,byte[] UC,byte[] KEY)
 	{
 		int i;
 		SHA3 sh=new SHA3(SHA3.HASH256);
@@ -495,6 +509,13 @@ public final class NHS {
 	}
 
 	public static void SERVER_2(byte[] S,byte[] UC,byte[] KEY)
+	{
+		CryptoMonitor.Op op=CryptoMonitor.begin();
+		server2(S,UC,KEY);
+		CryptoMonitor.end(op,"NHS","NHS.SERVER_2",0);
+	}
+
+	private static void server2(byte[] S,byte[] UC,byte[] KEY)
 	{
 		int i;
 		SHA3 sh=new SHA3(SHA3.HASH256);
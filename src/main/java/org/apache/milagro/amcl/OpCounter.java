@@ -0,0 +1,124 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+*/
+
+/*
+ * Operation counts for field and group arithmetic
+ *
+ * Enabled by running with -Damcl.opcount=true. Each thread then counts its own
+ * calls to FP.mul, FP.sqr, FP.inverse, FP.sqrt, ECP.add and ECP.dbl (ECP.dadd
+ * counts as an add) and FP12/FP24/FP48.mul (but not the sparse smul), in every
+ * curve package. Nested calls are counted too, so FP.sqrt also counts the
+ * multiplications it does. FP.mul counts every product in Fp, including the
+ * three that FP2.mul and the flat classes compute inline for each Fp^2 product.
+ * When disabled ENABLED is false, and the JIT removes the counting from the
+ * arithmetic.
+ *
+ * OpCounter c=OpCounter.start();
+ * PAIR.ate(Q,P);
+ * c.close();
+ * c.get(OpCounter.FP_MUL);
+ *
+ * Only calls made on the thread that started the counter are counted.
+ */
+
+package org.apache.milagro.amcl;
+
+public final class OpCounter implements AutoCloseable {
+	public static final boolean ENABLED=Boolean.getBoolean("amcl.opcount");
+
+	public static final int FP_MUL=0;
+	public static final int FP_SQR=1;
+	public static final int FP_INVERSE=2;
+	public static final int FP_SQRT=3;
+	public static final int ECP_ADD=4;
+	public static final int ECP_DBL=5;
+	public static final int FP12_MUL=6;
+	public static final int FP24_MUL=7;
+	public static final int FP48_MUL=8;
+	public static final int OPS=9;
+
+	private static final String[] NAMES={"FP.mul","FP.sqr","FP.inverse","FP.sqrt","ECP.add","ECP.dbl","FP12.mul","FP24.mul","FP48.mul"};
+
+	private static final ThreadLocal<long[]> COUNTS=new ThreadLocal<long[]>() {
+		protected long[] initialValue()
+		{
+			return new long[OPS];
+		}
+	};
+
+	private final long[] total;	/* this thread's running counts */
+	private final long[] start;
+	private long[] counts;	/* counts between start and close */
+
+	private OpCounter()
+	{
+		total=COUNTS.get();
+		start=total.clone();
+	}
+
+/* count one call of op on this thread. Call only if ENABLED */
+	public static void count(int op)
+	{
+		COUNTS.get()[op]++;
+	}
+
+/* count n calls of op on this thread. Call only if ENABLED */
+	public static void count(int op,int n)
+	{
+		COUNTS.get()[op]+=n;
+	}
+
+/* Start counting the calls made on this thread */
+	public static OpCounter start()
+	{
+		return new OpCounter();
+	}
+
+/* stop counting. Later calls to get return the counts up to here */
+	public void close()
+	{
+		if (counts!=null) return;
+		counts=new long[OPS];
+		for (int i=0;i<OPS;i++) counts[i]=total[i]-start[i];
+	}
+
+/* number of calls of op counted, up to now if still counting */
+	public long get(int op)
+	{
+		if (counts!=null) return counts[op];
+		return total[op]-start[op];
+	}
+
+/* name of op */
+	public static String name(int op)
+	{
+		return NAMES[op];
+	}
+
+	public String toString()
+	{
+		StringBuilder sb=new StringBuilder("OpCounter[");
+		for (int i=0;i<OPS;i++)
+		{
+			if (i>0) sb.append(", ");
+			sb.append(NAMES[i]).append('=').append(get(i));
+		}
+		return sb.append(']').toString();
+	}
+}
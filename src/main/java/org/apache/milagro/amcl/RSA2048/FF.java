@@ -22,6 +22,7 @@ under the License.
 
 package org.apache.milagro.amcl.RSA2048;
 import org.apache.milagro.amcl.RAND;
+import org.apache.milagro.amcl.Tuning;
 
 public final class FF {
 
@@ -38,6 +39,9 @@ public final class FF {
 	public static final int P_MBITS=BIG.MODBYTES*8;
 	public static final int P_TBITS=(P_MBITS%BIG.BASEBITS);
 
+/* largest length multiplied by schoolbook rather than Karatsuba, see Tuning */
+	static final int KARATSUBA=Tuning.get("RSA2048","FF.karatsuba",1,1,FFLEN);
+
 	private final BIG[] v;
 	private final int length;
 
@@ -381,6 +385,60 @@ public final class FF {
 		}
 	}
 
+/* z=x*y by schoolbook multiplication, the base case of karmul */
+	void smul(int vp,FF x,int xp,FF y,int yp,int n)
+	{
+		int i,j;
+		BIG lo=new BIG(0);
+		for (i=0;i<n;i++)
+		{
+			x.v[xp+i].norm();
+			y.v[yp+i].norm();
+		}
+		for (i=0;i<2*n;i++) v[vp+i].zero();
+		for (i=0;i<n;i++)
+		{
+			for (j=0;j<n;j++)
+			{
+				DBIG d=BIG.mul(x.v[xp+i],y.v[yp+j]);
+				v[vp+i+j+1].add(d.split(8*BIG.MODBYTES));
+				v[vp+i+j+1].norm();
+				lo.copy(d);
+				v[vp+i+j].add(lo);
+				v[vp+i+j].norm();
+			}
+		}
+		rnorm(vp,2*n);
+	}
+
+/* low half of x*y by schoolbook multiplication, the base case of karmul_lower */
+	void smul_lower(int vp,FF x,int xp,FF y,int yp,int n)
+	{
+		int i,j;
+		BIG lo=new BIG(0);
+		for (i=0;i<n;i++)
+		{
+			x.v[xp+i].norm();
+			y.v[yp+i].norm();
+		}
+		for (i=0;i<n;i++) v[vp+i].zero();
+		for (i=0;i<n;i++)
+		{
+			for (j=0;i+j<n-1;j++)
+			{
+				DBIG d=BIG.mul(x.v[xp+i],y.v[yp+j]);
+				v[vp+i+j+1].add(d.split(8*BIG.MODBYTES));
+				v[vp+i+j+1].norm();
+				lo.copy(d);
+				v[vp+i+j].add(lo);
+				v[vp+i+j].norm();
+			}
+			v[vp+n-1].add(BIG.smul(x.v[xp+i],y.v[yp+n-1-i]));
+			v[vp+n-1].norm();
+		}
+		rnorm(vp,-n);
+	}
+
 /* z=x*y, t is workspace */
 	private void karmul(int vp,FF x,int xp,FF y,int yp,FF t,int tp,int n)
 	{
@@ -394,6 +452,11 @@ public final class FF {
 			v[vp].copy(d);
 			return;
 		}
+		if (n<=KARATSUBA)
+		{
+			smul(vp,x,xp,y,yp,n);
+			return;
+		}
 		nd2=n/2;
 		radd(vp,x,xp,x,xp+nd2,nd2);
 		rnorm(vp,nd2);                   /* Important - required for 32-bit build */
@@ -420,6 +483,11 @@ public final class FF {
 			v[vp].copy(d);
 			return;
 		}	
+		if (n<=KARATSUBA)
+		{
+			smul(vp,x,xp,x,xp,n);
+			return;
+		}
 
 		nd2=n/2;
 		karsqr(vp,x,xp,t,tp+n,nd2);
@@ -439,6 +507,11 @@ public final class FF {
 			v[vp].copy(BIG.smul(x.v[xp],y.v[yp]));
 			return;
 		}
+		if (n<=KARATSUBA)
+		{
+			smul_lower(vp,x,xp,y,yp,n);
+			return;
+		}
 		nd2=n/2;
 		karmul(vp,x,xp,y,yp,t,tp+n,nd2);
 		t.karmul_lower(tp,x,xp+nd2,y,yp,t,tp+n,nd2);
@@ -25,6 +25,7 @@ import org.apache.milagro.amcl.RAND;
 import org.apache.milagro.amcl.HASH256;
 import org.apache.milagro.amcl.HASH384;
 import org.apache.milagro.amcl.HASH512;
+import org.apache.milagro.amcl.CryptoMonitor;
 
 public final class RSA {
 
@@ -68,6 +69,13 @@ public final class RSA {
 /* generate an RSA key pair */
 
 	public static void KEY_PAIR(RAND rng,int e,private_key PRIV,public_key PUB)
+	{
+		CryptoMonitor.Op op=CryptoMonitor.begin();
+		key_pair(rng,e,PRIV,PUB);
+		CryptoMonitor.end(op,"RSA3072","RSA.KEY_PAIR",0);
+	}
+
+	private static void key_pair(RAND rng,int e,private_key PRIV,public_key PUB)
 	{ /* IEEE1363 A16.11/A16.12 more or less */
 
 		int n=PUB.n.getlen()/2;
@@ -329,6 +337,13 @@ public final class RSA {
 
 	/* RSA encryption with the public key */
 	public static void ENCRYPT(public_key PUB,byte[] F,byte[] G)
+	{
+		CryptoMonitor.Op op=CryptoMonitor.begin();
+		encrypt(PUB,F,G);
+		CryptoMonitor.end(op,"RSA3072","RSA.ENCRYPT",0);
+	}
+
+	private static void encrypt(public_key PUB,byte[] F,byte[] G)
 	{
 		int n=PUB.n.getlen();
 		FF f=new FF(n);
@@ -339,6 +354,13 @@ public final class RSA {
 
 	/* RSA decryption with the private key */
 	public static void DECRYPT(private_key PRIV,byte[] G,byte[] F)
+	{
+		CryptoMonitor.Op op=CryptoMonitor.begin();
+		decrypt(PRIV,G,F);
+		CryptoMonitor.end(op,"RSA3072","RSA.DECRYPT",0);
+	}
+
+	private static void decrypt(private_key PRIV,byte[] G,byte[] F)
 	{
 		int n=PRIV.p.getlen();
 		FF g=new FF(2*n);
@@ -0,0 +1,52 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+*/
+
+/* Calibration workloads of the tuned parameters of this package, see Tuning */
+/* Tuning runs main in a new JVM for each candidate value, as the parameters are fixed when the classes are initialised */
+
+package org.apache.milagro.amcl.RSA3072;
+
+import org.apache.milagro.amcl.RAND;
+import org.apache.milagro.amcl.Tuning;
+
+public final class Tuner {
+	public static final String[] PARAMS={"FF.karatsuba"};	/* tuned parameters */
+	public static final int[][] VALUES={{1,2,4}};	/* their candidate values */
+
+	private Tuner() {}
+
+/* Print the nanoseconds per run of the workload of parameter args[0], with the parameters read from amcl.tuning */
+	public static void main(String[] args)
+	{
+		RAND rng=new RAND();
+		rng.seed(32,new byte[32]);	/* fixed seed, so runs are comparable */
+		final FF m=new FF(FF.HFLEN);
+		final FF e=new FF(FF.HFLEN);
+		final FF x=new FF(FF.HFLEN);
+		final FF r=new FF(FF.HFLEN);
+		m.random(rng);
+		if (m.parity()==0) m.inc(1);
+		e.random(rng);
+		x.randomnum(m,rng);
+
+		if (!args[0].equals("FF.karatsuba")) throw new IllegalArgumentException("no parameter "+args[0]);
+/* the private key operation, a power modulo a half length prime */
+		System.out.println(Tuning.time(() -> { r.copy(x); r.skpow(e,m); }));
+	}
+}
@@ -0,0 +1,180 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+*/
+
+/*
+ * Tuned window widths and thresholds of the arithmetic
+ *
+ * Each package reads its parameters once, when its classes are initialised,
+ * from the properties file named by the amcl.tuning property, and they are
+ * final from then on. Parameters that are missing or out of range take their
+ * built-in defaults, as do all of them when amcl.tuning is not set or the file
+ * cannot be read.
+ *
+ * The file is made by calibrating on the target machine and JVM, with
+ *
+ * java org.apache.milagro.amcl.Tuning <file> [<package>...]
+ *
+ * which runs the Tuner class of each package (all of them by default) in a new
+ * JVM for each candidate value, and writes the fastest. Keys are
+ * <package>.<parameter>, for example BLS381.ECP.window=5.
+ */
+
+package org.apache.milagro.amcl;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Properties;
+
+public final class Tuning {
+	public static final String[] PACKAGES={
+		"ANSSI","BLS24","BLS381","BLS383","BLS461","BLS48","BN254","BN254CX","BRAINPOOL","C25519","C41417","ED25519",
+		"FP256BN","FP512BN","GOLDILOCKS","HIFIVE","NIST256","NIST384","NIST521","NUMS256E","NUMS256W","NUMS384E","NUMS384W",
+		"NUMS512E","NUMS512W","SECP256K1","RSA2048","RSA3072","RSA4096"};
+
+	private static final Properties P=load();
+
+	private Tuning() {}
+
+	private static Properties load()
+	{
+		Properties p=new Properties();
+		String f=System.getProperty("amcl.tuning");
+		if (f!=null)
+		{
+			try (InputStream in=Files.newInputStream(Paths.get(f))) {
+				p.load(in);
+			} catch (IOException e) {
+				p.clear();	/* all parameters take their defaults */
+			}
+		}
+		return p;
+	}
+
+/* parameter name of package pkg, or def if it is not set or not in min..max */
+	public static int get(String pkg,String name,int def,int min,int max)
+	{
+		String s=P.getProperty(pkg+"."+name);
+		if (s==null) return def;
+		try {
+			int v=Integer.parseInt(s.trim());
+			if (v>=min && v<=max) return v;
+		} catch (NumberFormatException e) {}
+		return def;
+	}
+
+/* nanoseconds per run of r, the least over 5 timed batches after warming up for 200ms */
+	public static double time(Runnable r)
+	{
+		int i,n=1;
+		long t=System.nanoTime();
+		while (System.nanoTime()-t<200000000L) r.run();
+		while (true)
+		{	/* size batches to take at least 20ms */
+			t=System.nanoTime();
+			for (i=0;i<n;i++) r.run();
+			t=System.nanoTime()-t;
+			if (t>=20000000L) break;
+			n*=2;
+		}
+		double best=(double)t/n;
+		for (int b=0;b<5;b++)
+		{
+			t=System.nanoTime();
+			for (i=0;i<n;i++) r.run();
+			best=Math.min(best,(double)(System.nanoTime()-t)/n);
+		}
+		return best;
+	}
+
+/* nanoseconds per run of the workload of parameter name of package pkg, timed by its Tuner in a new JVM with the parameters in p */
+	private static double run(String pkg,String name,Properties p) throws IOException,InterruptedException
+	{
+		Path f=Files.createTempFile("amcl",".properties");
+		try {
+			try (OutputStream os=Files.newOutputStream(f)) {
+				p.store(os,null);
+			}
+			String java=Paths.get(System.getProperty("java.home"),"bin","java").toString();
+			ProcessBuilder pb=new ProcessBuilder(java,"-cp",System.getProperty("java.class.path"),"-Damcl.tuning="+f,
+				"org.apache.milagro.amcl."+pkg+".Tuner",name);
+			pb.redirectError(ProcessBuilder.Redirect.INHERIT);
+			Process c=pb.start();
+			String line,last=null;
+			try (BufferedReader in=new BufferedReader(new InputStreamReader(c.getInputStream(),StandardCharsets.US_ASCII))) {
+				while ((line=in.readLine())!=null) last=line;
+			}
+			if (c.waitFor()!=0 || last==null) throw new IOException(pkg+".Tuner "+name+" failed");
+			return Double.parseDouble(last);
+		} finally {
+			Files.deleteIfExists(f);
+		}
+	}
+
+	public static void main(String[] args) throws Exception
+	{
+		if (args.length<1)
+		{
+			System.err.println("Usage: Tuning <file> [<package>...]");
+			System.exit(1);
+		}
+		String[] pkgs=PACKAGES;
+		if (args.length>1)
+		{
+			pkgs=new String[args.length-1];
+			System.arraycopy(args,1,pkgs,0,pkgs.length);
+		}
+		Properties out=new Properties();
+		if (Files.exists(Paths.get(args[0])))
+		{	/* keep the values of packages not tuned this time */
+			try (InputStream in=Files.newInputStream(Paths.get(args[0]))) {
+				out.load(in);
+			}
+		}
+		for (String pkg : pkgs)
+		{
+			Class<?> tuner=Class.forName("org.apache.milagro.amcl."+pkg+".Tuner");
+			String[] names=(String[])tuner.getField("PARAMS").get(null);
+			int[][] values=(int[][])tuner.getField("VALUES").get(null);
+			for (int i=0;i<names.length;i++)
+			{	/* later parameters are timed with the best values of earlier ones */
+				String key=pkg+"."+names[i];
+				int bv=values[i][0];
+				double t,bt=Double.MAX_VALUE;
+				for (int v : values[i])
+				{
+					out.setProperty(key,String.valueOf(v));
+					t=run(pkg,names[i],out);
+					System.out.printf("%-24s %3d %12.1f us%n",key,v,t/1000);
+					if (t<bt) { bt=t; bv=v; }
+				}
+				out.setProperty(key,String.valueOf(bv));
+			}
+		}
+		try (OutputStream os=Files.newOutputStream(Paths.get(args[0]))) {
+			out.store(os,"amcl tuning, "+System.getProperty("java.vm.name")+" "+System.getProperty("java.version")+" "+System.getProperty("os.arch"));
+		}
+	}
+}
@@ -0,0 +1,99 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+*/
+
+/* Java Flight Recorder event for a protocol level operation, recorded by CryptoMonitor */
+/* Disabled by default. Enable org.apache.milagro.amcl.Operation in the recording settings, for example with a threshold to record only slow calls */
+/* Java 11 version, from META-INF/versions/11 of the multi-release JAR, as jdk.jfr is not part of Java 8 */
+
+package org.apache.milagro.amcl;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.FlightRecorderListener;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+import jdk.jfr.StackTrace;
+
+@Name("org.apache.milagro.amcl.Operation")
+@Label("Crypto Operation")
+@Category("AMCL")
+@Description("A protocol level operation such as MPIN.SERVER_2 or ECDH.VP_DSA")
+@Enabled(false)
+@StackTrace(false)
+final class CryptoEvent extends Event {
+	@Label("Curve")
+	@Description("Package of the operation, such as BLS381 or RSA2048")
+	String curve;
+
+	@Label("Operation")
+	String operation;
+
+	@Label("Result")
+	@Description("Return code of the operation, 0 for success")
+	int result;
+
+/* Tell CryptoMonitor whether a recording is running now, and whenever one starts or stops. Returns true */
+	static boolean listen()
+	{
+		FlightRecorder.addListener(new FlightRecorderListener() {
+			public void recordingStateChanged(Recording r)
+			{
+				update();
+			}
+		});
+		update();
+		return true;
+	}
+
+	private static void update()
+	{
+		boolean running=false;
+		if (FlightRecorder.isInitialized())
+			for (Recording x : FlightRecorder.getFlightRecorder().getRecordings())
+				if (x.getState()==RecordingState.RUNNING) running=true;
+		CryptoMonitor.recording(running);
+	}
+
+/* Return a started event, or null if no recording has it enabled */
+	static Object start()
+	{
+		CryptoEvent e=new CryptoEvent();
+		if (!e.isEnabled()) return null;
+		e.begin();
+		return e;
+	}
+
+	static void finish(Object event,String curve,String operation,int result)
+	{
+		CryptoEvent e=(CryptoEvent)event;
+		e.end();
+		if (e.shouldCommit())
+		{
+			e.curve=curve;
+			e.operation=operation;
+			e.result=result;
+			e.commit();
+		}
+	}
+}
@@ -0,0 +1,49 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+*/
+
+/*
+ * High part of the product of two limbs, used by the multiplication and
+ * Montgomery reduction of the BIG classes
+ *
+ * Java 9 version, from META-INF/versions/9 of the multi-release JAR. The
+ * signed 128-bit product comes from Math.multiplyHigh, which the JIT compiles
+ * to a single multiply instruction, so the BIG classes use it in place of
+ * their four half limb products. Math.unsignedMultiplyHigh of Java 18 is
+ * not used, as limbs may be negative.
+ */
+
+package org.apache.milagro.amcl;
+
+public final class Limb {
+/* whether mulhi is an intrinsic. Not a compile time constant, so that callers read it from whichever Limb is loaded */
+	public static final boolean INTRINSIC=intrinsic();
+
+	private Limb() {}
+
+	private static boolean intrinsic()
+	{
+		return true;
+	}
+
+/* floor(a*b/2^n), for even n. The low part is (a*b)&((1<<n)-1) */
+	public static long mulhi(long a,long b,int n)
+	{
+		return (Math.multiplyHigh(a,b)<<(64-n))|((a*b)>>>n);
+	}
+}
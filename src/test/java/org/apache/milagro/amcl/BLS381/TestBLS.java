@@ -0,0 +1,275 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+*/
+
+/* test driver and function exerciser for BLS signature API Functions */
+package org.apache.milagro.amcl.BLS381;  //
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import junit.framework.TestCase;      //
+import org.apache.milagro.amcl.OpCounter;
+import org.apache.milagro.amcl.RAND;
+
+public class TestBLS extends TestCase //
+{
+	private static void printBinary(byte[] array)
+	{
+		int i;
+		for (i=0;i<array.length;i++)
+		{
+			System.out.printf("%02x", array[i]);
+		}
+		System.out.println();
+	}
+
+	public static void testBLS()
+	{
+		int n=8;
+		int BGS=BLS.BGS;
+		int G1S=BLS.G1S;
+		int G2S=BLS.G2S;
+
+		byte[][] S=new byte[n][BGS];
+		byte[][] W=new byte[n][G2S];
+		byte[][] SIG=new byte[n][G1S];
+		byte[][] M=new byte[n][];
+		byte[] ASIG=new byte[G1S];
+		byte[] AW=new byte[G2S];
+
+		RAND rng=new RAND();
+		byte[] RAW=new byte[100];
+		rng.clean();
+		for (int i=0;i<100;i++) RAW[i]=(byte)(i);
+		rng.seed(100,RAW);
+
+		System.out.println("Testing BLS code");
+
+		for (int i=0;i<n;i++)
+		{
+			BLS.KEY_PAIR_GENERATE(rng,S[i],W[i]);
+			M[i]=("message number "+i).getBytes();
+			BLS.SIGN(SIG[i],M[i],S[i]);
+		}
+		System.out.print("Private key S= 0x"); printBinary(S[0]);
+		System.out.print("Public key W= 0x"); printBinary(W[0]);
+		System.out.print("Signature SIG= 0x"); printBinary(SIG[0]);
+
+		for (int i=0;i<n;i++)
+			if (BLS.VERIFY(SIG[i],M[i],W[i])!=BLS.BLS_OK) fail("FAILURE: signature "+i+" does not verify");
+		if (BLS.VERIFY(SIG[0],M[1],W[0])==BLS.BLS_OK) fail("FAILURE: signature verifies on wrong message");
+		if (BLS.VERIFY(SIG[0],M[0],W[1])==BLS.BLS_OK) fail("FAILURE: signature verifies with wrong key");
+
+/* all signers sign the same message */
+		byte[][] CSIG=new byte[n][G1S];
+		for (int i=0;i<n;i++)
+			BLS.SIGN(CSIG[i],M[0],S[i]);
+		BLS.AGGREGATE_SIG(CSIG,ASIG);
+		System.out.print("Aggregate signature= 0x"); printBinary(ASIG);
+		if (BLS.FAST_AGGREGATE_VERIFY(ASIG,M[0],W)!=BLS.BLS_OK) fail("FAILURE: aggregate signature does not verify");
+		BLS.AGGREGATE_PK(W,AW);
+		if (BLS.VERIFY(ASIG,M[0],AW)!=BLS.BLS_OK) fail("FAILURE: aggregate signature does not verify with aggregate key");
+		if (BLS.FAST_AGGREGATE_VERIFY(ASIG,M[1],W)==BLS.BLS_OK) fail("FAILURE: aggregate signature verifies on wrong message");
+
+/* compressed public keys */
+		byte[][] CW=new byte[n][BLS.G2CS];
+		for (int i=0;i<n;i++)
+			BLS.AGGREGATE_PK(new byte[][] {W[i]},CW[i]);
+		System.out.print("Compressed public key W= 0x"); printBinary(CW[0]);
+		if (BLS.VERIFY(SIG[0],M[0],CW[0])!=BLS.BLS_OK) fail("FAILURE: signature does not verify with compressed key");
+		if (BLS.FAST_AGGREGATE_VERIFY(ASIG,M[0],CW)!=BLS.BLS_OK) fail("FAILURE: aggregate signature does not verify with compressed keys");
+
+/* batch verification of distinct messages */
+		if (BLS.BATCH_VERIFY(rng,SIG,M,W,null)!=BLS.BLS_OK) fail("FAILURE: batch does not verify");
+		ForkJoinPool pool=new ForkJoinPool(2);
+		if (BLS.BATCH_VERIFY(rng,SIG,M,W,pool)!=BLS.BLS_OK) fail("FAILURE: parallel batch does not verify");
+		byte[] T=SIG[3]; SIG[3]=SIG[4]; SIG[4]=T;
+		if (BLS.BATCH_VERIFY(rng,SIG,M,W,pool)==BLS.BLS_OK) fail("FAILURE: batch with bad signatures verifies");
+		pool.shutdown();
+
+/* a public key on the twist but not in G2 */
+		ECP2 X=new ECP2();
+		for (int i=1;X.is_infinity();i++)
+			X=new ECP2(new FP2(new BIG(i),new BIG(1)));
+		if (X.mul(new BIG(ROM.CURVE_Order)).is_infinity()) fail("FAILURE: test point is in G2");
+		byte[][] XW=new byte[n][G2S];
+		for (int i=0;i<n;i++) XW[i]=W[i];
+		X.toBytes(XW[0],false);
+		if (BLS.VERIFY(SIG[0],M[0],XW[0])!=BLS.INVALID_POINT) fail("FAILURE: key outside G2 accepted");
+		if (BLS.AGGREGATE_PK(XW,AW)!=BLS.INVALID_POINT) fail("FAILURE: key outside G2 aggregated");
+		if (BLS.FAST_AGGREGATE_VERIFY(ASIG,M[0],XW)!=BLS.INVALID_POINT) fail("FAILURE: aggregate with key outside G2 accepted");
+		if (BLS.BATCH_VERIFY(rng,SIG,M,XW,null)!=BLS.INVALID_POINT) fail("FAILURE: batch with key outside G2 accepted");
+		System.out.println("");
+	}
+
+/* multi-pairings, serial, parallel and with no pool, against the product of single pairings */
+	public static void testMulti()
+	{
+		int n=9;
+		RAND rng=new RAND();
+		byte[] RAW=new byte[100];
+		for (int i=0;i<100;i++) RAW[i]=(byte)(i+1);
+		rng.seed(100,RAW);
+
+		BIG r=new BIG(ROM.CURVE_Order);
+		ECP2[] P=new ECP2[n];
+		ECP[] Q=new ECP[n];
+		FP12 e=new FP12(1);
+		for (int i=0;i<n;i++)
+		{
+			P[i]=ECP2.generator().mul(BIG.randomnum(r,rng));
+			Q[i]=ECP.generator().mul(BIG.randomnum(r,rng));
+			e.mul(PAIR.fexp(PAIR.ate(P[i],Q[i])));
+		}
+		ForkJoinPool pool=new ForkJoinPool(2);
+		assertTrue("Multi-pairing differs",PAIR.fexp(PAIR.multi(P,Q)).equals(e));
+		assertTrue("Parallel multi-pairing differs",PAIR.fexp(PAIR.multi(P,Q,pool)).equals(e));
+		assertTrue("Multi-pairing with no pool differs",PAIR.fexp(PAIR.multi(P,Q,null)).equals(e));
+		pool.shutdown();
+	}
+
+/* products of line functions by ssmul and smul2, against dense multiplication, for points and accumulators k.G with k=0, 1 and r-1 */
+	public static void testLines()
+	{
+		BIG r=new BIG(ROM.CURVE_Order);
+		BIG rm1=new BIG(r); rm1.dec(1); rm1.norm();
+		BIG[] k={new BIG(0),new BIG(1),rm1};
+
+		ECP Q=ECP.generator();
+		FP Qx=new FP(Q.getx());
+		FP Qy=new FP(Q.gety());
+		FP12 g=PAIR.fexp(PAIR.ate(ECP2.generator(),Q));
+		FP12[] acc={new FP12(1),new FP12(g),new FP12(g)};
+		acc[2].conj();	/* g^(r-1) */
+
+		for (int i=0;i<k.length;i++)
+		{
+			ECP2 A=ECP2.generator().mul(k[i]);
+			A.affine();
+			ECP2 B=new ECP2(A);
+			FP12 l1=PAIR.line(A,A,Qx,Qy);
+			FP12 l2=PAIR.line(A,B,Qx,Qy);
+			FP12 lv=new FP12(l1);
+			lv.ssmul(l2,ECP.SEXTIC_TWIST);
+			FP12 w=new FP12(l1);
+			w.mul(l2);
+			assertTrue("ssmul differs from mul",lv.equals(w));
+			for (int j=0;j<acc.length;j++)
+			{
+				FP12 u=new FP12(acc[j]);
+				u.smul2(lv,ECP.SEXTIC_TWIST);
+				w.copy(acc[j]);
+				w.mul(lv);
+				assertTrue("smul2 differs from mul",u.equals(w));
+			}
+		}
+	}
+	private static long[] counts(OpCounter c)
+	{
+		long[] n=new long[OpCounter.OPS];
+		for (int i=0;i<OpCounter.OPS;i++) n[i]=c.get(i);
+		return n;
+	}
+
+	public static void testOpCounter()
+	{
+		if (!OpCounter.ENABLED)
+		{
+			System.out.println("Operation counts not checked, run with -Damcl.opcount=true");
+			return;
+		}
+		ECP P=ECP.generator();
+		ECP2 A=ECP2.generator();
+		A.affine();
+		FP12 g=PAIR.ate(A,P);
+		FP12 h=new FP12(g); h.sqr();
+		FP12 l=PAIR.line(A,A,new FP(P.getx()),new FP(P.gety()));
+		FP12 x;
+		FP12Flat f;
+		OpCounter c;
+		long[] n;
+
+		/* FP2.mul does three Fp products inline, and FP2.sqr two FP.mul */
+		FP2 y=new FP2(A.getx());
+		c=OpCounter.start(); y.mul(A.gety()); c.close();
+		assertEquals(3,c.get(OpCounter.FP_MUL));
+		c=OpCounter.start(); y.sqr(); c.close();
+		assertEquals(2,c.get(OpCounter.FP_MUL));
+
+		/* one FP12.mul, which is 6 Fp^4 products of 3 Fp^2 products each */
+		x=new FP12(g);
+		c=OpCounter.start(); x.mul(h); c.close();
+		n=counts(c);
+		for (int i=0;i<OpCounter.OPS;i++)
+			assertEquals(OpCounter.name(i),(i==OpCounter.FP12_MUL)?1:(i==OpCounter.FP_MUL)?54:0,n[i]);
+
+		/* the flat form counts the same as FP12 */
+		f=new FP12Flat(g);
+		c=OpCounter.start(); f.mul(h); c.close();
+		assertTrue("Flat mul counts "+c,Arrays.equals(n,counts(c)));
+		assertTrue(f.toFP12().equals(x));
+
+		x=new FP12(g);
+		c=OpCounter.start(); x.smul(l,ECP.SEXTIC_TWIST); c.close();
+		n=counts(c);
+		f=new FP12Flat(g);
+		c=OpCounter.start(); f.smul(l,ECP.SEXTIC_TWIST); c.close();
+		assertTrue("Flat smul counts "+c,Arrays.equals(n,counts(c)));
+		assertTrue(f.toFP12().equals(x));
+
+		x=new FP12(g);
+		c=OpCounter.start(); x.sqr(); c.close();
+		n=counts(c);
+		f=new FP12Flat(g);
+		c=OpCounter.start(); f.sqr(); c.close();
+		assertTrue("Flat sqr counts "+c,Arrays.equals(n,counts(c)));
+		assertTrue(f.toFP12().equals(x));
+
+		/* fexp does one inversion for the easy part and one for each of the five powers by x, no point arithmetic, */
+		/* and counts the same every time */
+		c=OpCounter.start(); PAIR.fexp(g); c.close();
+		n=counts(c);
+		System.out.println("fexp "+c);
+		assertEquals(6,n[OpCounter.FP_INVERSE]);
+		assertEquals(0,n[OpCounter.ECP_ADD]+n[OpCounter.ECP_DBL]);
+		c=OpCounter.start(); PAIR.fexp(g); c.close();
+		assertTrue("fexp counts "+c,Arrays.equals(n,counts(c)));
+	}
+
+/* powers with compressed squarings by cpow against pow, for the exponents used by fexp, others, and the identity */
+	public static void testCpow()
+	{
+		RAND rng=new RAND();
+		byte[] RAW=new byte[100];
+		for (int i=0;i<100;i++) RAW[i]=(byte)(i+1);
+		rng.seed(100,RAW);
+
+		BIG r=new BIG(ROM.CURVE_Order);
+		FP12 g=PAIR.fexp(PAIR.ate(ECP2.generator().mul(BIG.randomnum(r,rng)),ECP.generator()));
+		BIG x=new BIG(ROM.CURVE_Bnx);
+		BIG h=new BIG(x); h.fshr(1);
+		BIG[] e={x,h,BIG.randomnum(r,rng),new BIG(1),new BIG(2),new BIG(3),new BIG(0x53)};
+		for (int i=0;i<e.length;i++)
+		{
+			FP12Flat f=new FP12Flat(g);
+			FP12 w=f.pow(new BIG(e[i])).toFP12();
+			assertTrue("cpow differs from pow for e="+e[i],f.cpow(new BIG(e[i])).toFP12().equals(w));
+		}
+		assertTrue("cpow of 1",new FP12Flat(1).cpow(x).toFP12().isunity());
+	}
+}
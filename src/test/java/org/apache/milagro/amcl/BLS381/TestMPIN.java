@@ -42,6 +42,15 @@ public class TestMPIN extends TestCase //
 	static boolean FULL=true;
 	static boolean SINGLE_PASS=false;
 
+/* copy b to a direct buffer, after a byte of padding */
+	private static java.nio.ByteBuffer direct(byte[] b)
+	{
+		if (b==null) return null;
+		java.nio.ByteBuffer d=java.nio.ByteBuffer.allocateDirect(b.length+1);
+		d.put((byte)0).put(b).position(1);
+		return d;
+	}
+
 	public static void testMPIN()
 	{
 		RAND rng=new RAND();
@@ -107,6 +116,32 @@ public class TestMPIN extends TestCase //
 		MPIN.GET_SERVER_SECRET(S,SST);
 		System.out.print("Server Secret SS: 0x");  printBinary(SST); 
 
+		byte[] CSST = new byte[2*EFS+1];
+		MPIN.GET_SERVER_SECRET(S,CSST);
+		assertTrue("Compressed server secret differs",ECP2.fromBytes(CSST).equals(ECP2.fromBytes(SST)));
+
+		MPINIssuer issuer=new MPINIssuer(S);
+		java.io.ByteArrayOutputStream BULK=new java.io.ByteArrayOutputStream();
+		java.util.concurrent.ForkJoinPool ipool=new java.util.concurrent.ForkJoinPool(2);
+		int idate=MPIN.today();
+		try
+		{
+			issuer.CLIENT_SECRETS(java.util.Arrays.asList(HCID,MPIN.HASH_ID(sha,"bulk@miracl.com".getBytes(),EFS),HCID).iterator(),BULK,ipool);
+			issuer.CLIENT_PERMITS(sha,idate,java.util.Arrays.asList(HCID).iterator(),BULK,null);
+		}
+		catch (java.io.IOException e)
+		{
+			fail(e.toString());
+		}
+		ipool.shutdown();
+		byte[] BT=BULK.toByteArray();
+		byte[] BP=new byte[G1S];
+		MPIN.GET_CLIENT_PERMIT(sha,idate,S,HCID,BP);
+		assertEquals("Bulk output size",4*MPINIssuer.RECORD,BT.length);
+		assertTrue("Bulk client secret differs",java.util.Arrays.equals(TOKEN,java.util.Arrays.copyOfRange(BT,0,G1S)));
+		assertTrue("Bulk client secret out of order",java.util.Arrays.equals(TOKEN,java.util.Arrays.copyOfRange(BT,2*G1S,3*G1S)));
+		assertTrue("Bulk time permit differs",java.util.Arrays.equals(BP,java.util.Arrays.copyOfRange(BT,3*G1S,4*G1S)));
+
 
 /* Client extracts PIN from secret to create Token */
 		int pin=1234;
@@ -229,6 +264,19 @@ If Time permits are ON, AND pin error detection is NOT required, set xID=null, H
   
                   /* Server calculates H(ID) and H(T|H(ID)) (if time permits enabled), and maps them to points on the curve HID and HTID resp. */
   			MPIN.SERVER_1(sha,date,CLIENT_ID,pHID,pHTID);
+
+			MPINCache cache=new MPINCache(1<<20);
+			byte[] CHID=new byte[G1S];
+			byte[] CHTID=new byte[G1S];
+			for (int i=0;i<2;i++)
+			{
+				cache.SERVER_1(sha,date,CLIENT_ID,CHID,CHTID);
+				assertTrue("Cached HID differs",java.util.Arrays.equals(HID,CHID));
+				if (date!=0) assertTrue("Cached HTID differs",java.util.Arrays.equals(HTID,CHTID));
+			}
+			int lookups=(date!=0)?2:1;
+			assertEquals("Cache misses",lookups,cache.misses());
+			assertEquals("Cache hits",lookups,cache.hits());
   
                   /* Server generates Random number Y and sends it to Client */
   			MPIN.RANDOM_GENERATE(rng,Y);
@@ -251,6 +299,36 @@ If Time permits are ON, AND pin error detection is NOT required, set xID=null, H
   
   			if (rtn != 0)
   				fail("FAILURE: SERVER_2 rtn: " + rtn);
+
+			/* batch of two valid attempts and one with the wrong secret */
+			byte[][] BHID={pHID,pHID,pHID};
+			byte[][] BHTID={pHTID,pHTID,pHTID};
+			byte[][] BY={Y,Y,Y};
+			byte[][] BxID={pxID,pxID,pxID};
+			byte[][] BxCID={pxCID,pxCID,pxCID};
+			byte[][] BSEC={SEC,SEC,T};
+			java.util.concurrent.ForkJoinPool pool=new java.util.concurrent.ForkJoinPool(2);
+			int[] brtn=MPIN.BATCH_SERVER_2(date,BHID,BHTID,BY,SST,BxID,BxCID,BSEC,null,null,rng,pool);
+			assertTrue("Batch rejected valid attempts",brtn[0]==0 && brtn[1]==0);
+			assertEquals("Batch accepted invalid attempt",MPIN.BAD_PIN,brtn[2]);
+			brtn=MPIN.BATCH_SERVER_2(date,BHID,BHTID,BY,SST,BxID,BxCID,BSEC,null,null,null,null);
+			assertTrue("Sequential batch results differ",brtn[0]==0 && brtn[1]==0 && brtn[2]==MPIN.BAD_PIN);
+			pool.shutdown();
+
+			/* the same attempt decoded in place from direct buffers */
+			assertEquals("SERVER_2 from buffers failed",0,MPIN.SERVER_2(date,direct(pHID),direct(pHTID),direct(Y),direct(SST),direct(pxID),direct(pxCID),direct(SEC),null,null));
+
+			/* a 5-digit PIN error is found */
+			byte[] WX=new byte[EGS];
+			byte[] WSEC=new byte[G1S];
+			byte[] WxID=new byte[G1S];
+			byte[] WE=new byte[E.length];
+			byte[] WF=new byte[F.length];
+			MPIN.CLIENT_1(sha,0,CLIENT_ID,rng,WX,pin+12345,TOKEN,WSEC,WxID,null,null);
+			MPIN.CLIENT_2(WX,Y,WSEC);
+			assertEquals("Wrong PIN accepted",MPIN.BAD_PIN,MPIN.SERVER_2(0,HID,null,Y,SST,WxID,null,WSEC,WE,WF));
+			assertEquals("PIN error beyond PINRANGE found",0,MPIN.KANGAROO(WE,WF));
+			assertEquals("Wrong PIN error",12345,MPIN.KANGAROO(WE,WF,MPIN.MAXPIN));
 		}
   
 		if (rtn == MPIN.BAD_PIN)
@@ -273,6 +351,73 @@ If Time permits are ON, AND pin error detection is NOT required, set xID=null, H
 			MPIN.CLIENT_KEY(sha,G1,G2,pin,R,X,H,T,CK);
 			System.out.print("Client Key =  0x");  printBinary(CK); 
 
+			byte[] PCK=new byte[ECP.AESKEY];
+			MPIN.CLIENT_KEY(sha,PreparedGT.fromBytes(G1),PreparedGT.fromBytes(G2),pin,R,X,H,T,PCK);
+			assertTrue("Prepared client key differs",java.util.Arrays.equals(CK,PCK));
+
+			/* the same, with the G1 table saved and mapped back */
+			try
+			{
+				java.nio.file.Path PF=java.nio.file.Files.createTempFile("G1",".gtcomb");
+				PF.toFile().deleteOnExit();
+				PreparedGT.fromBytes(G1).save(PF);
+				MPIN.CLIENT_KEY(sha,PreparedGT.load(PF),PreparedGT.fromBytes(G2),pin,R,X,H,T,PCK);
+			}
+			catch (java.io.IOException e)
+			{
+				fail(e.toString());
+			}
+			assertTrue("Mapped client key differs",java.util.Arrays.equals(CK,PCK));
+
+			/* well formed tables of the wrong shape are refused */
+			try
+			{
+				java.nio.file.Path PF=java.nio.file.Files.createTempFile("G1",".gtcomb");
+				PF.toFile().deleteOnExit();
+				TableStore.write(PF,TableStore.GTCOMB,FP12.flatten(new FP12[] {FP12.fromBytes(G1)}));
+				try
+				{
+					PreparedGT.load(PF);
+					fail("GT table of one entry accepted");
+				}
+				catch (java.io.IOException e) {}
+				FP12[] GW=new FP12[1<<(PreparedGT.TEETH-1)];
+				for (int j=0;j<GW.length;j++) GW[j]=FP12.fromBytes(G1);
+				TableStore.write(PF,TableStore.G2COMB,FP12.flatten(GW));
+				try
+				{
+					TableStore.read(PF,TableStore.G2COMB);
+					fail("G2 table of GT entries accepted");
+				}
+				catch (java.io.IOException e) {}
+
+				/* a mapped G2 table gives the same multiples of the generator, and a missing one is an IOException */
+				java.nio.file.Path TD=java.nio.file.Files.createTempDirectory("tables");
+				try
+				{
+					TableStore.loadG2comb(TD);
+					fail("missing G2 table accepted");
+				}
+				catch (java.io.IOException e) {}
+				java.nio.file.Path GF=TableStore.g2comb(TD);
+				TableStore.write(GF,TableStore.G2COMB,ECP2.mkcomb(ECP2.generator()));
+				TableStore.loadG2comb(TD);
+				BIG s=BIG.randomnum(new BIG(ROM.CURVE_Order),rng);
+				assertTrue("Mapped G2 table differs",PAIR.G2mulGen(s).equals(ECP2.generator().mul(s)));
+				java.nio.file.Files.delete(GF);
+				java.nio.file.Files.delete(TD);
+			}
+			catch (java.io.IOException e)
+			{
+				fail(e.toString());
+			}
+
+			byte[] CG1=new byte[6*EFS];
+			byte[] CG2=new byte[6*EFS];
+			MPIN.PRECOMPUTE(TOKEN,HCID,CG1,CG2);
+			MPIN.CLIENT_KEY(sha,CG1,CG2,pin,R,X,H,T,PCK);
+			assertTrue("Compressed client key differs",java.util.Arrays.equals(CK,PCK));
+
 			H=MPIN.HASH_ALL(sha,HSID,pxID,pxCID,SEC,Y,Z,T,EFS);
 			MPIN.SERVER_KEY(sha,Z,SST,W,H,pHID,pxID,pxCID,SK);
 			System.out.print("Server Key =  0x");  printBinary(SK); 
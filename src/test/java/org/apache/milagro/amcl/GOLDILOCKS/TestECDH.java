@@ -124,6 +124,13 @@ public class TestECDH extends TestCase   //
 			fail("*** ECPSVDP-DH Failed");
 		}
 
+		java.nio.ByteBuffer BZ=java.nio.ByteBuffer.allocateDirect(EFS+1);
+		BZ.position(1);
+		ECDH.SVDP_DH(java.nio.ByteBuffer.wrap(S1),java.nio.ByteBuffer.wrap(W0),BZ);
+		for (i=0;i<EFS;i++)
+			if (BZ.get(i+1)!=Z0[i]) same=false;
+		assertTrue("ECPSVDP-DH from a buffer differs",same);
+
 		byte[] KEY=ECDH.KDF2(sha,Z0,null,EAS);
 
 		System.out.print("Alice's DH Key=  0x"); printBinary(KEY);
@@ -170,6 +177,16 @@ public class TestECDH extends TestCase   //
 				fail("***ECDSA Verification Failed");
 			}
 			else System.out.println("ECDSA Signature/Verification succeeded "+j);
+
+			/* verify in place from one direct buffer holding W0, CS, DS and the message */
+			java.nio.ByteBuffer BUF=java.nio.ByteBuffer.allocateDirect(W0.length+CS.length+DS.length+M.length);
+			BUF.put(W0).put(CS).put(DS).put(M);
+			BUF.position(W0.length+CS.length+DS.length);
+			java.nio.ByteBuffer BW=BUF.duplicate(); BW.position(0);
+			java.nio.ByteBuffer BC=BUF.duplicate(); BC.position(W0.length);
+			java.nio.ByteBuffer BD=BUF.duplicate(); BD.position(W0.length+CS.length);
+			assertEquals("ECDSA Verification from a buffer failed",0,ECDH.VP_DSA(sha,BW,BUF,BC,BD));
+			assertEquals("Buffer position changed",W0.length+CS.length+DS.length,BUF.position());
 			System.out.println("");
 
 		}
@@ -104,6 +104,24 @@ public class TestRSA extends TestCase
 		if (cmp) System.out.println("Signature is valid");
 		else fail("Signature is INVALID");
 
+		/* schoolbook multiplication, used up to the tuned Karatsuba threshold, against Karatsuba */
+		FF x=new FF(FF.FFLEN);
+		FF y=new FF(FF.FFLEN);
+		x.random(rng);
+		y.random(rng);
+		FF z=new FF(2*FF.FFLEN);
+		z.smul(0,x,0,y,0,FF.FFLEN);
+		FF w=FF.mul(x,y);
+		z.norm(); w.norm();
+		if (FF.comp(z,w)!=0) fail("Schoolbook product differs");
+		z=new FF(FF.FFLEN);
+		z.smul_lower(0,x,0,y,0,FF.FFLEN);
+		w=new FF(FF.FFLEN);
+		w.copy(x);
+		w.lmul(y);
+		z.norm(); w.norm();
+		if (FF.comp(z,w)!=0) fail("Schoolbook low product differs");
+
 		RSA.PRIVATE_KEY_KILL(priv);
 		System.out.println("");
 
@@ -0,0 +1,83 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+*/
+
+/* test driver for BinaryGCD, against BigInteger.modInverse */
+package org.apache.milagro.amcl;  //
+
+import java.math.BigInteger;
+import java.util.Random;
+import junit.framework.TestCase;      //
+
+public class TestBinaryGCD extends TestCase //
+{
+/* v as nlen limbs of basebits bits */
+	private static long[] limbs(BigInteger v,int basebits,int nlen)
+	{
+		long[] x=new long[nlen];
+		BigInteger m=BigInteger.ONE.shiftLeft(basebits).subtract(BigInteger.ONE);
+		for (int i=0;i<nlen;i++) x[i]=v.shiftRight(basebits*i).and(m).longValue();
+		return x;
+	}
+
+	private static BigInteger value(long[] x,int basebits)
+	{
+		BigInteger v=BigInteger.ZERO;
+		for (int i=x.length-1;i>=0;i--) v=v.shiftLeft(basebits).add(BigInteger.valueOf(x[i]));
+		return v;
+	}
+
+/* inverses mod primes of the sizes of the moduli in this library, and small ones, for random values and edge cases */
+	public static void testInverse()
+	{
+		Random rng=new Random(1);
+		int[] sizes={62,63,120,252,255,256,336,381,383,414,448,461,479,512,521};
+		int[] bases={56,58,60};
+		for (int nbits : sizes)
+		{
+			for (int basebits : bases)
+			{
+				int nlen=1+(8*((nbits+7)/8)-1)/basebits;
+				for (int j=0;j<4;j++)
+				{
+					BigInteger p=BigInteger.probablePrime(nbits,rng);
+					long[] m=limbs(p,basebits,nlen);
+					BigInteger[] y=new BigInteger[30];
+					for (int i=0;i<20;i++) y[i]=new BigInteger(nbits,rng).mod(p);
+					y[20]=BigInteger.ZERO;
+					y[21]=BigInteger.ONE;
+					y[22]=BigInteger.valueOf(2);
+					y[23]=p.subtract(BigInteger.ONE);
+					y[24]=p.subtract(BigInteger.valueOf(2));
+					y[25]=p.shiftRight(1);
+					y[26]=BigInteger.ONE.shiftLeft(nbits-2);
+					y[27]=BigInteger.ONE.shiftLeft(nbits-1).subtract(BigInteger.ONE);
+					y[28]=p.subtract(BigInteger.ONE.shiftLeft(nbits/2));
+					y[29]=BigInteger.ONE.shiftLeft(nbits/2).add(BigInteger.ONE);
+					for (int i=0;i<y.length;i++)
+					{
+						long[] x=limbs(y[i],basebits,nlen);
+						BinaryGCD.inverse(x,m,basebits,nbits);
+						BigInteger w=(y[i].signum()==0)?BigInteger.ZERO:y[i].modInverse(p);
+						assertEquals("1/"+y[i].toString(16)+" mod "+p.toString(16),w,value(x,basebits));
+					}
+				}
+			}
+		}
+	}
+}
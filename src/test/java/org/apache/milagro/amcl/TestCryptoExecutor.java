@@ -0,0 +1,142 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+*/
+
+/* test driver for CryptoExecutor, on platform threads and on virtual threads */
+package org.apache.milagro.amcl;  //
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import junit.framework.TestCase;      //
+
+public class TestCryptoExecutor extends TestCase //
+{
+/* wait for f, and return what it failed with, or null */
+	private static Throwable cause(CompletableFuture<?> f) throws InterruptedException
+	{
+		try
+		{
+			f.get();
+			return null;
+		}
+		catch (ExecutionException e)
+		{
+			return e.getCause();
+		}
+	}
+
+/* fill e with calls that block, check that one more is refused and that no more than capacity run at once */
+	private static void bounded(CryptoExecutor e) throws InterruptedException
+	{
+		final int n=e.capacity();
+		final CountDownLatch go=new CountDownLatch(1);
+		final AtomicInteger running=new AtomicInteger();
+		final AtomicInteger most=new AtomicInteger();
+		CompletableFuture<?>[] f=new CompletableFuture<?>[n];
+
+		for (int i=0;i<n;i++)
+		{
+			final int k=i;
+			f[i]=e.submit(() -> {
+				int r=running.incrementAndGet();
+				most.accumulateAndGet(r,Math::max);
+				try
+				{
+					go.await();
+				}
+				catch (InterruptedException x)
+				{
+					throw new IllegalStateException(x);
+				}
+				running.decrementAndGet();
+				return k;
+			});
+		}
+		assertTrue("Call beyond capacity accepted",cause(e.submit(() -> 0)) instanceof RejectedExecutionException);
+		assertEquals("Rejected",1,e.rejected());
+		assertTrue("Waiting or running",e.queueDepth()+e.active()<=n);
+
+		go.countDown();
+		for (int i=0;i<n;i++)
+		{
+			assertNull(cause(f[i]));
+			assertEquals(Integer.valueOf(i),f[i].join());
+		}
+		assertTrue("More calls ran than capacity",most.get()<=n);
+		assertEquals("Completed",n,e.completed());
+		assertEquals(0,e.queueDepth()+e.active());
+
+		/* permits were all returned */
+		for (int i=0;i<n;i++) f[i]=e.submit(() -> 1);
+		for (int i=0;i<n;i++) assertNull(cause(f[i]));
+	}
+
+/* check that what a call throws fails its future, and that the executor carries on */
+	private static void throwing(CryptoExecutor e) throws InterruptedException
+	{
+		final IllegalArgumentException x=new IllegalArgumentException("bad input");
+		long done=e.completed();
+		for (int i=0;i<2*e.capacity();i++)
+		{
+			CompletableFuture<Integer> f=e.submit(() -> { throw x; });
+			assertTrue("Exception not propagated",cause(f)==x);
+		}
+		assertEquals("Failed",2*e.capacity(),e.failed());
+		assertNull(cause(e.submit(() -> 1)));
+		assertEquals("Completed",done+1,e.completed());
+	}
+
+	public static void testPlatform() throws InterruptedException
+	{
+		CryptoExecutor c;
+		try (CryptoExecutor e=new CryptoExecutor(2,3))
+		{
+			assertFalse(e.isVirtual());
+			assertEquals(5,e.capacity());
+			bounded(e);
+			throwing(e);
+			c=e;
+		}
+		assertTrue("Call accepted after close",cause(c.submit(() -> 0)) instanceof RejectedExecutionException);
+	}
+
+	public static void testVirtual() throws InterruptedException
+	{
+		/* before Java 21 this runs on the platform pool it falls back to */
+		try (CryptoExecutor e=CryptoExecutor.virtual(4))
+		{
+			System.out.println("CryptoExecutor.virtual() on virtual threads: "+e.isVirtual());
+			assertEquals(4,e.capacity());
+			bounded(e);
+			throwing(e);
+		}
+		try (CryptoExecutor e=CryptoExecutor.virtual())
+		{
+			assertEquals((CryptoExecutor.QUEUE_FACTOR+1)*Runtime.getRuntime().availableProcessors(),e.capacity());
+		}
+		try
+		{
+			CryptoExecutor.virtual(0);
+			fail("capacity 0 accepted");
+		}
+		catch (IllegalArgumentException x) {}
+	}
+}